@@ -0,0 +1,143 @@
+package com.example.mfacallbacks.challenge;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size table of wrong-code counts for challenges that are not stored anywhere.
+ *
+ * <p>Counters are 4 bits wide, sixteen to a {@code long}, indexed by a hash of the challenge ID
+ * and the user ID and updated with a compare-and-set, so counting takes no lock and 1M counters fit in 512 KiB.
+ * Like {@link RotatingBloomFilter}, two generations each covering {@code rotationSeconds} are
+ * kept and the older one is dropped whole, so a count is remembered for at least the token
+ * lifetime. Counters saturate at 15, above any supported attempt limit.
+ *
+ * <p>Counts are taken before the token's MAC is checked, so the challenge ID is chosen by the
+ * caller. The user ID is mixed in with a random per-instance key, so a user sending wrong
+ * codes cannot aim them at another user's counter. Distinct challenges may still share a
+ * counter by chance, which can only make a challenge lock early: with {@code slots} well
+ * above the number of challenges receiving wrong codes per lifetime, a legitimate user is
+ * very unlikely to be affected.
+ */
+public class RotatingAttemptCounter {
+
+    private static final int COUNTERS_PER_WORD = 16;
+    private static final int COUNTER_MASK = 0xF;
+
+    private final int mask;
+    private final long rotationSeconds;
+    private final long key = new SecureRandom().nextLong();
+
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    /**
+     * @param slots number of counters, rounded up to a power of two of at least 16
+     * @param rotationSeconds lifetime of a generation, at least the token lifetime
+     * @param now current time in seconds since epoch
+     */
+    public RotatingAttemptCounter(int slots, long rotationSeconds, long now) {
+        int size = Math.max(COUNTERS_PER_WORD, Integer.highestOneBit(Math.max(1, slots - 1)) << 1);
+        this.mask = size - 1;
+        this.rotationSeconds = rotationSeconds;
+        this.current = new Generation(size, now);
+        this.previous = new Generation(size, now - rotationSeconds);
+    }
+
+    /**
+     * @param userId the user the challenge was issued to
+     * @param id the challenge ID, or any uniformly random part of it; a constant to count per user
+     * @param now current time in seconds since epoch
+     * @return the wrong codes counted for the challenge
+     */
+    public int failures(String userId, long id, long now) {
+        rotateIfDue(now);
+        int slot = slot(userId, id);
+        return current.get(slot) + previous.get(slot);
+    }
+
+    /**
+     * Counts a wrong code for the challenge.
+     *
+     * @param userId the user the challenge was issued to
+     * @param id the challenge ID, or any uniformly random part of it; a constant to count per user
+     * @param now current time in seconds since epoch
+     * @return the wrong codes counted for the challenge, including this one
+     */
+    public int recordFailure(String userId, long id, long now) {
+        rotateIfDue(now);
+        int slot = slot(userId, id);
+        Generation older = previous;
+        return current.increment(slot) + older.get(slot);
+    }
+
+    /**
+     * @return the memory used by both generations, in bytes
+     */
+    public long sizeInBytes() {
+        // Half a byte per counter, in each of the two generations
+        return mask + 1L;
+    }
+
+    private int slot(String userId, long id) {
+        // Keyed FNV-1a over the user ID: without the key, no ID can be picked to land on another user's slot
+        long user = key;
+        for (int i = 0; i < userId.length(); i++) {
+            user = (user ^ userId.charAt(i)) * 0x100000001B3L;
+        }
+        return (int) mix(id ^ mix(user)) & mask;
+    }
+
+    /** MurmurHash3 64-bit finalizer */
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    private void rotateIfDue(long now) {
+        if (now - current.startTime < rotationSeconds) {
+            return;
+        }
+        synchronized (this) {
+            if (now - current.startTime >= rotationSeconds) {
+                Generation retired = current;
+                current = new Generation(mask + 1, now);
+                previous = retired;
+            }
+        }
+    }
+
+    private static final class Generation {
+        private final AtomicLongArray words;
+        private final long startTime;
+
+        Generation(int slots, long startTime) {
+            this.words = new AtomicLongArray(slots / COUNTERS_PER_WORD);
+            this.startTime = startTime;
+        }
+
+        int get(int slot) {
+            return (int) (words.get(slot >>> 4) >>> shift(slot)) & COUNTER_MASK;
+        }
+
+        int increment(int slot) {
+            int index = slot >>> 4;
+            int shift = shift(slot);
+            long word;
+            int count;
+            do {
+                word = words.get(index);
+                count = (int) (word >>> shift) & COUNTER_MASK;
+                if (count == COUNTER_MASK) {
+                    return count;
+                }
+            } while (!words.compareAndSet(index, word, word + (1L << shift)));
+            return count + 1;
+        }
+
+        private static int shift(int slot) {
+            return (slot & (COUNTERS_PER_WORD - 1)) << 2;
+        }
+    }
+}
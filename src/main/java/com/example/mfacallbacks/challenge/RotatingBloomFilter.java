@@ -0,0 +1,123 @@
+package com.example.mfacallbacks.challenge;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size replay guard for consumed challenge IDs.
+ *
+ * <p>Two Bloom filter generations are kept, each covering {@code rotationSeconds}. IDs are
+ * added to the current generation and looked up in both; when a generation is older than the
+ * rotation interval, the previous one is dropped whole. With the rotation interval set to the
+ * OTP lifetime, an ID is remembered for at least as long as its token can be valid, while
+ * memory stays constant no matter how many challenges are consumed.
+ *
+ * <p>False positives reject a legitimate first use with probability {@code falsePositiveRate}
+ * when a generation holds {@code expectedInsertions} IDs; there are no false negatives.
+ */
+public class RotatingBloomFilter {
+
+    /** Check-and-set is serialized per stripe so two concurrent adds of one ID cannot both succeed */
+    private static final int LOCK_STRIPES = 64;
+
+    private final int bits;
+    private final int hashes;
+    private final long rotationSeconds;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    /**
+     * @param expectedInsertions IDs per generation at which the false positive rate is reached
+     * @param falsePositiveRate target false positive rate, e.g. 1e-6
+     * @param rotationSeconds lifetime of a generation, at least the token lifetime
+     * @param now current time in seconds since epoch
+     */
+    public RotatingBloomFilter(long expectedInsertions, double falsePositiveRate, long rotationSeconds, long now) {
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.bits = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, optimalBits));
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expectedInsertions * ln2));
+        this.rotationSeconds = rotationSeconds;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.current = new Generation(bits, now);
+        this.previous = new Generation(bits, now - rotationSeconds);
+    }
+
+    /**
+     * Records a challenge ID as consumed.
+     *
+     * @param idHi high bits of the challenge ID
+     * @param idLo low bits of the challenge ID
+     * @param now current time in seconds since epoch
+     * @return true if the ID was not seen before, false if it was (or is a false positive)
+     */
+    public boolean add(long idHi, long idLo, long now) {
+        rotateIfDue(now);
+        synchronized (locks[(int) (idLo & (LOCK_STRIPES - 1))]) {
+            Generation generation = current;
+            if (generation.mightContain(idHi, idLo, bits, hashes) || previous.mightContain(idHi, idLo, bits, hashes)) {
+                return false;
+            }
+            generation.put(idHi, idLo, bits, hashes);
+            return true;
+        }
+    }
+
+    /**
+     * @return the memory used by both generations, in bytes
+     */
+    public long sizeInBytes() {
+        return 2L * (bits >>> 3);
+    }
+
+    private void rotateIfDue(long now) {
+        if (now - current.startTime < rotationSeconds) {
+            return;
+        }
+        synchronized (this) {
+            if (now - current.startTime >= rotationSeconds) {
+                // Publish the new generation before dropping the oldest, so no ID is ever absent from both
+                Generation retired = current;
+                current = new Generation(bits, now);
+                previous = retired;
+            }
+        }
+    }
+
+    private static final class Generation {
+        private final AtomicLongArray words;
+        private final long startTime;
+
+        Generation(int bits, long startTime) {
+            this.words = new AtomicLongArray((bits + 63) >>> 6);
+            this.startTime = startTime;
+        }
+
+        boolean mightContain(long idHi, long idLo, int bits, int hashes) {
+            // Double hashing: the 128-bit ID is already uniformly random
+            long hash = idHi;
+            for (int i = 0; i < hashes; i++, hash += idLo) {
+                int bit = (int) Math.floorMod(hash, (long) bits);
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(long idHi, long idLo, int bits, int hashes) {
+            long hash = idHi;
+            for (int i = 0; i < hashes; i++, hash += idLo) {
+                int bit = (int) Math.floorMod(hash, (long) bits);
+                long mask = 1L << bit;
+                long word;
+                do {
+                    word = words.get(bit >>> 6);
+                } while ((word & mask) == 0 && !words.compareAndSet(bit >>> 6, word, word | mask));
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.mfacallbacks.challenge;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Issues and checks self-contained OTP challenge tokens, so verification needs no stored state.
+ *
+ * <p>A token is {@code version | challenge ID | expiry | tag}, Base64url encoded, where the tag is
+ * an HMAC-SHA256 over the challenge ID, expiry, user ID and OTP digits, truncated to 128 bits.
+ * The OTP itself is not in the token: a token only verifies together with the code that was
+ * sent, for the user it was issued to, and any change to the token invalidates the tag.
+ *
+ * <p>Challenge IDs only need to be unique, not secret, since they are covered by the tag.
+ */
+public class SignedChallengeCodec {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 1;
+    private static final int TAG_BYTES = 16;
+    private static final int TOKEN_BYTES = 1 + 16 + 4 + TAG_BYTES;
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * @param secret the signing key, at least 32 bytes and shared by all replicas
+     */
+    public SignedChallengeCodec(byte[] secret) {
+        if (secret.length < 32) {
+            throw new IllegalArgumentException("Challenge signing secret must be at least 32 bytes");
+        }
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Failed to initialize challenge MAC", e);
+            }
+        });
+    }
+
+    /**
+     * Issues a token for a freshly generated OTP.
+     *
+     * @param userId the user the OTP was generated for
+     * @param digits the OTP as encoded by {@link com.example.mfacallbacks.store.PackedOtp}
+     * @param expiryTime expiry in seconds since epoch
+     * @return the opaque challenge token
+     */
+    public String issue(String userId, int digits, long expiryTime) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ByteBuffer token = ByteBuffer.allocate(TOKEN_BYTES)
+                .put(VERSION)
+                .putLong(random.nextLong())
+                .putLong(random.nextLong())
+                .putInt((int) expiryTime);
+        token.put(tag(token.array(), userId, digits));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.array());
+    }
+
+    /**
+     * Checks a token against the user and the code they entered.
+     *
+     * @param token the token returned by {@link #issue}
+     * @param userId the authenticated user
+     * @param digits the entered OTP as encoded by {@link com.example.mfacallbacks.store.PackedOtp}
+     * @return the challenge if the tag matches, or {@code null} for a wrong code or a malformed,
+     *         forged or foreign token, which are deliberately indistinguishable
+     */
+    public SignedChallenge verify(String token, String userId, int digits) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (bytes.length != TOKEN_BYTES || bytes[0] != VERSION) {
+            return null;
+        }
+        byte[] expected = tag(bytes, userId, digits);
+        if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(bytes, TOKEN_BYTES - TAG_BYTES, TOKEN_BYTES))) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, TOKEN_BYTES - 1 - TAG_BYTES);
+        return new SignedChallenge(buffer.getLong(), buffer.getLong(), Integer.toUnsignedLong(buffer.getInt()));
+    }
+
+    /**
+     * Reads the challenge ID claimed by a token without authenticating it, so attempts can be
+     * counted before paying for the MAC. The ID is covered by the tag, so a token only verifies
+     * with its genuine ID.
+     *
+     * @param token the token returned by {@link #issue}
+     * @return the low 64 bits of the claimed challenge ID, or 0 if the token is malformed
+     */
+    public long unverifiedId(String token) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            return 0L;
+        }
+        if (bytes.length != TOKEN_BYTES || bytes[0] != VERSION) {
+            return 0L;
+        }
+        return ByteBuffer.wrap(bytes, 9, 8).getLong();
+    }
+
+    private byte[] tag(byte[] token, String userId, int digits) {
+        Mac mac = macs.get();
+        mac.update(token, 0, TOKEN_BYTES - TAG_BYTES);
+        mac.update((byte) (digits >>> 24));
+        mac.update((byte) (digits >>> 16));
+        mac.update((byte) (digits >>> 8));
+        mac.update((byte) digits);
+        mac.update(userId.getBytes(StandardCharsets.UTF_8));
+        return Arrays.copyOf(mac.doFinal(), TAG_BYTES);
+    }
+
+    /**
+     * The authenticated contents of a challenge token.
+     *
+     * @param idHi high bits of the challenge ID
+     * @param idLo low bits of the challenge ID
+     * @param expiryTime expiry in seconds since epoch
+     */
+    public record SignedChallenge(long idHi, long idLo, long expiryTime) {
+    }
+}
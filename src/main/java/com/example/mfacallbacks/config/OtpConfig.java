@@ -0,0 +1,279 @@
+package com.example.mfacallbacks.config;
+
+import com.example.mfacallbacks.random.OtpCodeSource;
+import com.example.mfacallbacks.random.PooledOtpCodeSource;
+import com.example.mfacallbacks.random.StripedSecureRandomCodeSource;
+import com.example.mfacallbacks.service.CoarseOtpClock;
+import com.example.mfacallbacks.service.OtpAttemptMetrics;
+import com.example.mfacallbacks.service.OtpClock;
+import com.example.mfacallbacks.service.OtpService;
+import com.example.mfacallbacks.service.SignedOtpService;
+import com.example.mfacallbacks.service.TotpService;
+import com.example.mfacallbacks.store.BoundedOtpStore;
+import com.example.mfacallbacks.store.GenerationalOtpStore;
+import com.example.mfacallbacks.store.InMemoryOtpStore;
+import com.example.mfacallbacks.store.JournaledOtpStore;
+import com.example.mfacallbacks.store.OffHeapOtpStore;
+import com.example.mfacallbacks.store.OtpStore;
+import com.example.mfacallbacks.store.OtpStoreMetrics;
+import com.example.mfacallbacks.store.PrimitiveOtpStore;
+import com.example.mfacallbacks.store.ShardedOtpStore;
+import com.example.mfacallbacks.totp.DerivedTotpSecretProvider;
+import com.example.mfacallbacks.totp.FileTotpEnrollments;
+import com.example.mfacallbacks.totp.TotpSecretProvider;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.swagger.v3.oas.annotations.Hidden;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.util.Base64;
+
+/**
+ * Configuration class for OTP storage and randomness.
+ * 
+ * <p>Selects the {@link OtpStore}, {@link OtpCodeSource} and {@link OtpClock} implementations backing
+ * {@link com.example.mfacallbacks.service.OtpService}, and the {@link TotpSecretProvider}
+ * backing {@link com.example.mfacallbacks.service.TotpService}.
+ * 
+ * <p>Configuration properties:
+ * <ul>
+ *   <li>app.otp.store.type: Store implementation to use, memory, generational, primitive or off-heap (default: memory)</li>
+ *   <li>app.otp.store.generation-seconds: Time span of one generation of the generational store, 0 for the OTP lifetime (default: 0)</li>
+ *   <li>app.otp.store.capacity: Maximum pending OTPs for fixed-size stores, initial size for the primitive store (default: 1000000)</li>
+ *   <li>app.otp.store.max-entries: Cap on pending OTPs, 0 for no cap (default: 0)</li>
+ *   <li>app.otp.store.max-bytes: Memory budget for pending OTPs, 0 for none; a hard cap on the tables of the
+ *       off-heap and primitive stores, an estimate for the others (default: 0)</li>
+ *   <li>app.otp.store.overflow-policy: reject or evict when the cap is reached; the primitive and off-heap stores cannot evict (default: reject)</li>
+ *   <li>app.otp.store.shards: Number of independent shards, 1 to disable sharding (default: 1)</li>
+ *   <li>app.otp.journal.enabled: Persist pending OTPs in a write-ahead journal (default: false)</li>
+ *   <li>app.otp.journal.directory: Journal directory (default: data/otp-journal)</li>
+ *   <li>app.otp.journal.flush-interval-ms: Group commit interval (default: 10)</li>
+ *   <li>app.otp.journal.segment-size-mb: Size of each journal segment file (default: 64)</li>
+ *   <li>app.otp.random.algorithm: SecureRandom algorithm (default: DRBG)</li>
+ *   <li>app.otp.random.stripes: Generator instances, 0 for one per processor (default: 0)</li>
+ *   <li>app.otp.random.reseed-interval: Draws per instance between reseeds, 0 to disable (default: 1000000)</li>
+ *   <li>app.otp.random.pool.enabled: Serve codes from a pre-generated pool (default: false)</li>
+ *   <li>app.otp.random.pool.size: Number of pre-generated values (default: 4096)</li>
+ *   <li>app.otp.clock.tick-ms: Refresh interval of the cached clock (default: 100)</li>
+ *   <li>app.otp.totp.master-secret: Base64 key user TOTP secrets are derived from (required if TOTP is enabled)</li>
+ *   <li>app.otp.totp.enrollments-file: File listing enrolled users and their secret generations (required if TOTP is enabled)</li>
+ *   <li>app.otp.totp.enrollments-refresh-ms: Minimum interval between checks of the enrollments file for changes (default: 10000)</li>
+ * </ul>
+ */
+@Slf4j
+@Configuration
+@Hidden // Hide from OpenAPI documentation
+public class OtpConfig {
+
+    @Value("${app.otp.store.type:" + InMemoryOtpStore.TYPE + "}")
+    private String storeType;
+
+    @Value("${app.otp.store.capacity:1000000}")
+    private long storeCapacity;
+
+    @Value("${app.otp.store.max-entries:0}")
+    private long storeMaxEntries;
+
+    @Value("${app.otp.store.max-bytes:0}")
+    private long storeMaxBytes;
+
+    @Value("${app.otp.store.overflow-policy:reject}")
+    private String storeOverflowPolicy;
+
+    @Value("${app.otp.store.shards:1}")
+    private int storeShards;
+
+    @Value("${app.otp.store.generation-seconds:0}")
+    private long generationSeconds;
+
+    @Value("${app.otp.expiry-minutes:5}")
+    private int otpExpiryMinutes;
+
+    @Value("${app.otp.journal.enabled:false}")
+    private boolean journalEnabled;
+
+    @Value("${app.otp.journal.directory:data/otp-journal}")
+    private String journalDirectory;
+
+    @Value("${app.otp.journal.flush-interval-ms:10}")
+    private long journalFlushIntervalMs;
+
+    @Value("${app.otp.journal.segment-size-mb:64}")
+    private int journalSegmentSizeMb;
+
+    @Value("${app.otp.random.algorithm:" + StripedSecureRandomCodeSource.DEFAULT_ALGORITHM + "}")
+    private String randomAlgorithm;
+
+    @Value("${app.otp.random.stripes:0}")
+    private int randomStripes;
+
+    @Value("${app.otp.random.reseed-interval:1000000}")
+    private long reseedInterval;
+
+    @Value("${app.otp.random.pool.enabled:false}")
+    private boolean poolEnabled;
+
+    @Value("${app.otp.random.pool.size:4096}")
+    private int poolSize;
+
+    @Value("${app.otp.clock.tick-ms:100}")
+    private long clockTickMillis;
+
+    @Value("${app.otp.totp.master-secret:}")
+    private String totpMasterSecret;
+
+    @Value("${app.otp.totp.algorithm:HmacSHA1}")
+    private String totpAlgorithm;
+
+    @Value("${app.otp.totp.enrollments-file:}")
+    private String totpEnrollmentsFile;
+
+    @Value("${app.otp.totp.enrollments-refresh-ms:10000}")
+    private long totpEnrollmentsRefreshMs;
+
+    /**
+     * Creates the OTP store selected by {@code app.otp.store.type}, optionally partitioned
+     * into shards, capped to a budget and wrapped in a durable journal that is replayed on startup.
+     * 
+     * @param otpClock the clock used to discard journaled entries that expired while down
+     * @return the configured OTP store
+     * @throws IllegalStateException if the store type is unknown
+     */
+    @Bean
+    public OtpStore otpStore(OtpClock otpClock) {
+        OtpStore store;
+        if (storeShards > 1) {
+            log.info("Using OTP store: {} x {} shards", storeType, storeShards);
+            store = new ShardedOtpStore(storeShards, shard -> createStore(storeCapacity / storeShards));
+        } else {
+            log.info("Using OTP store: {}", storeType);
+            store = createStore(storeCapacity);
+        }
+        long maxEntries = maxEntries();
+        if (maxEntries > 0) {
+            BoundedOtpStore.OverflowPolicy policy =
+                    BoundedOtpStore.OverflowPolicy.valueOf(storeOverflowPolicy.toUpperCase());
+            log.info("Capping pending OTPs at {} ({} on overflow)", maxEntries, policy);
+            if (policy == BoundedOtpStore.OverflowPolicy.EVICT
+                    && (storeType.equals(OffHeapOtpStore.TYPE) || storeType.equals(PrimitiveOtpStore.TYPE))) {
+                log.warn("OTP store {} cannot evict; app.otp.store.overflow-policy=evict rejects new challenges "
+                        + "when the store is full, like reject", storeType);
+            }
+            store = new BoundedOtpStore(store, maxEntries, policy);
+        }
+        if (journalEnabled) {
+            log.info("Journaling pending OTPs to {}", journalDirectory);
+            store = JournaledOtpStore.open(store, Path.of(journalDirectory), journalSegmentSizeMb << 20,
+                    journalFlushIntervalMs, otpClock.epochSecond());
+        }
+        return store;
+    }
+
+    /**
+     * Creates the clock shared by the OTP services: a cached epoch second refreshed in the
+     * background, so requests read the time without allocating.
+     * 
+     * @return the OTP clock
+     */
+    @Bean
+    public OtpClock otpClock() {
+        return new CoarseOtpClock(clockTickMillis);
+    }
+
+    /**
+     * Publishes OTP store counters, including per-shard ones, to the meter registry.
+     * 
+     * @param otpStore the configured OTP store
+     * @return the meter binder
+     */
+    @Bean
+    public MeterBinder otpStoreMetrics(OtpStore otpStore) {
+        return new OtpStoreMetrics(otpStore);
+    }
+
+    /**
+     * Publishes the challenges locked by the attempt limit and the verifications rejected
+     * because of it, for stored and signed OTPs and for TOTP.
+     * 
+     * @param otpService the stored OTP service
+     * @param signedOtpService the signed challenge service
+     * @param totpService the TOTP service
+     * @return the meter binder
+     */
+    @Bean
+    public MeterBinder otpAttemptMetrics(OtpService otpService, SignedOtpService signedOtpService,
+                                         TotpService totpService) {
+        return new OtpAttemptMetrics(otpService, signedOtpService, totpService);
+    }
+
+    private long maxEntries() {
+        long maxEntries = storeMaxEntries > 0 ? storeMaxEntries : Long.MAX_VALUE;
+        if (storeMaxBytes > 0) {
+            // Tables round up to powers of two per segment, so size from what fits each shard's share
+            int shards = Math.max(1, storeShards);
+            long budgetEntries = switch (storeType) {
+                case OffHeapOtpStore.TYPE -> shards * OffHeapOtpStore.maxEntriesWithin(storeMaxBytes / shards);
+                case PrimitiveOtpStore.TYPE -> shards * PrimitiveOtpStore.maxEntriesWithin(storeMaxBytes / shards);
+                default -> storeMaxBytes / InMemoryOtpStore.ESTIMATED_ENTRY_BYTES;
+            };
+            maxEntries = Math.min(maxEntries, budgetEntries);
+        }
+        return maxEntries == Long.MAX_VALUE ? 0 : maxEntries;
+    }
+
+    private OtpStore createStore(long capacity) {
+        long maxBytes = storeMaxBytes / Math.max(1, storeShards);
+        return switch (storeType) {
+            case InMemoryOtpStore.TYPE -> new InMemoryOtpStore(otpExpiryMinutes * 60L + 1);
+            case GenerationalOtpStore.TYPE -> new GenerationalOtpStore(otpExpiryMinutes * 60L,
+                    generationSeconds > 0 ? generationSeconds : otpExpiryMinutes * 60L);
+            case PrimitiveOtpStore.TYPE -> new PrimitiveOtpStore(
+                    maxBytes > 0 ? Math.min(capacity, PrimitiveOtpStore.maxEntriesWithin(maxBytes)) : capacity, maxBytes);
+            case OffHeapOtpStore.TYPE -> new OffHeapOtpStore(
+                    maxBytes > 0 ? Math.min(capacity, OffHeapOtpStore.maxEntriesWithin(maxBytes)) : capacity);
+            default -> throw new IllegalStateException("Unknown OTP store type: " + storeType);
+        };
+    }
+
+    /**
+     * Creates the source of OTP codes: striped SecureRandom instances, optionally
+     * fronted by a pool of pre-generated values.
+     * 
+     * @return the configured code source
+     */
+    @Bean
+    public OtpCodeSource otpCodeSource() {
+        StripedSecureRandomCodeSource source =
+                new StripedSecureRandomCodeSource(randomAlgorithm, randomStripes, reseedInterval);
+        if (poolEnabled) {
+            log.info("Using pre-generated OTP code pool of size {}", poolSize);
+            return new PooledOtpCodeSource(source, poolSize);
+        }
+        return source;
+    }
+
+    /**
+     * Creates the provider of per-user TOTP secrets, derived from a master key so that
+     * every replica computes the same secrets, for the users listed in the enrollments file.
+     * 
+     * @return the TOTP secret provider
+     * @throws IllegalStateException if no master secret or enrollments file is configured
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.otp.totp.enabled", havingValue = "true")
+    public TotpSecretProvider totpSecretProvider() {
+        if (totpMasterSecret.isBlank()) {
+            throw new IllegalStateException("app.otp.totp.master-secret must be set when TOTP is enabled");
+        }
+        if (totpEnrollmentsFile.isBlank()) {
+            throw new IllegalStateException("app.otp.totp.enrollments-file must be set when TOTP is enabled");
+        }
+        log.info("TOTP verification enabled using {}", totpAlgorithm);
+        return new DerivedTotpSecretProvider(Base64.getDecoder().decode(totpMasterSecret), totpAlgorithm,
+                new FileTotpEnrollments(Path.of(totpEnrollmentsFile), totpEnrollmentsRefreshMs));
+    }
+}
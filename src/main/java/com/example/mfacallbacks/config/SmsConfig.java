@@ -0,0 +1,485 @@
+package com.example.mfacallbacks.config;
+
+import com.example.mfacallbacks.service.SmsDeliveryMetrics;
+import com.example.mfacallbacks.service.SmsService;
+import com.example.mfacallbacks.sms.CircuitBreakerSmsGateway;
+import com.example.mfacallbacks.sms.FileSmsGateway;
+import com.example.mfacallbacks.sms.HedgedSmsGateway;
+import com.example.mfacallbacks.sms.HttpSmsGateway;
+import com.example.mfacallbacks.sms.NullSmsGateway;
+import com.example.mfacallbacks.sms.SenderPool;
+import com.example.mfacallbacks.sms.SenderRateLimiter;
+import com.example.mfacallbacks.sms.SenderRateMetrics;
+import com.example.mfacallbacks.sms.SmsCircuitBreaker;
+import com.example.mfacallbacks.sms.SmsCircuitBreakerHealthIndicator;
+import com.example.mfacallbacks.sms.SmsCircuitBreakerMetrics;
+import com.example.mfacallbacks.sms.SmsConcurrencyLimiter;
+import com.example.mfacallbacks.sms.SmsDeadLetterQueue;
+import com.example.mfacallbacks.sms.SmsDispatchExecutor;
+import com.example.mfacallbacks.sms.SmsDispatchMetrics;
+import com.example.mfacallbacks.sms.SmsGateway;
+import com.example.mfacallbacks.sms.SmsHedgeMetrics;
+import com.example.mfacallbacks.sms.SmsRetryPolicy;
+import com.example.mfacallbacks.sms.StubSmsGateway;
+import com.example.mfacallbacks.sms.TwilioSmsGateway;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.swagger.v3.oas.annotations.Hidden;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configuration class for outbound SMS dispatch.
+ *
+ * <p>Provides the {@link SmsDispatchExecutor} that {@link com.example.mfacallbacks.service.SmsService}
+ * sends through, separate from the request and scheduling thread pools, and selects the
+ * {@link SmsGateway} that delivers the messages, the {@link SenderPool} of numbers they are
+ * sent from and the {@link SenderRateLimiter} that keeps each number within the provider's throughput,
+ * as well as the {@link SmsRetryPolicy} and {@link SmsDeadLetterQueue} handling failed sends and
+ * the {@link SmsCircuitBreaker} that stops calling a failing provider. Slow sends may be hedged
+ * to a secondary provider with {@link HedgedSmsGateway}.
+ *
+ * <p>Configuration properties:
+ * <ul>
+ *   <li>app.sms.gateway.type: Provider to use, twilio, http, stub, file or null (default: twilio)</li>
+ *   <li>app.sms.gateway.http.base-url: API root of the non-blocking Twilio transport (default: https://api.twilio.com)</li>
+ *   <li>app.sms.gateway.http.connect-timeout-ms: Connection timeout of the HTTP transport (default: 2000)</li>
+ *   <li>app.sms.gateway.http.request-timeout-ms: Answer timeout of the HTTP transport (default: 10000)</li>
+ *   <li>app.sms.gateway.http.threads: Callback threads of the HTTP transport (default: 4)</li>
+ *   <li>app.sms.gateway.stub.latency-ms: Simulated round trip of the stub provider (default: 100)</li>
+ *   <li>app.sms.gateway.stub.jitter-ms: Maximum random delay added to the stub latency (default: 50)</li>
+ *   <li>app.sms.gateway.stub.error-rate: Probability of a stub send failing (default: 0)</li>
+ *   <li>app.sms.gateway.file.path: File the file sink appends messages to (default: data/sms-outbox.log)</li>
+ *   <li>app.sms.dispatch.max-concurrency: Sends in flight at once, the initial limit unless fixed (default: 32)</li>
+ *   <li>app.sms.dispatch.limit.algorithm: gradient, aimd or fixed; how the limit follows the provider (default: gradient)</li>
+ *   <li>app.sms.dispatch.limit.min, max: Bounds of an adaptive limit (default: 1, 256)</li>
+ *   <li>app.sms.dispatch.limit.rtt-tolerance: Rise of the round trip over its long-term value before the gradient limit shrinks (default: 1.5)</li>
+ *   <li>app.sms.dispatch.limit.backoff-ratio: Factor applied to an adaptive limit when the provider drops a send (default: 0.9)</li>
+ *   <li>app.sms.dispatch.queue-capacity: Sends waiting for a slot before new ones are rejected with 429 (default: 5000)</li>
+ *   <li>app.sms.dispatch.shutdown-timeout-ms: Time queued sends get to finish at shutdown (default: 10000)</li>
+ *   <li>app.sms.senders.numbers: Sender numbers separated by commas (default: twilio.phone-number)</li>
+ *   <li>app.sms.senders.country-groups: Numbers dedicated to destination prefixes, as prefix=number|number pairs separated by commas (default: none)</li>
+ *   <li>app.sms.senders.sticky: Whether a recipient always gets the same number of its group (default: false)</li>
+ *   <li>app.sms.rate.per-second: Sends per second per sender number, 0 for no limit (default: 1)</li>
+ *   <li>app.sms.rate.burst: Sends a sender number may make back to back after being idle (default: 1)</li>
+ *   <li>app.sms.rate.max-backlog-ms: Longest a send may wait for its sender's rate before being rejected with 429 (default: 30000)</li>
+ *   <li>app.sms.rate.overrides: Rates of specific numbers, e.g. short codes, as number=rate pairs separated by commas (default: none)</li>
+ *   <li>app.sms.retry.max-attempts: Attempts per message, the first one included (default: 4)</li>
+ *   <li>app.sms.retry.base-delay-ms: Ceiling of the delay before the first retry, doubled per retry (default: 500)</li>
+ *   <li>app.sms.retry.max-delay-ms: Largest ceiling of the delay before a retry (default: 10000)</li>
+ *   <li>app.sms.circuit-breaker.enabled: Whether sends go through the circuit breaker (default: true)</li>
+ *   <li>app.sms.circuit-breaker.failure-rate-percent: Share of failed calls that opens the breaker (default: 50)</li>
+ *   <li>app.sms.circuit-breaker.window-size: Recent calls the failure rate is computed over (default: 20)</li>
+ *   <li>app.sms.circuit-breaker.minimum-calls: Calls needed before the breaker may open (default: 10)</li>
+ *   <li>app.sms.circuit-breaker.open-ms: Time the breaker refuses sends before probing (default: 30000)</li>
+ *   <li>app.sms.circuit-breaker.probes: Calls let through while probing, all of which must succeed (default: 3)</li>
+ *   <li>app.sms.hedge.enabled: Whether slow sends are repeated through a secondary provider (default: false)</li>
+ *   <li>app.sms.hedge.secondary.type: Secondary provider, same types as the primary (default: http)</li>
+ *   <li>app.sms.hedge.secondary.base-url, account-sid, auth-token: API root and credentials of an http secondary</li>
+ *   <li>app.sms.hedge.secondary.numbers: Sender numbers of the secondary, separated by commas, paced at app.sms.rate;
+ *       empty if both providers send from app.sms.senders, sharing their rate (default: none)</li>
+ *   <li>app.sms.hedge.percentile: Percentile of the primary's acceptance times after which a send is hedged (default: 95)</li>
+ *   <li>app.sms.hedge.min-delay-ms: Shortest hedge delay (default: 200)</li>
+ *   <li>app.sms.hedge.max-delay-ms: Longest hedge delay, used until enough sends were timed (default: 3000)</li>
+ *   <li>app.sms.hedge.budget-percent: Hedges allowed per hundred sends (default: 5)</li>
+ *   <li>app.sms.dead-letter.path: Append-only file of sends that failed for good (default: data/sms-dead-letter.log)</li>
+ * </ul>
+ */
+@Slf4j
+@Configuration
+@Hidden // Hide from OpenAPI documentation
+public class SmsConfig {
+
+    @Value("${app.sms.gateway.type:" + TwilioSmsGateway.TYPE + "}")
+    private String gatewayType;
+
+    @Value("${twilio.account-sid:}")
+    private String accountSid;
+
+    @Value("${twilio.auth-token:}")
+    private String authToken;
+
+    @Value("${app.sms.gateway.http.base-url:https://api.twilio.com}")
+    private String httpBaseUrl;
+
+    @Value("${app.sms.gateway.http.connect-timeout-ms:2000}")
+    private long httpConnectTimeoutMillis;
+
+    @Value("${app.sms.gateway.http.request-timeout-ms:10000}")
+    private long httpRequestTimeoutMillis;
+
+    @Value("${app.sms.gateway.http.threads:4}")
+    private int httpThreads;
+
+    @Value("${app.sms.gateway.stub.latency-ms:100}")
+    private long stubLatencyMillis;
+
+    @Value("${app.sms.gateway.stub.jitter-ms:50}")
+    private long stubJitterMillis;
+
+    @Value("${app.sms.gateway.stub.error-rate:0}")
+    private double stubErrorRate;
+
+    @Value("${app.sms.gateway.file.path:data/sms-outbox.log}")
+    private String filePath;
+
+    @Value("${app.sms.dispatch.max-concurrency:32}")
+    private int dispatchMaxConcurrency;
+
+    @Value("${app.sms.dispatch.limit.algorithm:gradient}")
+    private String dispatchLimitAlgorithm;
+
+    @Value("${app.sms.dispatch.limit.min:1}")
+    private int dispatchLimitMin;
+
+    @Value("${app.sms.dispatch.limit.max:256}")
+    private int dispatchLimitMax;
+
+    @Value("${app.sms.dispatch.limit.rtt-tolerance:1.5}")
+    private double dispatchLimitRttTolerance;
+
+    @Value("${app.sms.dispatch.limit.backoff-ratio:0.9}")
+    private double dispatchLimitBackoffRatio;
+
+    @Value("${app.sms.dispatch.queue-capacity:5000}")
+    private int dispatchQueueCapacity;
+
+    @Value("${app.sms.dispatch.shutdown-timeout-ms:10000}")
+    private long dispatchShutdownTimeoutMillis;
+
+    @Value("${app.sms.senders.numbers:${twilio.phone-number}}")
+    private String senderNumbers;
+
+    @Value("${app.sms.senders.country-groups:}")
+    private String senderCountryGroups;
+
+    @Value("${app.sms.senders.sticky:false}")
+    private boolean senderSticky;
+
+    @Value("${app.sms.retry.max-attempts:4}")
+    private int retryMaxAttempts;
+
+    @Value("${app.sms.retry.base-delay-ms:500}")
+    private long retryBaseDelayMillis;
+
+    @Value("${app.sms.retry.max-delay-ms:10000}")
+    private long retryMaxDelayMillis;
+
+    @Value("${app.sms.circuit-breaker.enabled:true}")
+    private boolean circuitBreakerEnabled;
+
+    @Value("${app.sms.circuit-breaker.failure-rate-percent:50}")
+    private int circuitFailureRatePercent;
+
+    @Value("${app.sms.circuit-breaker.window-size:20}")
+    private int circuitWindowSize;
+
+    @Value("${app.sms.circuit-breaker.minimum-calls:10}")
+    private int circuitMinimumCalls;
+
+    @Value("${app.sms.circuit-breaker.open-ms:30000}")
+    private long circuitOpenMillis;
+
+    @Value("${app.sms.circuit-breaker.probes:3}")
+    private int circuitProbes;
+
+    @Value("${app.sms.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${app.sms.hedge.secondary.type:" + HttpSmsGateway.TYPE + "}")
+    private String hedgeSecondaryType;
+
+    @Value("${app.sms.hedge.secondary.base-url:}")
+    private String hedgeSecondaryBaseUrl;
+
+    @Value("${app.sms.hedge.secondary.account-sid:}")
+    private String hedgeSecondaryAccountSid;
+
+    @Value("${app.sms.hedge.secondary.auth-token:}")
+    private String hedgeSecondaryAuthToken;
+
+    @Value("${app.sms.hedge.secondary.numbers:}")
+    private String hedgeSecondaryNumbers;
+
+    @Value("${app.sms.hedge.percentile:95}")
+    private double hedgePercentile;
+
+    @Value("${app.sms.hedge.min-delay-ms:200}")
+    private long hedgeMinDelayMillis;
+
+    @Value("${app.sms.hedge.max-delay-ms:3000}")
+    private long hedgeMaxDelayMillis;
+
+    @Value("${app.sms.hedge.budget-percent:5}")
+    private int hedgeBudgetPercent;
+
+    @Value("${app.sms.dead-letter.path:data/sms-dead-letter.log}")
+    private String deadLetterPath;
+
+    @Value("${app.sms.rate.per-second:1}")
+    private double ratePerSecond;
+
+    @Value("${app.sms.rate.burst:1}")
+    private int rateBurst;
+
+    @Value("${app.sms.rate.max-backlog-ms:30000}")
+    private long rateMaxBacklogMillis;
+
+    @Value("${app.sms.rate.overrides:}")
+    private String rateOverrides;
+
+    /**
+     * Creates the circuit breaker around the SMS provider. When disabled, no call is recorded
+     * and it stays closed.
+     *
+     * @return the circuit breaker
+     */
+    @Bean
+    public SmsCircuitBreaker smsCircuitBreaker() {
+        return new SmsCircuitBreaker(circuitFailureRatePercent, circuitWindowSize, circuitMinimumCalls,
+                circuitOpenMillis, circuitProbes);
+    }
+
+    /**
+     * Creates the SMS gateway selected by {@code app.sms.gateway.type}, behind the circuit
+     * breaker unless it is disabled, and hedged to the secondary provider if enabled. The
+     * secondary gets a breaker of its own, with the same settings, and sends from its own
+     * numbers if {@code app.sms.hedge.secondary.numbers} is set, or else from the primary's.
+     *
+     * @param smsCircuitBreaker the circuit breaker
+     * @param senderPool the primary's sender numbers
+     * @return the configured SMS gateway
+     * @throws IllegalStateException if a gateway type is unknown, or the http secondary has no base URL
+     */
+    @Bean
+    public SmsGateway smsGateway(SmsCircuitBreaker smsCircuitBreaker, SenderPool senderPool) {
+        SmsGateway gateway = gateway(gatewayType, httpBaseUrl, accountSid, authToken);
+        if (circuitBreakerEnabled) {
+            gateway = new CircuitBreakerSmsGateway(gateway, smsCircuitBreaker);
+        }
+        if (hedgeEnabled) {
+            if (HttpSmsGateway.TYPE.equals(hedgeSecondaryType) && hedgeSecondaryBaseUrl.isBlank()) {
+                // URI.create("") would only fail on the first hedge, deep in the HTTP client
+                throw new IllegalStateException(
+                        "app.sms.hedge.secondary.base-url is required for the http secondary SMS gateway");
+            }
+            SmsGateway secondary = gateway(hedgeSecondaryType, hedgeSecondaryBaseUrl,
+                    hedgeSecondaryAccountSid, hedgeSecondaryAuthToken);
+            if (circuitBreakerEnabled) {
+                // A failing secondary is cut off on its own, without affecting the primary's breaker
+                secondary = new CircuitBreakerSmsGateway(secondary, new SmsCircuitBreaker(circuitFailureRatePercent,
+                        circuitWindowSize, circuitMinimumCalls, circuitOpenMillis, circuitProbes));
+            }
+            List<String> secondaryNumbers = list(hedgeSecondaryNumbers, ",");
+            // Numbers shared by both providers share their carrier rate, so hedges take the primary's tokens
+            SenderPool secondarySenders = secondaryNumbers.isEmpty() ? senderPool : new SenderPool(secondaryNumbers,
+                    Map.of(), false, new SenderRateLimiter(ratePerSecond, rateBurst, rateMaxBacklogMillis, rateOverrides()));
+            log.info("Hedging SMS sends to the {} gateway after the p{} delay, {}% budget, from {} numbers",
+                    hedgeSecondaryType, hedgePercentile, hedgeBudgetPercent,
+                    secondaryNumbers.isEmpty() ? "the primary's" : secondaryNumbers.size());
+            gateway = new HedgedSmsGateway(gateway, secondary, secondarySenders, hedgePercentile,
+                    hedgeMinDelayMillis, hedgeMaxDelayMillis, hedgeBudgetPercent);
+        }
+        return gateway;
+    }
+
+    /**
+     * Publishes hedge counts, the current hedge delay and the secondary provider's circuit
+     * breaker under {@code sms.hedge.secondary.circuit} if sends are hedged.
+     *
+     * @param smsGateway the SMS gateway
+     * @return the meter binder
+     */
+    @Bean
+    public MeterBinder smsHedgeMetrics(SmsGateway smsGateway) {
+        return registry -> {
+            if (smsGateway instanceof HedgedSmsGateway hedged) {
+                new SmsHedgeMetrics(hedged).bindTo(registry);
+                if (hedged.secondary() instanceof CircuitBreakerSmsGateway secondary) {
+                    new SmsCircuitBreakerMetrics(secondary.breaker(), "sms.hedge.secondary.circuit").bindTo(registry);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates the SMS dispatch executor, its limit of sends in flight adapting to the provider
+     * as set by {@code app.sms.dispatch.limit}; it is closed with the application context.
+     *
+     * @return the executor
+     */
+    @Bean
+    public SmsDispatchExecutor smsDispatchExecutor() {
+        SmsConcurrencyLimiter.Algorithm algorithm =
+                SmsConcurrencyLimiter.Algorithm.valueOf(dispatchLimitAlgorithm.toUpperCase());
+        log.info("SMS dispatch: {} concurrent sends ({} limit), queue of {}",
+                dispatchMaxConcurrency, algorithm, dispatchQueueCapacity);
+        SmsConcurrencyLimiter limiter = new SmsConcurrencyLimiter(algorithm, dispatchMaxConcurrency,
+                dispatchLimitMin, dispatchLimitMax, dispatchLimitRttTolerance, dispatchLimitBackoffRatio);
+        return new SmsDispatchExecutor(limiter, dispatchQueueCapacity, dispatchShutdownTimeoutMillis);
+    }
+
+    /**
+     * Creates the per-sender rate limiter from {@code app.sms.rate}.
+     *
+     * @return the rate limiter
+     * @throws IllegalStateException if an override is not a number=rate pair
+     */
+    @Bean
+    public SenderRateLimiter senderRateLimiter() {
+        Map<String, Double> overrides = rateOverrides();
+        log.info("SMS rate: {}/s per sender, burst {}, {} overrides", ratePerSecond, rateBurst, overrides.size());
+        return new SenderRateLimiter(ratePerSecond, rateBurst, rateMaxBacklogMillis, overrides);
+    }
+
+    /**
+     * Creates the pool of sender numbers from {@code app.sms.senders}.
+     *
+     * @param senderRateLimiter the per-sender rate limiter
+     * @return the sender pool
+     * @throws IllegalStateException if a country group is not a prefix=numbers pair
+     */
+    @Bean
+    public SenderPool senderPool(SenderRateLimiter senderRateLimiter) {
+        Map<String, List<String>> groups = new HashMap<>();
+        pairs(senderCountryGroups, "SMS sender country group")
+                .forEach((prefix, numbers) -> groups.put(prefix, list(numbers, "\\|")));
+        SenderPool pool = new SenderPool(list(senderNumbers, ","), groups, senderSticky, senderRateLimiter);
+        log.info("SMS senders: {} numbers, {} country groups, sticky: {}", pool.numbers().size(), groups.size(), senderSticky);
+        return pool;
+    }
+
+    /**
+     * Publishes sender backlog, rejections and per-number utilization to the meter registry.
+     *
+     * @param senderRateLimiter the per-sender rate limiter
+     * @param senderPool the sender numbers
+     * @return the meter binder
+     */
+    @Bean
+    public MeterBinder senderRateMetrics(SenderRateLimiter senderRateLimiter, SenderPool senderPool) {
+        return new SenderRateMetrics(senderRateLimiter, senderPool.numbers());
+    }
+
+    /**
+     * Creates the retry policy for failed sends.
+     *
+     * @return the retry policy
+     */
+    @Bean
+    public SmsRetryPolicy smsRetryPolicy() {
+        return new SmsRetryPolicy(retryMaxAttempts, retryBaseDelayMillis, retryMaxDelayMillis);
+    }
+
+    /**
+     * Creates the dead-letter file for sends that failed for good; it is closed with the
+     * application context.
+     *
+     * @return the dead-letter queue
+     */
+    @Bean
+    public SmsDeadLetterQueue smsDeadLetterQueue() {
+        return new SmsDeadLetterQueue(Path.of(deadLetterPath));
+    }
+
+    /**
+     * Publishes delivered, retried and dead-lettered sends to the meter registry.
+     *
+     * @param smsService the SMS service
+     * @return the meter binder
+     */
+    @Bean
+    public MeterBinder smsDeliveryMetrics(SmsService smsService) {
+        return new SmsDeliveryMetrics(smsService);
+    }
+
+    /**
+     * Reports the circuit breaker state as the {@code sms} health component.
+     *
+     * @param smsCircuitBreaker the circuit breaker
+     * @return the health indicator
+     */
+    @Bean
+    public HealthIndicator smsHealthIndicator(SmsCircuitBreaker smsCircuitBreaker) {
+        return new SmsCircuitBreakerHealthIndicator(smsCircuitBreaker);
+    }
+
+    /**
+     * Publishes circuit breaker state and call outcomes to the meter registry.
+     *
+     * @param smsCircuitBreaker the circuit breaker
+     * @return the meter binder
+     */
+    @Bean
+    public MeterBinder smsCircuitBreakerMetrics(SmsCircuitBreaker smsCircuitBreaker) {
+        return new SmsCircuitBreakerMetrics(smsCircuitBreaker);
+    }
+
+    /**
+     * Publishes SMS dispatch queue depth, wait time and rejections to the meter registry.
+     *
+     * @param smsDispatchExecutor the SMS dispatch executor
+     * @return the meter binder
+     */
+    @Bean
+    public MeterBinder smsDispatchMetrics(SmsDispatchExecutor smsDispatchExecutor) {
+        return new SmsDispatchMetrics(smsDispatchExecutor);
+    }
+
+    private SmsGateway gateway(String type, String baseUrl, String sid, String token) {
+        SmsGateway gateway = switch (type) {
+            case TwilioSmsGateway.TYPE -> new TwilioSmsGateway();
+            case HttpSmsGateway.TYPE -> new HttpSmsGateway(URI.create(baseUrl), sid, token,
+                    Duration.ofMillis(httpConnectTimeoutMillis), Duration.ofMillis(httpRequestTimeoutMillis), httpThreads);
+            case StubSmsGateway.TYPE -> new StubSmsGateway(stubLatencyMillis, stubJitterMillis, stubErrorRate);
+            case FileSmsGateway.TYPE -> new FileSmsGateway(Path.of(filePath));
+            case NullSmsGateway.TYPE -> new NullSmsGateway();
+            default -> throw new IllegalStateException("Unknown SMS gateway type: " + type);
+        };
+        if (!TwilioSmsGateway.TYPE.equals(type) && !HttpSmsGateway.TYPE.equals(type)) {
+            log.warn("Using the {} SMS gateway: messages are not delivered", type);
+        }
+        return gateway;
+    }
+
+    private Map<String, Double> rateOverrides() {
+        Map<String, Double> overrides = new HashMap<>();
+        pairs(rateOverrides, "SMS rate override").forEach((number, rate) -> {
+            try {
+                overrides.put(number, Double.parseDouble(rate));
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("Invalid SMS rate override: " + number + "=" + rate, e);
+            }
+        });
+        return overrides;
+    }
+
+    private static Map<String, String> pairs(String value, String what) {
+        Map<String, String> pairs = new HashMap<>();
+        for (String entry : list(value, ",")) {
+            String[] pair = entry.split("=");
+            if (pair.length != 2 || pair[0].isBlank()) {
+                throw new IllegalStateException("Invalid " + what + ": " + entry);
+            }
+            pairs.put(pair[0].trim(), pair[1].trim());
+        }
+        return pairs;
+    }
+
+    private static List<String> list(String value, String separator) {
+        return Arrays.stream(value.split(separator))
+                .map(String::trim)
+                .filter(item -> !item.isEmpty())
+                .toList();
+    }
+}
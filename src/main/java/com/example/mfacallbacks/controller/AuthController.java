@@ -2,9 +2,12 @@ package com.example.mfacallbacks.controller;
 
 import com.example.mfacallbacks.dto.ApiResponseDTO;
 import com.example.mfacallbacks.dto.AuthRequest;
+import com.example.mfacallbacks.dto.MfaChallengeResponse;
 import com.example.mfacallbacks.dto.OtpVerificationRequest;
 import com.example.mfacallbacks.service.OtpService;
+import com.example.mfacallbacks.service.SignedOtpService;
 import com.example.mfacallbacks.service.SmsService;
+import com.example.mfacallbacks.service.TotpService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
@@ -26,7 +29,8 @@ import org.springframework.web.bind.annotation.*;
 /**
  * REST controller for handling Multi-Factor Authentication (MFA) operations.
  * 
- * <p>This controller provides endpoints for initiating MFA and verifying OTPs.
+ * <p>This controller provides endpoints for initiating MFA and verifying OTPs,
+ * either sent by SMS or generated by an authenticator app (TOTP).
  * All endpoints require a valid JWT token in the Authorization header.
  * 
  * <p>Base URL: /api/v1/auth
@@ -51,20 +55,25 @@ public class AuthController {
 
     private final OtpService otpService;
     private final SmsService smsService;
+    private final TotpService totpService;
+    private final SignedOtpService signedOtpService;
 
     /**
      * Initiates the MFA process by generating and sending an OTP to the user's phone number.
      * 
      * <p>This endpoint:
      * <ol>
-     *   <li>Generates a new OTP for the authenticated user</li>
-     *   <li>Stores the OTP with an expiration time</li>
+     *   <li>Fails fast with 503 while the SMS provider is down, before any state is created</li>
+     *   <li>Generates a new OTP for the authenticated user under a new challenge, leaving
+     *       the user's other pending challenges intact</li>
+     *   <li>Stores the OTP with an expiration time, or signs it into a challenge token
+     *       when signed challenges are enabled</li>
      *   <li>Sends the OTP to the provided phone number via SMS</li>
      * </ol>
      * 
      * @param jwt The authenticated user's JWT token (automatically injected)
      * @param request The authentication request containing the user's phone number
-     * @return ApiResponse with success message if OTP was sent successfully
+     * @return ApiResponse with the challenge to verify against
      */
     @Operation(
         summary = "Initiate MFA", 
@@ -76,7 +85,7 @@ public class AuthController {
                 content = @Content(
                     mediaType = MediaType.APPLICATION_JSON_VALUE,
                     examples = @ExampleObject(
-                        value = "{\"success\":true,\"message\":\"OTP sent successfully\"}"
+                        value = "{\"success\":true,\"message\":\"Operation successful\",\"data\":{\"status\":\"OTP sent successfully\",\"challenge\":\"AYx0c2b7...\"}}"
                     )
                 )
             ),
@@ -89,6 +98,16 @@ public class AuthController {
                 responseCode = "401",
                 description = "Unauthorized - Invalid or missing JWT token",
                 content = @Content
+            ),
+            @ApiResponse(
+                responseCode = "429",
+                description = "Too many pending OTP challenges, overall or for this user, or SMS dispatch is full",
+                content = @Content
+            ),
+            @ApiResponse(
+                responseCode = "503",
+                description = "SMS provider unavailable, retry after the Retry-After delay",
+                content = @Content
             )
         }
     )
@@ -97,21 +116,44 @@ public class AuthController {
         consumes = MediaType.APPLICATION_JSON_VALUE,
         produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public ResponseEntity<ApiResponseDTO<String>> initiateMfa(
+    public ResponseEntity<ApiResponseDTO<MfaChallengeResponse>> initiateMfa(
             @Parameter(hidden = true) @AuthenticationPrincipal Jwt jwt,
             @Valid @RequestBody AuthRequest request) {
         
         String userId = jwt.getSubject();
         String phoneNumber = request.getPhoneNumber();
         
-        // Generate OTP with expiration time
-        String otp = otpService.generateOtp(userId);
+        // Refuse before creating an OTP that could not be delivered
+        smsService.checkAvailable();
+        
+        // Generate OTP with expiration time, either stored under a new challenge or signed into one
+        String otp;
+        String challenge;
+        OtpService.OtpChallenge created = null;
+        if (signedOtpService.isEnabled()) {
+            SignedOtpService.IssuedChallenge issued = signedOtpService.issue(userId);
+            otp = issued.otp();
+            challenge = issued.token();
+        } else {
+            created = otpService.createChallenge(userId);
+            otp = created.otp();
+            challenge = created.challengeId();
+        }
         
         // Send OTP via SMS asynchronously
-        smsService.sendOtp(phoneNumber, otp);
+        try {
+            smsService.sendOtp(phoneNumber, otp, userId, created == null ? null : created.challengeId());
+        } catch (RuntimeException e) {
+            // A send refused with 429 must not leave a challenge counting against the user's cap;
+            // signed challenges keep no state to withdraw
+            if (created != null) {
+                otpService.cancelChallenge(userId, created);
+            }
+            throw e;
+        }
         
         log.info("MFA initiated for user: {}", userId);
-        return ResponseEntity.ok(ApiResponseDTO.success("OTP sent successfully"));
+        return ResponseEntity.ok(ApiResponseDTO.success(new MfaChallengeResponse("OTP sent successfully", challenge)));
     }
 
     /**
@@ -119,7 +161,8 @@ public class AuthController {
      * 
      * <p>This endpoint:
      * <ol>
-     *   <li>Validates the OTP against the one stored for the user</li>
+     *   <li>Validates the OTP against the given challenge, or the user's latest one if
+     *       none is given; with signed challenges enabled, the challenge is the token</li>
      *   <li>Checks if the OTP is not expired</li>
      *   <li>Consumes the OTP after successful validation (one-time use)</li>
      * </ol>
@@ -171,7 +214,14 @@ public class AuthController {
         String userId = jwt.getSubject();
         
         // Validate OTP (this also consumes it if valid)
-        boolean isValid = otpService.validateOtp(userId, request.getOtp());
+        boolean isValid;
+        if (request.getChallenge() == null) {
+            isValid = otpService.validateOtp(userId, request.getOtp());
+        } else if (signedOtpService.isEnabled()) {
+            isValid = signedOtpService.validate(userId, request.getChallenge(), request.getOtp());
+        } else {
+            isValid = otpService.validateOtp(userId, request.getChallenge(), request.getOtp());
+        }
         
         if (!isValid) {
             log.warn("Invalid OTP attempt for user: {}", userId);
@@ -182,4 +232,67 @@ public class AuthController {
         log.info("OTP verified successfully for user: {}", userId);
         return ResponseEntity.ok(ApiResponseDTO.success("OTP verified successfully"));
     }
+
+    /**
+     * Verifies a time-based code generated by the user's authenticator app.
+     * 
+     * <p>No MFA initiation is needed: the code is recomputed from the user's secret and the
+     * current time, and each code is accepted at most once. After too many wrong codes, the
+     * user is locked out and even the correct code is rejected for a while.
+     * 
+     * @param jwt The authenticated user's JWT token (automatically injected)
+     * @param request The verification request containing the code to validate
+     * @return ApiResponse with verification status
+     */
+    @Operation(
+        summary = "Verify TOTP",
+        description = "Validate a time-based code from an authenticator app (RFC 6238)",
+        responses = {
+            @ApiResponse(
+                responseCode = "200",
+                description = "Code verified successfully",
+                content = @Content(
+                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                    examples = @ExampleObject(
+                        value = "{\"success\":true,\"message\":\"TOTP verified successfully\"}"
+                    )
+                )
+            ),
+            @ApiResponse(
+                responseCode = "400",
+                description = "Invalid or already used code, too many wrong codes, or TOTP not enabled",
+                content = @Content(
+                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                    examples = @ExampleObject(
+                        value = "{\"success\":false,\"message\":\"Invalid or expired OTP\"}"
+                    )
+                )
+            ),
+            @ApiResponse(
+                responseCode = "401",
+                description = "Unauthorized - Invalid or missing JWT token",
+                content = @Content
+            )
+        }
+    )
+    @PostMapping(
+        value = "/verify-totp",
+        consumes = MediaType.APPLICATION_JSON_VALUE,
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<ApiResponseDTO<String>> verifyTotp(
+            @Parameter(hidden = true) @AuthenticationPrincipal Jwt jwt,
+            @Valid @RequestBody OtpVerificationRequest request) {
+
+        String userId = jwt.getSubject();
+
+        if (!totpService.validateTotp(userId, request.getOtp())) {
+            log.warn("Invalid TOTP attempt for user: {}", userId);
+            return ResponseEntity.badRequest()
+                    .body(ApiResponseDTO.error("Invalid or expired OTP"));
+        }
+
+        log.info("TOTP verified successfully for user: {}", userId);
+        return ResponseEntity.ok(ApiResponseDTO.success("TOTP verified successfully"));
+    }
 }
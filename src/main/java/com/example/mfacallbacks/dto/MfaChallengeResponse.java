@@ -0,0 +1,36 @@
+package com.example.mfacallbacks.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Data Transfer Object returned when MFA is initiated.
+ * Carries the challenge the OTP must be verified against, if any.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "Response payload for MFA initiation")
+@lombok.Generated
+public class MfaChallengeResponse {
+
+    /**
+     * Human-readable status of the initiation.
+     */
+    @Schema(description = "Status message", example = "OTP sent successfully")
+    private String status;
+
+    /**
+     * Opaque challenge to send back with the OTP, so parallel logins do not interfere.
+     */
+    @Schema(
+        description = "Challenge to include in the OTP verification request",
+        example = "AYx0c2b7f1d8a3e9...",
+        nullable = true
+    )
+    private String challenge;
+}
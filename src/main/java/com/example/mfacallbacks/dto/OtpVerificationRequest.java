@@ -41,4 +41,14 @@ public class OtpVerificationRequest {
         required = true
     )
     private String otp;
+
+    /**
+     * The challenge returned by MFA initiation; the user's latest challenge is used if omitted.
+     */
+    @Schema(
+        description = "Challenge returned by /initiate-mfa; defaults to the latest one",
+        example = "AYx0c2b7f1d8a3e9...",
+        nullable = true
+    )
+    private String challenge;
 }
@@ -0,0 +1,12 @@
+package com.example.mfacallbacks.exception;
+
+/**
+ * Thrown when a bounded resource is full and new work is rejected; mapped to 429.
+ * 
+ * <p>Raised on hot paths during request floods, so no stack trace is captured.
+ */
+public class CapacityExceededException extends RuntimeException {
+    public CapacityExceededException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -3,6 +3,7 @@ package com.example.mfacallbacks.exception;
 import com.example.mfacallbacks.dto.ApiResponseDTO;
 import jakarta.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -57,6 +58,31 @@ public class GlobalExceptionHandler {
                 .body(ApiResponseDTO.error("Validation failed: " + ex.getMessage()));
     }
 
+    @ExceptionHandler(value = {OtpException.class})
+    public ResponseEntity<ApiResponseDTO<?>> handleOtpException(OtpException ex) {
+        log.warn("OTP error: {}", ex.getMessage());
+        return ResponseEntity.badRequest()
+                .body(ApiResponseDTO.error(ex.getMessage()));
+    }
+
+    @ExceptionHandler(value = {CapacityExceededException.class})
+    public ResponseEntity<ApiResponseDTO<?>> handleCapacityExceededException(CapacityExceededException ex) {
+        // Logged at debug: this fires for every rejected request during a flood
+        log.debug("Capacity exceeded: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ApiResponseDTO.error(ex.getMessage()));
+    }
+
+    @ExceptionHandler(value = {SmsUnavailableException.class})
+    public ResponseEntity<ApiResponseDTO<?>> handleSmsUnavailableException(SmsUnavailableException ex) {
+        // Logged at debug: this fires for every MFA request while the SMS provider is down
+        log.debug("SMS unavailable: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ApiResponseDTO.error(ex.getMessage()));
+    }
+
     @ExceptionHandler(value = {Exception.class})
     public ResponseEntity<ApiResponseDTO<?>> handleAllExceptions(Exception ex, WebRequest request) {
         log.error("Unexpected error: {}", ex.getMessage(), ex);
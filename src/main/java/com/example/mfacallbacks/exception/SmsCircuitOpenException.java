@@ -0,0 +1,17 @@
+package com.example.mfacallbacks.exception;
+
+/**
+ * Thrown by {@link com.example.mfacallbacks.sms.CircuitBreakerSmsGateway} for a send it refused
+ * because the breaker is open, so the provider was never called.
+ *
+ * <p>It carries no status and is retried like a send that got no answer, but
+ * {@link com.example.mfacallbacks.sms.SmsConcurrencyLimiter} tells it apart from a timeout: a
+ * refused send says nothing about the provider's round trip and must not shrink the limit.
+ * Its only origin is the breaker check, so it is created without a stack trace.
+ */
+public class SmsCircuitOpenException extends SmsException {
+
+    public SmsCircuitOpenException(String message) {
+        super(message, NO_STATUS, false);
+    }
+}
@@ -1,11 +1,61 @@
 package com.example.mfacallbacks.exception;
 
+/**
+ * Thrown when an SMS could not be handed to the provider.
+ *
+ * <p>Carries the provider's HTTP status, or {@link #NO_STATUS} if no answer was received, so a
+ * failed send can be classified: no answer, 429 and 5xx are worth retrying, anything else will
+ * fail again and is permanent.
+ */
 public class SmsException extends RuntimeException {
+
+    /** Status of a send that got no answer from the provider */
+    public static final int NO_STATUS = 0;
+
+    private final int statusCode;
+
     public SmsException(String message) {
-        super(message);
+        this(message, NO_STATUS);
     }
     
     public SmsException(String message, Throwable cause) {
+        this(message, NO_STATUS, cause);
+    }
+
+    public SmsException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public SmsException(String message, int statusCode, Throwable cause) {
         super(message, cause);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * For failures raised so often that a stack trace would cost more than it tells; suppressed
+     * exceptions are disabled as well.
+     *
+     * @param message the detail message
+     * @param statusCode the provider's HTTP status, or {@link #NO_STATUS}
+     * @param writableStackTrace whether the stack trace is captured
+     */
+    protected SmsException(String message, int statusCode, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return the provider's HTTP status, or {@link #NO_STATUS} if it did not answer
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return whether the same send may succeed later: no answer, 429 or 5xx
+     */
+    public boolean isRetryable() {
+        return statusCode == NO_STATUS || statusCode == 429 || statusCode >= 500;
     }
 }
@@ -0,0 +1,23 @@
+package com.example.mfacallbacks.exception;
+
+/**
+ * Thrown when no SMS can be sent because the provider is failing; mapped to 503.
+ * 
+ * <p>Raised for every request while the provider is down, so no stack trace is captured.
+ */
+public class SmsUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public SmsUnavailableException(String message, long retryAfterSeconds) {
+        super(message, null, false, false);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return seconds until sending is tried again
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.mfacallbacks.random;
+
+/**
+ * Source of uniformly distributed OTP codes.
+ *
+ * <p>Implementations must be safe for concurrent use from request threads and must be
+ * backed by a cryptographically strong generator.
+ */
+public interface OtpCodeSource {
+
+    /**
+     * Returns a uniformly distributed code.
+     *
+     * @param bound the exclusive upper bound, must be positive
+     * @return a value between 0 (inclusive) and {@code bound} (exclusive)
+     */
+    int nextCode(int bound);
+}
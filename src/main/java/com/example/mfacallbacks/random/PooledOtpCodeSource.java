@@ -0,0 +1,143 @@
+package com.example.mfacallbacks.random;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link OtpCodeSource} that serves codes from a buffer of pre-generated random values so the
+ * request path never waits on the generator.
+ *
+ * <p>The buffer is a bounded lock-free multi-producer/multi-consumer ring (sequence-numbered
+ * slots) refilled by a background thread. Consumers wake the refiller each time another half
+ * ring has been consumed. If the ring is ever empty, the code is drawn directly from the
+ * underlying source instead of waiting.
+ *
+ * <p>Raw values are uniform in {@code [0, Integer.MAX_VALUE)} and are mapped to the requested
+ * bound with rejection sampling, so the pool works for any OTP length without modulo bias.
+ */
+@Slf4j
+public class PooledOtpCodeSource implements OtpCodeSource, AutoCloseable {
+
+    private static final int EMPTY = -1;
+    private static final long IDLE_PARK_NANOS = 10_000_000L;
+
+    private final StripedSecureRandomCodeSource source;
+    private final int[] values;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder misses = new LongAdder();
+    private final Thread refiller;
+    private volatile boolean running = true;
+
+    /**
+     * @param source the generator used to fill the pool and to serve misses
+     * @param capacity the number of buffered values; rounded up to a power of two
+     */
+    public PooledOtpCodeSource(StripedSecureRandomCodeSource source, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.source = source;
+        this.values = new int[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.refiller = Thread.ofPlatform().name("otp-code-pool").daemon().start(this::refill);
+    }
+
+    @Override
+    public int nextCode(int bound) {
+        int limit = Integer.MAX_VALUE - (Integer.MAX_VALUE % bound);
+        while (true) {
+            int raw = poll();
+            if (raw == EMPTY) {
+                misses.increment();
+                return source.nextCode(bound);
+            }
+            if (raw < limit) {
+                return raw % bound;
+            }
+        }
+    }
+
+    /**
+     * @return the number of buffered values
+     */
+    public int available() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * @return how many codes had to be drawn directly because the pool was empty
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(refiller);
+        source.close();
+    }
+
+    private void refill() {
+        while (running) {
+            while (running && offer(source.nextRaw())) {
+                // keep filling until the ring is full
+            }
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        log.debug("OTP code pool refiller stopped");
+    }
+
+    private boolean offer(int value) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    values[index] = value;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private int poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    int value = values[index];
+                    sequences.set(index, position + mask + 1);
+                    if (((position + 1) & (mask >> 1)) == 0) {
+                        // Crossed another half of the ring; make sure the refiller is awake
+                        LockSupport.unpark(refiller);
+                    }
+                    return value;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return EMPTY;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+}
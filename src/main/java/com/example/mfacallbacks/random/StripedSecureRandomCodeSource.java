@@ -0,0 +1,108 @@
+package com.example.mfacallbacks.random;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link OtpCodeSource} that spreads draws over several independent {@link SecureRandom}
+ * instances so that concurrent request threads rarely share one.
+ *
+ * <p>The instance is chosen from the calling thread's ID. Each instance is reseeded after
+ * a configurable number of draws; reseeding may block on the entropy source, so it runs on
+ * a background thread and never delays the caller.
+ */
+@Slf4j
+public class StripedSecureRandomCodeSource implements OtpCodeSource, AutoCloseable {
+
+    /** Default algorithm: the NIST SP 800-90Ar1 DRBG shipped with the JDK */
+    public static final String DEFAULT_ALGORITHM = "DRBG";
+
+    private final SecureRandom[] stripes;
+    private final AtomicLongArray draws;
+    private final long reseedInterval;
+    private final ExecutorService reseeder;
+    private final AtomicBoolean reseedSupported = new AtomicBoolean(true);
+
+    /**
+     * @param algorithm the {@link SecureRandom} algorithm, e.g. DRBG or NativePRNGNonBlocking
+     * @param stripes the number of generator instances; 0 or less uses one per available processor
+     * @param reseedInterval draws per instance between reseeds; 0 or less disables reseeding
+     * @throws IllegalArgumentException if the algorithm is not available
+     */
+    public StripedSecureRandomCodeSource(String algorithm, int stripes, long reseedInterval) {
+        int count = Integer.highestOneBit(Math.max(1, stripes > 0 ? stripes
+                : Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        this.stripes = new SecureRandom[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = newInstance(algorithm);
+        }
+        this.draws = new AtomicLongArray(count);
+        this.reseedInterval = reseedInterval;
+        this.reseeder = reseedInterval > 0
+                ? Executors.newSingleThreadExecutor(Thread.ofPlatform().name("otp-reseed").daemon().factory())
+                : null;
+        log.debug("OTP randomness: algorithm={}, stripes={}, reseed every {} draws", algorithm, count, reseedInterval);
+    }
+
+    @Override
+    public int nextCode(int bound) {
+        int stripe = (int) mix(Thread.currentThread().threadId()) & (stripes.length - 1);
+        SecureRandom random = stripes[stripe];
+        if (reseeder != null && draws.incrementAndGet(stripe) % reseedInterval == 0) {
+            reseed(random);
+        }
+        return random.nextInt(bound);
+    }
+
+    /**
+     * Draws a raw non-negative value, used by {@link PooledOtpCodeSource} to fill its buffer.
+     *
+     * @return a value between 0 (inclusive) and {@link Integer#MAX_VALUE} (exclusive)
+     */
+    int nextRaw() {
+        return nextCode(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() {
+        if (reseeder != null) {
+            reseeder.shutdownNow();
+        }
+    }
+
+    private void reseed(SecureRandom random) {
+        if (!reseedSupported.get()) {
+            return;
+        }
+        reseeder.execute(() -> {
+            try {
+                random.reseed();
+            } catch (UnsupportedOperationException e) {
+                if (reseedSupported.compareAndSet(true, false)) {
+                    log.warn("SecureRandom algorithm {} does not support reseeding; reseed policy disabled",
+                            random.getAlgorithm());
+                }
+            }
+        });
+    }
+
+    private static SecureRandom newInstance(String algorithm) {
+        try {
+            return SecureRandom.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported SecureRandom algorithm: " + algorithm, e);
+        }
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        return value ^ (value >>> 33);
+    }
+}
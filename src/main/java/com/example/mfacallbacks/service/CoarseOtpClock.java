@@ -0,0 +1,45 @@
+package com.example.mfacallbacks.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link OtpClock} that serves a cached epoch second refreshed by a background tick.
+ *
+ * <p>Reading the time is a single volatile load with no allocation or system call. The value
+ * lags the wall clock by at most one tick, which is negligible next to OTP lifetimes measured
+ * in minutes.
+ */
+public class CoarseOtpClock implements OtpClock, AutoCloseable {
+
+    private final ScheduledExecutorService ticker;
+    private volatile long epochSecond = currentEpochSecond();
+
+    /**
+     * @param tickMillis interval between refreshes of the cached value
+     */
+    public CoarseOtpClock(long tickMillis) {
+        this.ticker = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("otp-clock").daemon().factory());
+        ticker.scheduleAtFixedRate(() -> epochSecond = currentEpochSecond(),
+                tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long epochSecond() {
+        return epochSecond;
+    }
+
+    /**
+     * Stops the background tick.
+     */
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+
+    private static long currentEpochSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.mfacallbacks.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the attempt limiting counters of all OTP modes under the {@code otp.verify}
+ * prefix, tagged with {@code mode} ({@code stored}, {@code signed} or {@code totp}).
+ */
+public class OtpAttemptMetrics implements MeterBinder {
+
+    private final OtpService otpService;
+    private final SignedOtpService signedOtpService;
+    private final TotpService totpService;
+
+    public OtpAttemptMetrics(OtpService otpService, SignedOtpService signedOtpService, TotpService totpService) {
+        this.otpService = otpService;
+        this.signedOtpService = signedOtpService;
+        this.totpService = totpService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("otp.verify.lockouts", otpService, OtpService::lockouts)
+                .description("Challenges locked after too many wrong codes")
+                .tag("mode", "stored")
+                .register(registry);
+        FunctionCounter.builder("otp.verify.locked.rejections", otpService, OtpService::lockedRejections)
+                .description("Verifications rejected without comparison because the challenge was locked")
+                .tag("mode", "stored")
+                .register(registry);
+        FunctionCounter.builder("otp.verify.lockouts", signedOtpService, SignedOtpService::lockouts)
+                .description("Challenges locked after too many wrong codes")
+                .tag("mode", "signed")
+                .register(registry);
+        FunctionCounter.builder("otp.verify.locked.rejections", signedOtpService, SignedOtpService::lockedRejections)
+                .description("Verifications rejected without comparison because the challenge was locked")
+                .tag("mode", "signed")
+                .register(registry);
+        FunctionCounter.builder("otp.verify.lockouts", totpService, TotpService::lockouts)
+                .description("Users locked after too many wrong TOTP codes")
+                .tag("mode", "totp")
+                .register(registry);
+        FunctionCounter.builder("otp.verify.locked.rejections", totpService, TotpService::lockedRejections)
+                .description("TOTP verifications rejected without comparison because the user was locked")
+                .tag("mode", "totp")
+                .register(registry);
+    }
+}
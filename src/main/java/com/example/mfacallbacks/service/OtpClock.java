@@ -0,0 +1,17 @@
+package com.example.mfacallbacks.service;
+
+/**
+ * Source of the current time for OTP issuing, verification and cleanup.
+ *
+ * <p>Only whole epoch seconds are needed, so implementations can avoid allocating an
+ * {@link java.time.Instant} per request. Tests and benchmarks substitute a manually
+ * advanced clock to simulate expiry without waiting.
+ */
+@FunctionalInterface
+public interface OtpClock {
+
+    /**
+     * @return the current time in seconds since epoch
+     */
+    long epochSecond();
+}
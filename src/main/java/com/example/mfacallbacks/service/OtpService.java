@@ -1,5 +1,11 @@
 package com.example.mfacallbacks.service;
 
+import com.example.mfacallbacks.exception.CapacityExceededException;
+import com.example.mfacallbacks.random.OtpCodeSource;
+import com.example.mfacallbacks.store.ChallengeIndex;
+import com.example.mfacallbacks.store.OtpConsumeResult;
+import com.example.mfacallbacks.store.OtpStore;
+import com.example.mfacallbacks.store.PackedOtp;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -7,22 +13,40 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.security.SecureRandom;
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
 import jakarta.annotation.PostConstruct;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Service responsible for OTP (One-Time Password) generation and validation.
  * 
  * <p>This service provides thread-safe OTP operations with configurable length and expiry times.
- * OTPs are stored in-memory and automatically cleaned up when they expire.
+ * OTPs are kept in an {@link OtpStore} and automatically cleaned up when they expire.
+ * 
+ * <p>Every OTP belongs to a challenge with its own ID, so a user can have several logins in
+ * flight (for example web and mobile) without one invalidating the other. OTPs are stored
+ * under the user ID and challenge ID together, and a {@link ChallengeIndex} tracks each
+ * user's pending challenges to cap them and to resolve verifications that name no challenge.
+ * The index is rebuilt at startup from the challenges the store restored from its journal,
+ * and told of every challenge the store evicts to make room.
+ * 
+ * <p>Each stored OTP carries its remaining attempts in its packed value. A wrong code uses one
+ * up; after the last one the challenge stays locked until it expires, and the store rejects
+ * every further code for it before comparing anything.
  * 
  * <p>Configuration is done through application properties:
  * <ul>
  *   <li>app.otp.length: Length of generated OTP (default: 6)</li>
  *   <li>app.otp.expiry-minutes: OTP validity period in minutes (default: 5)</li>
+ *   <li>app.otp.max-pending-per-user: Pending challenges allowed per user (default: 5)</li>
+ *   <li>app.otp.max-attempts: Wrong codes allowed per challenge, 1 to 15 (default: 5)</li>
+ *   <li>app.otp.store.type: Backing store implementation (default: memory)</li>
+ *   <li>app.otp.random.*: Randomness source settings, see {@link com.example.mfacallbacks.config.OtpConfig}</li>
+ *   <li>app.otp.cleanup-interval-ms: Interval of the expired OTP cleanup (default: 1000)</li>
+ *   <li>app.otp.clock.tick-ms: Refresh interval of the cached clock (default: 100)</li>
  * </ul>
  */
 @Slf4j
@@ -30,13 +54,23 @@ import java.util.concurrent.ConcurrentHashMap;
 @RequiredArgsConstructor
 public class OtpService {
 
-    /** Secure random number generator for OTP generation */
-    private static final SecureRandom RANDOM = new SecureRandom();
-    
-    /** Thread-safe map to store active OTPs with user ID as key */
-    private final Map<String, OtpData> otpStore = new ConcurrentHashMap<>();
+    private static final HexFormat CHALLENGE_FORMAT = HexFormat.of();
+    private static final int CHALLENGE_ID_LENGTH = 16;
+
+    /** Thread-safe store of active OTPs keyed by user ID and challenge ID */
+    private final OtpStore otpStore;
+
+    /** Cryptographically strong source of OTP codes */
+    private final OtpCodeSource codeSource;
+
+    /** Source of the current epoch second */
+    private final OtpClock clock;
 
-    /** Length of generated OTP codes (configurable, default: 6) */
+    /** Challenges locked after too many wrong codes, and verifications rejected because of it */
+    private final LongAdder lockouts = new LongAdder();
+    private final LongAdder lockedRejections = new LongAdder();
+
+    /** Length of generated OTP codes (configurable, default: 6, clamped to 4-8) */
     @Value("${app.otp.length:6}")
     private int otpLength = 6;
 
@@ -46,18 +80,21 @@ public class OtpService {
     
     /** OTP expiry time in seconds (calculated from minutes) */
     private long otpExpirySeconds = 300;
-    
-    /**
-     * Sets the OTP expiry time in seconds (for testing purposes only).
-     * 
-     * @param otpExpirySeconds OTP validity period in seconds
-     */
-    public void setOtpExpirySeconds(long otpExpirySeconds) {
-        this.otpExpirySeconds = otpExpirySeconds;
-    }
+
+    /** Pending challenge IDs per user; recreated by {@link #init()} for the configured expiry */
+    private ChallengeIndex challengeIndex = new ChallengeIndex(otpExpirySeconds);
+
+    /** Pending challenges allowed per user (configurable, default: 5) */
+    @Value("${app.otp.max-pending-per-user:5}")
+    private int maxPendingPerUser = 5;
+
+    /** Wrong codes allowed per challenge (configurable, default: 5, clamped to 1-15) */
+    @Value("${app.otp.max-attempts:5}")
+    private int maxAttempts = 5;
 
     /**
-     * Initializes the service by calculating the OTP expiry time in seconds.
+     * Initializes the service by calculating the OTP expiry time in seconds, and indexes the
+     * challenges the store restored from its journal, if any.
      * This method is automatically called after dependency injection is done.
      */
     @PostConstruct
@@ -65,8 +102,13 @@ public class OtpService {
         if (otpExpiryMinutes > 0) {
             this.otpExpirySeconds = otpExpiryMinutes * 60L;
         }
-        log.debug("OTP Service initialized with OTP length: {}, Expiry: {} seconds", 
-                 otpLength, otpExpirySeconds);
+        this.maxAttempts = Math.min(PackedOtp.MAX_ATTEMPTS, Math.max(1, maxAttempts));
+        this.challengeIndex = new ChallengeIndex(otpExpirySeconds);
+        indexRecoveredChallenges();
+        // An evicted challenge must neither count against the cap nor be picked as the latest
+        otpStore.setEvictionListener(this::unindexEvicted);
+        log.debug("OTP Service initialized with OTP length: {}, Expiry: {} seconds, Attempts: {}", 
+                 otpLength, otpExpirySeconds, maxAttempts);
     }
 
     /**
@@ -76,33 +118,113 @@ public class OtpService {
      * @param userId the unique identifier for the user
      * @return the generated OTP as a string
      * @throws IllegalArgumentException if userId is null or empty
+     * @throws CapacityExceededException if the user has too many pending challenges
      */
     public String generateOtp(String userId) {
+        return createChallenge(userId).otp();
+    }
+
+    /**
+     * Starts a new challenge for the specified user: generates an OTP and stores it under a
+     * fresh challenge ID, leaving the user's other pending challenges intact.
+     *
+     * @param userId the unique identifier for the user
+     * @return the challenge ID and the generated OTP
+     * @throws IllegalArgumentException if userId is null or empty
+     * @throws CapacityExceededException if the user has too many pending challenges or the store is full
+     */
+    public OtpChallenge createChallenge(String userId) {
         if (userId == null || userId.trim().isEmpty()) {
             throw new IllegalArgumentException("User ID cannot be null or empty");
         }
         
-        // Ensure we have a valid OTP length (at least 4 digits)
-        int length = Math.max(4, otpLength);
+        // Ensure we have a valid OTP length (4 to 8 digits, so the code fits in the packed value)
+        int length = Math.min(PackedOtp.MAX_DIGITS, Math.max(4, otpLength));
         
-        // Generate a random number with exactly 'length' digits
-        StringBuilder otp = new StringBuilder();
-        for (int i = 0; i < length; i++) {
-            otp.append(RANDOM.nextInt(10)); // Append a random digit (0-9)
+        // Draw the whole code with a single bounded call instead of one call per digit
+        int digits = PackedOtp.encodeCode(codeSource.nextCode(PackedOtp.bound(length)), length);
+        long now = clock.epochSecond();
+        long expiryTime = now + otpExpirySeconds;
+
+        // Challenge IDs only need to be unique per user; the OTP is the secret
+        long challengeId;
+        do {
+            challengeId = ThreadLocalRandom.current().nextLong();
+        } while (challengeId == ChallengeIndex.NONE);
+        String challengeHex = CHALLENGE_FORMAT.toHexDigits(challengeId);
+        // Built once here and kept by the index for every later lookup of the challenge
+        String key = storeKey(userId, challengeHex);
+        if (!challengeIndex.register(userId, new ChallengeIndex.Challenge(challengeId, expiryTime, key), now,
+                maxPendingPerUser)) {
+            throw new CapacityExceededException("Too many pending OTP challenges for this user, please retry later");
         }
         
-        String otpString = otp.toString();
-        long expiryTime = Instant.now().plusSeconds(otpExpirySeconds).getEpochSecond();
+        // Store the OTP packed with its expiry and attempt limit in a single long
+        try {
+            otpStore.put(key, PackedOtp.pack(digits, expiryTime, maxAttempts));
+        } catch (RuntimeException e) {
+            // A full store must not leave an indexed challenge that holds no OTP
+            challengeIndex.remove(userId, challengeId);
+            throw e;
+        }
         
-        // Store the OTP
-        otpStore.put(userId, new OtpData(otpString, expiryTime));
+        // The only String produced is the one handed to the SMS message
+        String otpString = PackedOtp.toString(digits);
         log.debug("Generated OTP for user {}: {}", userId, otpString);
         
-        return otpString;
+        return new OtpChallenge(challengeHex, otpString);
     }
 
     /**
-     * Validates the provided OTP for the given user.
+     * Withdraws a challenge whose OTP could not be sent, so that it neither counts against the
+     * user's cap nor answers verifications until it expires.
+     *
+     * @param userId the user the challenge was created for
+     * @param challenge the challenge returned by {@link #createChallenge(String)}
+     */
+    public void cancelChallenge(String userId, OtpChallenge challenge) {
+        long challengeId = HexFormat.fromHexDigitsToLong(challenge.challengeId());
+        long now = clock.epochSecond();
+        ChallengeIndex.Challenge pending = challengeIndex.find(userId, challengeId, now);
+        if (pending != null) {
+            // Consuming with the challenge's own code removes it, from the journal too
+            otpStore.consume(pending.storeKey(), PackedOtp.encodeDigits(challenge.otp()), now);
+        }
+        challengeIndex.remove(userId, challengeId);
+        log.debug("Cancelled OTP challenge for user: {}", userId);
+    }
+
+    /**
+     * Replaces the OTP of a pending challenge with a new one, so that a message whose code was
+     * not kept can be sent again. The challenge keeps its expiry, and its attempts start over.
+     *
+     * @param userId the user the challenge was created for
+     * @param challenge the challenge ID returned by {@link #createChallenge(String)}
+     * @return the new OTP, or {@code null} if the challenge is no longer pending
+     * @throws CapacityExceededException if the store is full
+     */
+    public String reissueChallenge(String userId, String challenge) {
+        long challengeId = parseChallengeId(challenge);
+        long now = clock.epochSecond();
+        ChallengeIndex.Challenge pending = challengeId == ChallengeIndex.NONE ? null
+                : challengeIndex.find(userId, challengeId, now);
+        if (pending == null) {
+            return null;
+        }
+        int length = Math.min(PackedOtp.MAX_DIGITS, Math.max(4, otpLength));
+        int digits = PackedOtp.encodeCode(codeSource.nextCode(PackedOtp.bound(length)), length);
+        otpStore.put(pending.storeKey(), PackedOtp.pack(digits, pending.expiryTime(), maxAttempts));
+        if (challengeIndex.find(userId, challengeId, now) == null) {
+            // Consumed or cancelled meanwhile: the new code must not bring it back
+            otpStore.consume(pending.storeKey(), digits, now);
+            return null;
+        }
+        log.debug("Reissued OTP challenge for user: {}", userId);
+        return PackedOtp.toString(digits);
+    }
+
+    /**
+     * Validates the provided OTP against the user's most recent pending challenge.
      * If the OTP is valid and not expired, it will be removed from the store.
      * Expired OTPs are automatically cleaned up.
      *
@@ -115,88 +237,183 @@ public class OtpService {
         if (userId == null || otp == null) {
             return false;
         }
-        
-        // Retrieve the OTP data for the user (thread-safe operation)
-        OtpData otpData = otpStore.get(userId);
-        if (otpData == null) {
+        ChallengeIndex.Challenge challenge = challengeIndex.latest(userId, clock.epochSecond());
+        if (challenge == null) {
             log.debug("No OTP found for user: {}", userId);
             return false;
         }
-        
-        // Check if the provided OTP matches the stored one and is not expired
-        boolean isOtpValid = otp.equals(otpData.getOtp());
-        boolean isNotExpired = otpData.getExpiryTime() > Instant.now().getEpochSecond();
-        
-        // If OTP is valid and not expired, remove it from store (one-time use)
-        if (isOtpValid && isNotExpired) {
-            // Remove the OTP after successful validation (prevent replay attacks)
-            otpStore.remove(userId);
-            log.debug("Valid OTP for user: {}", userId);
-            return true;
+        return validate(userId, challenge, otp);
+    }
+
+    /**
+     * Validates the provided OTP for the given user and challenge.
+     * If the OTP is valid and not expired, it will be removed from the store.
+     *
+     * @param userId the user ID to validate the OTP for
+     * @param challenge the challenge ID returned by {@link #createChallenge(String)}
+     * @param otp the OTP to validate
+     * @return true if the OTP is valid and not expired, false otherwise
+     */
+    public boolean validateOtp(String userId, String challenge, String otp) {
+        if (userId == null || challenge == null || otp == null) {
+            return false;
+        }
+        long challengeId = parseChallengeId(challenge);
+        if (challengeId == ChallengeIndex.NONE) {
+            log.debug("Malformed challenge for user: {}", userId);
+            return false;
+        }
+        // Only indexed challenges have an OTP in the store; the index also holds their key
+        ChallengeIndex.Challenge pending = challengeIndex.find(userId, challengeId, clock.epochSecond());
+        if (pending == null) {
+            log.debug("No OTP found for user: {}", userId);
+            return false;
+        }
+        return validate(userId, pending, otp);
+    }
+
+    private static long parseChallengeId(String challenge) {
+        if (challenge == null || challenge.length() != CHALLENGE_ID_LENGTH) {
+            return ChallengeIndex.NONE;
+        }
+        try {
+            return HexFormat.fromHexDigitsToLong(challenge);
+        } catch (IllegalArgumentException e) {
+            return ChallengeIndex.NONE;
         }
+    }
+
+    private boolean validate(String userId, ChallengeIndex.Challenge challenge, String otp) {
+        // Parse the supplied OTP without allocating; malformed input never matches a stored code
+        int digits = PackedOtp.encodeDigits(otp);
         
-        // Handle invalid or expired OTP cases
-        if (!isNotExpired) {
-            log.debug("OTP expired for user: {}", userId);
-            // Clean up expired OTP to prevent memory leaks
-            otpStore.remove(userId);
-        } else if (!isOtpValid) {
-            log.debug("Invalid OTP for user: {}", userId);
+        // Check and consume the OTP in the store (thread-safe operation)
+        OtpConsumeResult result = otpStore.consume(challenge.storeKey(), digits, clock.epochSecond());
+        switch (result) {
+            case CONSUMED -> log.debug("Valid OTP for user: {}", userId);
+            case EXPIRED -> log.debug("OTP expired for user: {}", userId);
+            case NOT_FOUND -> log.debug("No OTP found for user: {}", userId);
             // Note: We don't remove on invalid OTP to prevent user enumeration attacks
             // by revealing whether a user has a pending OTP or not
+            case MISMATCH -> log.debug("Invalid OTP for user: {}", userId);
+            case LOCKED_OUT -> {
+                lockouts.increment();
+                log.debug("Invalid OTP for user: {}, challenge locked after {} attempts", userId, maxAttempts);
+            }
+            case LOCKED -> {
+                lockedRejections.increment();
+                log.debug("OTP challenge locked after too many attempts for user: {}", userId);
+            }
+        }
+        // Locked challenges stay indexed until they expire: they keep counting against the
+        // per-user cap and keep answering verifications that name no challenge
+        if (result == OtpConsumeResult.CONSUMED || result == OtpConsumeResult.EXPIRED
+                || result == OtpConsumeResult.NOT_FOUND) {
+            challengeIndex.remove(userId, challenge.challengeId());
         }
         
-        return false;
+        return result == OtpConsumeResult.CONSUMED;
     }
 
     /**
      * Asynchronously removes all expired OTPs from the store.
-     * This method is thread-safe and can be called concurrently.
-     */
-    /**
-     * Asynchronously scans and removes all expired OTPs from the store.
      * This method runs on a scheduled basis to prevent memory leaks from expired OTPs.
      * 
      * <p>Execution details:
      * <ul>
-     *   <li>Runs every 5 minutes (300,000 milliseconds)</li>
+     *   <li>Runs every second by default (app.otp.cleanup-interval-ms)</li>
      *   <li>Executes asynchronously in a separate thread</li>
-     *   <li>Thread-safe operation using ConcurrentHashMap</li>
+     *   <li>Only visits entries that are due, so expired OTPs are released close to their deadline</li>
      * </ul>
      */
     @Async
-    @Scheduled(fixedRate = 300000) // Run every 5 minutes
+    @Scheduled(fixedRateString = "${app.otp.cleanup-interval-ms:1000}")
     public void clearExpiredOtps() {
-        long currentTime = Instant.now().getEpochSecond();
+        long currentTime = clock.epochSecond();
         // Remove all entries where the expiry time is in the past
-        // Uses removeIf which is atomic and thread-safe with ConcurrentHashMap
-        otpStore.entrySet().removeIf(entry -> 
-            entry.getValue().getExpiryTime() <= currentTime
-        );
-        log.trace("Cleaned up expired OTPs. Current OTP store size: {}", otpStore.size());
+        int removed = otpStore.expire(currentTime);
+        challengeIndex.expire(currentTime);
+        log.trace("Cleaned up {} expired OTPs. Current OTP store size: {}", removed, otpStore.size());
     }
 
     /**
-     * Immutable inner class to store OTP data along with its expiry time.
-     * This ensures thread-safety as the data cannot be modified after creation.
+     * @return the number of challenges locked after reaching the attempt limit
      */
-    private static class OtpData {
-        // The one-time password value
-        private final String otp;
-        // Expiry time in seconds since epoch
-        private final long expiryTime;
+    public long lockouts() {
+        return lockouts.sum();
+    }
 
-        public OtpData(String otp, long expiryTime) {
-            this.otp = otp;
-            this.expiryTime = expiryTime;
+    /**
+     * @return the number of verifications rejected without comparison because the challenge was locked
+     */
+    public long lockedRejections() {
+        return lockedRejections.sum();
+    }
+
+    /**
+     * Registers the challenges restored by the store in the order they were created, so the
+     * latest one stays the one verifications without a challenge ID are checked against. Restored challenges count
+     * against the per-user cap but are all kept, even beyond it.
+     */
+    private void indexRecoveredChallenges() {
+        List<RecoveredChallenge> recovered = new ArrayList<>();
+        otpStore.drainRecovered((key, packedOtp) -> {
+            int separator = separatorOf(key);
+            if (separator > 0) {
+                recovered.add(new RecoveredChallenge(key.substring(0, separator), new ChallengeIndex.Challenge(
+                        HexFormat.fromHexDigitsToLong(key, separator + 1, key.length()), PackedOtp.expiryTime(packedOtp), key)));
+            }
+        });
+        if (recovered.isEmpty()) {
+            return;
         }
+        long now = clock.epochSecond();
+        for (RecoveredChallenge challenge : recovered) {
+            challengeIndex.register(challenge.userId(), challenge.challenge(), now, Integer.MAX_VALUE);
+        }
+        log.info("Indexed {} recovered OTP challenges", recovered.size());
+    }
 
-        public String getOtp() {
-            return otp;
+    private void unindexEvicted(String key) {
+        int separator = separatorOf(key);
+        if (separator > 0) {
+            challengeIndex.remove(key.substring(0, separator),
+                    HexFormat.fromHexDigitsToLong(key, separator + 1, key.length()));
         }
+    }
 
-        public long getExpiryTime() {
-            return expiryTime;
+    /**
+     * @return the position of the separator between user ID and challenge ID in a store key,
+     *         or -1 if the key was not written by this service
+     */
+    private static int separatorOf(String key) {
+        int separator = key.length() - CHALLENGE_ID_LENGTH - 1;
+        if (separator < 1 || key.charAt(separator) != ':') {
+            return -1;
         }
+        for (int i = separator + 1; i < key.length(); i++) {
+            if (!HexFormat.isHexDigit(key.charAt(i))) {
+                return -1;
+            }
+        }
+        return separator;
+    }
+
+    private static String storeKey(String userId, String challengeHex) {
+        // The fixed-length suffix keeps keys unambiguous whatever the user ID contains. Built
+        // once per challenge, as the store SPI and the journal format are keyed by String
+        return userId + ':' + challengeHex;
+    }
+
+    private record RecoveredChallenge(String userId, ChallengeIndex.Challenge challenge) {
+    }
+
+    /**
+     * A started challenge.
+     *
+     * @param challengeId the ID the OTP must be verified against
+     * @param otp the OTP to send to the user
+     */
+    public record OtpChallenge(String challengeId, String otp) {
     }
 }
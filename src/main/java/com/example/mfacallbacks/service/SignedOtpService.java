@@ -0,0 +1,221 @@
+package com.example.mfacallbacks.service;
+
+import com.example.mfacallbacks.challenge.RotatingAttemptCounter;
+import com.example.mfacallbacks.challenge.RotatingBloomFilter;
+import com.example.mfacallbacks.challenge.SignedChallengeCodec;
+import com.example.mfacallbacks.challenge.SignedChallengeCodec.SignedChallenge;
+import com.example.mfacallbacks.random.OtpCodeSource;
+import com.example.mfacallbacks.store.PackedOtp;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Base64;
+import java.util.concurrent.atomic.LongAdder;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Service issuing OTPs as signed challenge tokens instead of storing them.
+ *
+ * <p>The token returned by {@code /initiate-mfa} carries everything needed to check the code,
+ * so verification is CPU work alone and the OTP store is not involved. The only state is a
+ * fixed-size replay guard of consumed challenges and a {@link RotatingAttemptCounter} of wrong
+ * codes; once a challenge reaches the attempt limit it is rejected before its MAC is even
+ * computed. Both are held in the memory of the replica, so every verification of a user must
+ * reach the same replica: otherwise a consumed token could be replayed on another replica, and
+ * each replica would allow its own {@code max-attempts}. Signed mode therefore refuses to start
+ * unless {@code app.otp.signed.routing} states that this holds, either because the service runs
+ * as a single replica or because the load balancer routes each user (JWT subject) to one replica.
+ * Deployments that cannot guarantee either should keep the default stored mode.
+ *
+ * <p>Configuration is done through application properties:
+ * <ul>
+ *   <li>app.otp.signed.enabled: Issue signed challenges instead of storing OTPs (default: false)</li>
+ *   <li>app.otp.signed.secret: Base64 signing key shared by all replicas (required if enabled)</li>
+ *   <li>app.otp.signed.routing: How verifications reach the replica holding the guard, {@code single-replica} or {@code sticky} (required if enabled)</li>
+ *   <li>app.otp.signed.replay-guard.expected-challenges: Challenges consumed per OTP lifetime the guard is sized for (default: 1000000)</li>
+ *   <li>app.otp.signed.replay-guard.false-positive-rate: Chance of rejecting a first use at that load (default: 1e-6)</li>
+ *   <li>app.otp.signed.attempt-slots: Wrong-code counters, half a byte each per generation (default: 1048576)</li>
+ *   <li>app.otp.max-attempts: Wrong codes allowed per challenge, 1 to 15 (default: 5)</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SignedOtpService {
+
+    /** {@code app.otp.signed.routing} value for a service running as a single replica */
+    public static final String ROUTING_SINGLE_REPLICA = "single-replica";
+
+    /** {@code app.otp.signed.routing} value for a load balancer routing each user to one replica */
+    public static final String ROUTING_STICKY = "sticky";
+
+    /** Cryptographically strong source of OTP codes */
+    private final OtpCodeSource codeSource;
+
+    /** Source of the current epoch second */
+    private final OtpClock clock;
+
+    @Value("${app.otp.signed.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.otp.signed.secret:}")
+    private String secret;
+
+    @Value("${app.otp.signed.routing:}")
+    private String routing = "";
+
+    @Value("${app.otp.signed.replay-guard.expected-challenges:1000000}")
+    private long expectedChallenges = 1_000_000;
+
+    @Value("${app.otp.signed.replay-guard.false-positive-rate:1e-6}")
+    private double falsePositiveRate = 1e-6;
+
+    @Value("${app.otp.signed.attempt-slots:1048576}")
+    private int attemptSlots = 1 << 20;
+
+    /** Wrong codes allowed per challenge (configurable, default: 5, clamped to 1-15) */
+    @Value("${app.otp.max-attempts:5}")
+    private int maxAttempts = 5;
+
+    /** Length of generated OTP codes (configurable, default: 6, clamped to 4-8) */
+    @Value("${app.otp.length:6}")
+    private int otpLength = 6;
+
+    /** OTP expiry time in minutes (configurable, default: 5) */
+    @Value("${app.otp.expiry-minutes:5}")
+    private int otpExpiryMinutes = 5;
+
+    private SignedChallengeCodec codec;
+    private RotatingBloomFilter replayGuard;
+    private RotatingAttemptCounter attemptCounter;
+
+    private final LongAdder lockouts = new LongAdder();
+    private final LongAdder lockedRejections = new LongAdder();
+
+    /**
+     * Creates the codec and replay guard when signed challenges are enabled.
+     * This method is automatically called after dependency injection is done.
+     *
+     * @throws IllegalStateException if enabled without a signing secret, or without routing that
+     *         keeps each user on the replica holding their replay guard and attempt counters
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        if (secret.isBlank()) {
+            throw new IllegalStateException("app.otp.signed.secret must be set when signed challenges are enabled");
+        }
+        if (!ROUTING_SINGLE_REPLICA.equals(routing) && !ROUTING_STICKY.equals(routing)) {
+            throw new IllegalStateException("app.otp.signed.routing must be " + ROUTING_SINGLE_REPLICA + " or "
+                    + ROUTING_STICKY + " when signed challenges are enabled: the replay guard and attempt "
+                    + "counters are per replica, so verifications spread over replicas allow replays");
+        }
+        long expirySeconds = otpExpiryMinutes * 60L;
+        this.codec = new SignedChallengeCodec(Base64.getDecoder().decode(secret));
+        this.replayGuard = new RotatingBloomFilter(expectedChallenges, falsePositiveRate,
+                expirySeconds, clock.epochSecond());
+        this.attemptCounter = new RotatingAttemptCounter(attemptSlots, expirySeconds, clock.epochSecond());
+        this.maxAttempts = Math.min(PackedOtp.MAX_ATTEMPTS, Math.max(1, maxAttempts));
+        log.info("Signed OTP challenges enabled ({} routing), replay guard uses {} KiB, attempt counters {} KiB",
+                routing, replayGuard.sizeInBytes() >> 10, attemptCounter.sizeInBytes() >> 10);
+    }
+
+    /**
+     * @return true if OTPs are issued as signed challenges
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Generates an OTP for the user and the token needed to verify it.
+     *
+     * @param userId the unique identifier for the user
+     * @return the OTP to send and the challenge token to return to the caller
+     * @throws IllegalArgumentException if userId is null or empty
+     */
+    public IssuedChallenge issue(String userId) {
+        if (userId == null || userId.trim().isEmpty()) {
+            throw new IllegalArgumentException("User ID cannot be null or empty");
+        }
+        int length = Math.min(PackedOtp.MAX_DIGITS, Math.max(4, otpLength));
+        int digits = PackedOtp.encodeCode(codeSource.nextCode(PackedOtp.bound(length)), length);
+        long expiryTime = clock.epochSecond() + otpExpiryMinutes * 60L;
+
+        String token = codec.issue(userId, digits, expiryTime);
+        log.debug("Issued signed OTP challenge for user: {}", userId);
+        return new IssuedChallenge(token, PackedOtp.toString(digits));
+    }
+
+    /**
+     * Validates an OTP against its challenge token and consumes the challenge.
+     *
+     * @param userId the user ID to validate the OTP for
+     * @param token the challenge token returned when the OTP was issued
+     * @param otp the OTP to validate
+     * @return true if the code matches, the token is unexpired and was not used before
+     */
+    public boolean validate(String userId, String token, String otp) {
+        if (userId == null || token == null || otp == null) {
+            return false;
+        }
+        long id = codec.unverifiedId(token);
+        if (id == 0L) {
+            log.debug("Malformed challenge for user: {}", userId);
+            return false;
+        }
+        long now = clock.epochSecond();
+        // Checked before the MAC, so a locked challenge costs a single counter read
+        if (attemptCounter.failures(userId, id, now) >= maxAttempts) {
+            lockedRejections.increment();
+            log.debug("OTP challenge locked after too many attempts for user: {}", userId);
+            return false;
+        }
+        int digits = PackedOtp.encodeDigits(otp);
+        SignedChallenge challenge = digits == PackedOtp.INVALID ? null : codec.verify(token, userId, digits);
+        if (challenge == null) {
+            if (attemptCounter.recordFailure(userId, id, now) == maxAttempts) {
+                lockouts.increment();
+            }
+            log.debug("Invalid OTP or challenge for user: {}", userId);
+            return false;
+        }
+        if (challenge.expiryTime() < now) {
+            log.debug("OTP challenge expired for user: {}", userId);
+            return false;
+        }
+        if (!replayGuard.add(challenge.idHi(), challenge.idLo(), now)) {
+            log.debug("OTP challenge already used for user: {}", userId);
+            return false;
+        }
+        log.debug("Valid OTP for user: {}", userId);
+        return true;
+    }
+
+    /**
+     * @return the number of challenges locked after reaching the attempt limit
+     */
+    public long lockouts() {
+        return lockouts.sum();
+    }
+
+    /**
+     * @return the number of verifications rejected without comparison because the challenge was locked
+     */
+    public long lockedRejections() {
+        return lockedRejections.sum();
+    }
+
+    /**
+     * An OTP together with the token that verifies it.
+     *
+     * @param token the opaque challenge token
+     * @param otp the OTP to send to the user
+     */
+    public record IssuedChallenge(String token, String otp) {
+    }
+}
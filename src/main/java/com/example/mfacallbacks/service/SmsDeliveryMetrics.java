@@ -0,0 +1,40 @@
+package com.example.mfacallbacks.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the outcome of SMS sends under the {@code sms.delivery} prefix; dead letters are
+ * tagged with their {@code cause} ({@code permanent}, {@code retries-exhausted} or {@code queue-full}).
+ */
+public class SmsDeliveryMetrics implements MeterBinder {
+
+    private final SmsService smsService;
+
+    public SmsDeliveryMetrics(SmsService smsService) {
+        this.smsService = smsService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("sms.delivery.delivered", smsService, SmsService::delivered)
+                .description("SMS sends accepted by the provider")
+                .register(registry);
+        FunctionCounter.builder("sms.delivery.retries", smsService, SmsService::retries)
+                .description("Failed SMS sends queued again after a backoff")
+                .register(registry);
+        FunctionCounter.builder("sms.delivery.dead.lettered", smsService, SmsService::permanentFailures)
+                .description("SMS sends written to the dead-letter file")
+                .tag("cause", "permanent")
+                .register(registry);
+        FunctionCounter.builder("sms.delivery.dead.lettered", smsService, SmsService::exhaustedRetries)
+                .description("SMS sends written to the dead-letter file")
+                .tag("cause", "retries-exhausted")
+                .register(registry);
+        FunctionCounter.builder("sms.delivery.dead.lettered", smsService, SmsService::rejectedRetries)
+                .description("SMS sends written to the dead-letter file")
+                .tag("cause", "queue-full")
+                .register(registry);
+    }
+}
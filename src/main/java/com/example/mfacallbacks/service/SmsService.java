@@ -1,24 +1,56 @@
 package com.example.mfacallbacks.service;
 
+import com.example.mfacallbacks.exception.CapacityExceededException;
 import com.example.mfacallbacks.exception.SmsException;
-import com.twilio.Twilio;
-import com.twilio.rest.api.v2010.account.Message;
-import com.twilio.type.PhoneNumber;
+import com.example.mfacallbacks.exception.SmsUnavailableException;
+import com.example.mfacallbacks.sms.SenderPool;
+import com.example.mfacallbacks.sms.SmsCircuitBreaker;
+import com.example.mfacallbacks.sms.SmsDeadLetterQueue;
+import com.example.mfacallbacks.sms.SmsDispatchExecutor;
+import com.example.mfacallbacks.sms.SmsGateway;
+import com.example.mfacallbacks.sms.SmsMessage;
+import com.example.mfacallbacks.sms.SmsRetryPolicy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Service responsible for handling SMS-related operations, particularly for sending OTPs.
- * This service integrates with the Twilio API to send SMS messages asynchronously.
+ * Messages are delivered asynchronously by the configured {@link SmsGateway} (Twilio in
+ * production, see {@link com.example.mfacallbacks.config.SmsConfig}).
+ * 
+ * <p>Sends run on the dedicated {@link SmsDispatchExecutor}, which caps concurrent calls to
+ * the provider and bounds the backlog, rather than on the shared {@code @Async} executor.
+ * Each send is first given a sender number and a start time by the {@link SenderPool}, so
+ * bursts are spread over the numbers and at each number's rate instead of being refused by
+ * the provider.
+ * 
+ * <p>A failed send is classified by the {@link SmsRetryPolicy}: retryable failures are queued
+ * again with a start time after a jittered backoff, so a retry holds no thread while it waits;
+ * permanent failures, and sends out of attempts, go to the {@link SmsDeadLetterQueue}, with the
+ * code masked and the challenge it belongs to named instead. At startup, retryable failures
+ * whose challenge is still pending are sent again with a new code from
+ * {@link OtpService#reissueChallenge}; codes of signed challenges are stored nowhere, so those
+ * are not resent.
+ * 
+ * <p>While the {@link SmsCircuitBreaker} around the provider is open, {@link #checkAvailable()}
+ * fails so that callers can refuse a request before creating an OTP nobody will receive.
  * 
  * <p>Configuration is done through application properties:
  * <ul>
- *   <li>twilio.phone-number: The Twilio phone number to send messages from</li>
  *   <li>app.otp.message: Template for OTP messages (use {otp} as placeholder)</li>
  *   <li>app.otp.expiry-minutes: OTP expiry time in minutes (default: 5)</li>
+ *   <li>app.sms.dead-letter.replay-on-startup: Whether to resend dead letters whose challenge is still pending at startup (default: true)</li>
  * </ul>
  */
 @Service
@@ -26,9 +58,32 @@ import org.springframework.stereotype.Service;
 @RequiredArgsConstructor
 public class SmsService {
 
-    /** Twilio phone number configured in application properties */
-    @Value("${twilio.phone-number}")
-    private String twilioPhoneNumber;
+    /** Bounded executor running the blocking provider calls */
+    private final SmsDispatchExecutor dispatchExecutor;
+
+    /** Sender numbers, each paced by its token bucket */
+    private final SenderPool senderPool;
+
+    /** Provider delivering the messages */
+    private final SmsGateway gateway;
+
+    /** Classification and backoff of failed sends */
+    private final SmsRetryPolicy retryPolicy;
+
+    /** Sends that failed for good */
+    private final SmsDeadLetterQueue deadLetters;
+
+    /** Breaker around the provider */
+    private final SmsCircuitBreaker circuitBreaker;
+
+    /** Issues new codes for the challenges of dead letters being replayed */
+    private final OtpService otpService;
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder permanentFailures = new LongAdder();
+    private final LongAdder exhaustedRetries = new LongAdder();
+    private final LongAdder rejectedRetries = new LongAdder();
 
     /** Message template for OTP, should contain {otp} placeholder */
     @Value("${app.otp.message}")
@@ -38,29 +93,188 @@ public class SmsService {
     @Value("${app.otp.expiry-minutes:5}")
     private int otpExpiryMinutes;
 
+    @Value("${app.sms.dead-letter.replay-on-startup:true}")
+    private boolean replayOnStartup;
+
+    /**
+     * Checks that SMS can currently be sent, before an OTP is created for one.
+     *
+     * @throws SmsUnavailableException if the circuit breaker around the provider is open
+     */
+    public void checkAvailable() {
+        long retryAfter = circuitBreaker.retryAfterNanos(System.nanoTime());
+        if (retryAfter > 0) {
+            throw new SmsUnavailableException("SMS delivery is temporarily unavailable, please retry later",
+                    TimeUnit.NANOSECONDS.toSeconds(retryAfter) + 1);
+        }
+    }
+
     /**
      * Sends an OTP to the specified phone number asynchronously.
-     * This method is non-blocking and will return immediately.
+     * This method is non-blocking and will return immediately; delivery failures are retried
+     * or dead-lettered, never thrown.
      *
      * @param phoneNumber The recipient's phone number in E.164 format (e.g., "+1234567890")
      * @param otp The one-time password to send
-     * @throws SmsException if there's an error sending the SMS
+     * @param userId The user the OTP was issued to
+     * @param challengeId The stored challenge the OTP belongs to, or {@code null} if it cannot be reissued
+     * @throws CapacityExceededException if too many sends are already queued, overall or for the sender numbers
      */
-    @Async
-    public void sendOtp(String phoneNumber, String otp) {
+    public void sendOtp(String phoneNumber, String otp, String userId, String challengeId) {
+        String message = String.format(otpMessageTemplate, otp, otpExpiryMinutes);
+        OtpSend send = new OtpSend(userId, challengeId == null ? "" : challengeId, otp,
+                Instant.now().plus(Duration.ofMinutes(otpExpiryMinutes)));
+        dispatch(phoneNumber, message, send, 1, System.nanoTime());
+    }
+
+    /**
+     * Resends the dead letters that failed with a retryable error and whose challenge is still
+     * pending, each with a new code; the others could only deliver expired or unknown codes.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayDeadLetters() {
+        if (!replayOnStartup) {
+            return;
+        }
+        Instant now = Instant.now();
+        try {
+            int replayed = deadLetters.replay(
+                    deadLetter -> deadLetter.retryable() && deadLetter.expiresAt().isAfter(now)
+                            && !deadLetter.challengeId().isEmpty(),
+                    deadLetter -> resend(deadLetter, now));
+            if (replayed > 0) {
+                log.info("Replayed {} SMS dead letters", replayed);
+            }
+        } catch (IOException e) {
+            log.error("Failed to replay SMS dead letters", e);
+        }
+    }
+
+    private void resend(SmsDeadLetterQueue.DeadLetter deadLetter, Instant now) {
+        String recipient = deadLetter.message().to();
+        String otp;
         try {
-            String message = String.format(otpMessageTemplate, otp, otpExpiryMinutes);
-            
-            Message.creator(
-                new PhoneNumber(phoneNumber),
-                new PhoneNumber(twilioPhoneNumber),
-                message
-            ).create();
-            
-            log.info("OTP sent to {}: {}", phoneNumber, message);
-        } catch (Exception e) {
-            log.error("Failed to send OTP to " + phoneNumber, e);
-            throw new SmsException("Failed to send OTP", e);
+            otp = otpService.reissueChallenge(deadLetter.userId(), deadLetter.challengeId());
+        } catch (CapacityExceededException e) {
+            log.warn("No room to reissue the OTP for {}: {}", recipient, e.getMessage());
+            return;
         }
+        if (otp == null) {
+            log.debug("OTP challenge for {} is no longer pending, not resending", recipient);
+            return;
+        }
+        // Rounded up, so a code with seconds left is not announced as valid for 0 minutes
+        long minutesLeft = (Duration.between(now, deadLetter.expiresAt()).toSeconds() + 59) / 60;
+        String message = String.format(otpMessageTemplate, otp, minutesLeft);
+        OtpSend send = new OtpSend(deadLetter.userId(), deadLetter.challengeId(), otp, deadLetter.expiresAt());
+        try {
+            dispatch(recipient, message, send, 1, System.nanoTime());
+        } catch (CapacityExceededException e) {
+            deadLetter(new SmsMessage(recipient, deadLetter.message().from(), message), send, 0, e, rejectedRetries);
+        }
+    }
+
+    /**
+     * @return sends accepted by the provider
+     */
+    public long delivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * @return failed sends queued again
+     */
+    public long retries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return sends dead-lettered because the provider refused them for good
+     */
+    public long permanentFailures() {
+        return permanentFailures.sum();
+    }
+
+    /**
+     * @return sends dead-lettered because they were still failing after the last attempt
+     */
+    public long exhaustedRetries() {
+        return exhaustedRetries.sum();
+    }
+
+    /**
+     * @return sends dead-lettered because the dispatch queue had no room for their retry
+     */
+    public long rejectedRetries() {
+        return rejectedRetries.sum();
+    }
+
+    private void dispatch(String recipient, String body, OtpSend send, int attempt, long notBefore) {
+        SenderPool.Reservation sender = senderPool.reserve(recipient, notBefore);
+        SmsMessage sms = new SmsMessage(recipient, sender.sender(), body);
+        try {
+            dispatchExecutor.submit(sender.notBefore(), () -> gateway.sendAsync(sms).whenComplete((messageId, failure) -> {
+                if (failure == null) {
+                    delivered.increment();
+                    log.info("OTP sent to {} as {}", recipient, messageId);
+                } else {
+                    onFailure(sms, send, attempt, failure instanceof CompletionException ? failure.getCause() : failure);
+                }
+            }));
+        } catch (CapacityExceededException e) {
+            // The send never runs, so its token goes to the sender's next send
+            senderPool.release(sender, notBefore);
+            throw e;
+        }
+    }
+
+    private void onFailure(SmsMessage sms, OtpSend send, int attempt, Throwable failure) {
+        if (!retryPolicy.isRetryable(failure)) {
+            log.error("Failed to send OTP to " + sms.to() + ", not retrying", failure);
+            deadLetter(sms, send, attempt, failure, permanentFailures);
+            return;
+        }
+        if (!retryPolicy.shouldRetry(failure, attempt)) {
+            log.error("Failed to send OTP to " + sms.to() + " after " + attempt + " attempts", failure);
+            deadLetter(sms, send, attempt, failure, exhaustedRetries);
+            return;
+        }
+        long backoff = retryPolicy.backoffNanos(attempt);
+        log.warn("Failed to send OTP to {} (attempt {}), retrying in {} ms: {}",
+                sms.to(), attempt, TimeUnit.NANOSECONDS.toMillis(backoff), failure.getMessage());
+        try {
+            dispatch(sms.to(), sms.body(), send, attempt + 1, System.nanoTime() + backoff);
+            retries.increment();
+        } catch (CapacityExceededException e) {
+            log.error("No room to retry OTP to {}: {}", sms.to(), e.getMessage());
+            deadLetter(sms, send, attempt, failure, rejectedRetries);
+        }
+    }
+
+    private void deadLetter(SmsMessage sms, OtpSend send, int attempts, Throwable failure, LongAdder cause) {
+        cause.increment();
+        int status = failure instanceof SmsException e ? e.getStatusCode() : SmsException.NO_STATUS;
+        // The code never reaches the disk; a replay asks for a new one
+        SmsMessage masked = new SmsMessage(sms.to(), sms.from(),
+                sms.body().replace(send.otp(), "*".repeat(send.otp().length())));
+        try {
+            deadLetters.append(new SmsDeadLetterQueue.DeadLetter(Instant.now(), attempts, status,
+                    retryPolicy.isRetryable(failure) || failure instanceof CapacityExceededException,
+                    send.expiresAt(), send.userId(), send.challengeId(), masked, String.valueOf(failure.getMessage())));
+        } catch (IOException e) {
+            log.error("Failed to dead-letter OTP to " + sms.to() + ", message lost", e);
+        }
+    }
+
+    /**
+     * What a send carries, kept with it through its retries so that a dead letter can name
+     * the challenge instead of storing the code.
+     *
+     * @param userId the user the code was issued to
+     * @param challengeId the stored challenge, empty if none
+     * @param otp the code in the message
+     * @param expiresAt when the code expires
+     */
+    private record OtpSend(String userId, String challengeId, String otp, Instant expiresAt) {
     }
 }
@@ -0,0 +1,203 @@
+package com.example.mfacallbacks.service;
+
+import com.example.mfacallbacks.challenge.RotatingAttemptCounter;
+import com.example.mfacallbacks.exception.OtpException;
+import com.example.mfacallbacks.store.PackedOtp;
+import com.example.mfacallbacks.totp.TotpReplayGuard;
+import com.example.mfacallbacks.totp.TotpSecretCache;
+import com.example.mfacallbacks.totp.TotpSecretProvider;
+import com.example.mfacallbacks.totp.TotpVerifier;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.util.concurrent.atomic.LongAdder;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Service verifying RFC 6238 time-based codes from authenticator apps.
+ *
+ * <p>Unlike SMS OTPs, nothing is stored per challenge: a code is recomputed from the user's
+ * secret and the current time step, so verification is pure CPU work. The only state is a
+ * bounded LRU cache of user secrets and the last accepted time step per user, which prevents
+ * a code from being used twice. Users the provider has no secret for are not enrolled and
+ * every code is rejected for them; cached secrets are looked up again after
+ * {@code secret-cache-seconds}, so a revoked or rotated enrollment takes effect within that time.
+ *
+ * <p>With only {@code 10^digits} possible codes, guessing must be limited: wrong codes are
+ * counted per user in a {@link RotatingAttemptCounter} generation of {@code lockout-seconds}.
+ * Once a user reaches the attempt limit, every code is rejected before any HMAC is computed,
+ * until the generations holding the wrong codes have rotated out, which takes between one
+ * and two lockout periods.
+ *
+ * <p>Configuration is done through application properties:
+ * <ul>
+ *   <li>app.otp.totp.enabled: Enable TOTP verification (default: false)</li>
+ *   <li>app.otp.totp.algorithm: HMAC algorithm (default: HmacSHA1)</li>
+ *   <li>app.otp.totp.digits: Code length, 6 to 8 (default: 6)</li>
+ *   <li>app.otp.totp.step-seconds: Time step length (default: 30)</li>
+ *   <li>app.otp.totp.window: Steps accepted before and after the current one (default: 1)</li>
+ *   <li>app.otp.totp.secret-cache-size: Maximum cached user secrets (default: 100000)</li>
+ *   <li>app.otp.totp.secret-cache-seconds: How long a cached secret is used before it is looked up again (default: 60)</li>
+ *   <li>app.otp.totp.replay-cache-size: Maximum users tracked for replay, over about two verification windows (default: 1000000)</li>
+ *   <li>app.otp.totp.max-attempts: Wrong codes allowed per user and lockout period, 1 to 15 (default: 5)</li>
+ *   <li>app.otp.totp.lockout-seconds: Period wrong codes are counted over (default: 300)</li>
+ *   <li>app.otp.totp.attempt-slots: Wrong-code counters, half a byte each per generation (default: 1048576)</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TotpService {
+
+    /** TOTP codes belong to no challenge, so each user has a single wrong-code counter */
+    private static final long USER_COUNTER = 0L;
+
+    /** Source of user secrets, only available when TOTP is enabled */
+    private final ObjectProvider<TotpSecretProvider> secretProvider;
+
+    /** Source of the current epoch second */
+    private final OtpClock clock;
+
+    @Value("${app.otp.totp.algorithm:HmacSHA1}")
+    private String algorithm = "HmacSHA1";
+
+    @Value("${app.otp.totp.digits:6}")
+    private int digits = 6;
+
+    @Value("${app.otp.totp.step-seconds:30}")
+    private long stepSeconds = 30;
+
+    @Value("${app.otp.totp.window:1}")
+    private int window = 1;
+
+    @Value("${app.otp.totp.secret-cache-size:100000}")
+    private int secretCacheSize = 100_000;
+
+    @Value("${app.otp.totp.secret-cache-seconds:60}")
+    private long secretCacheSeconds = 60;
+
+    @Value("${app.otp.totp.replay-cache-size:1000000}")
+    private int replayCacheSize = 1_000_000;
+
+    /** Wrong codes allowed per user and lockout period (configurable, default: 5, clamped to 1-15) */
+    @Value("${app.otp.totp.max-attempts:5}")
+    private int maxAttempts = 5;
+
+    @Value("${app.otp.totp.lockout-seconds:300}")
+    private long lockoutSeconds = 300;
+
+    @Value("${app.otp.totp.attempt-slots:1048576}")
+    private int attemptSlots = 1 << 20;
+
+    private TotpVerifier verifier;
+    /** Cached secrets, so the provider is not consulted on every verification */
+    private TotpSecretCache secrets;
+    private TotpReplayGuard replayGuard;
+    private RotatingAttemptCounter attemptCounter;
+
+    private final LongAdder lockouts = new LongAdder();
+    private final LongAdder lockedRejections = new LongAdder();
+
+    /**
+     * Creates the verifier, secret cache, replay guard and attempt counters from the configured properties.
+     * This method is automatically called after dependency injection is done.
+     */
+    @PostConstruct
+    public void init() {
+        this.verifier = new TotpVerifier(algorithm, digits, stepSeconds, window);
+        this.secrets = new TotpSecretCache(secretCacheSize, secretCacheSeconds);
+        this.replayGuard = new TotpReplayGuard(replayCacheSize);
+        this.attemptCounter = new RotatingAttemptCounter(attemptSlots, lockoutSeconds, clock.epochSecond());
+        this.maxAttempts = Math.min(PackedOtp.MAX_ATTEMPTS, Math.max(1, maxAttempts));
+        log.debug("TOTP Service initialized with {} digits, {} second steps, window {}",
+                 digits, stepSeconds, window);
+    }
+
+    /**
+     * Validates a code from the user's authenticator app.
+     * A code is accepted at most once, and never after a later code has been accepted.
+     * No code is accepted while the user is locked out after too many wrong codes.
+     *
+     * @param userId the user ID to validate the code for
+     * @param otp the code to validate
+     * @return true if the code is valid for the current time window and was not used before,
+     *         and the user is not locked out
+     * @throws OtpException if TOTP verification is not enabled
+     */
+    public boolean validateTotp(String userId, String otp) {
+        if (userId == null || otp == null) {
+            return false;
+        }
+        TotpSecretProvider provider = secretProvider.getIfAvailable();
+        if (provider == null) {
+            throw new OtpException("TOTP verification is not enabled");
+        }
+
+        int digitsEncoded = PackedOtp.encodeDigits(otp);
+        if (digitsEncoded == PackedOtp.INVALID || otp.length() != digits) {
+            log.debug("Malformed TOTP for user: {}", userId);
+            return false;
+        }
+        int code = Integer.parseInt(otp);
+
+        long now = clock.epochSecond();
+        SecretKeySpec secret = secretFor(provider, userId, now);
+        if (secret == null) {
+            log.debug("No TOTP enrollment for user: {}", userId);
+            return false;
+        }
+        // Checked before the HMAC, so a locked user costs a single counter read
+        if (attemptCounter.failures(userId, USER_COUNTER, now) >= maxAttempts) {
+            lockedRejections.increment();
+            log.debug("TOTP locked after too many attempts for user: {}", userId);
+            return false;
+        }
+        long step = verifier.verify(secret, code, now, replayGuard.lastUsedStep(userId));
+        if (step == TotpVerifier.NO_MATCH) {
+            if (attemptCounter.recordFailure(userId, USER_COUNTER, now) == maxAttempts) {
+                lockouts.increment();
+            }
+            log.debug("Invalid TOTP for user: {}", userId);
+            return false;
+        }
+        // A concurrent request may have accepted the same or a later step in the meantime
+        long oldestLiveStep = now / stepSeconds - window;
+        if (!replayGuard.markUsed(userId, step, oldestLiveStep)) {
+            log.debug("Replayed TOTP for user: {}", userId);
+            return false;
+        }
+        log.debug("Valid TOTP for user: {}", userId);
+        return true;
+    }
+
+    /**
+     * @return the number of users locked after reaching the attempt limit
+     */
+    public long lockouts() {
+        return lockouts.sum();
+    }
+
+    /**
+     * @return the number of verifications rejected without comparison because the user was locked
+     */
+    public long lockedRejections() {
+        return lockedRejections.sum();
+    }
+
+    private SecretKeySpec secretFor(TotpSecretProvider provider, String userId, long now) {
+        SecretKeySpec secret = secrets.get(userId, now);
+        if (secret != null) {
+            return secret;
+        }
+        secret = provider.secretFor(userId);
+        // Unenrolled users are not cached, so lookups for arbitrary subjects cannot evict real secrets
+        if (secret != null) {
+            secrets.put(userId, secret, now);
+        }
+        return secret;
+    }
+}
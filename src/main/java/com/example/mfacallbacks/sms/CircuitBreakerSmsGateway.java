@@ -0,0 +1,77 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.SmsCircuitOpenException;
+import com.example.mfacallbacks.exception.SmsException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * {@link SmsGateway} passing sends to another one through a {@link SmsCircuitBreaker}.
+ *
+ * <p>Failures the provider may recover from (no answer, 429, 5xx) count against the breaker;
+ * a permanent refusal means the provider is up and counts as a success. While the breaker is
+ * open, sends fail at once with a retryable {@link SmsCircuitOpenException} instead of waiting on the
+ * provider, and are not recorded.
+ */
+public class CircuitBreakerSmsGateway implements SmsGateway, AutoCloseable {
+
+    private final SmsGateway delegate;
+    private final SmsCircuitBreaker breaker;
+
+    /**
+     * @param delegate the gateway reaching the provider
+     * @param breaker the breaker guarding it
+     */
+    public CircuitBreakerSmsGateway(SmsGateway delegate, SmsCircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public String send(SmsMessage message) {
+        try {
+            return sendAsync(message).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> sendAsync(SmsMessage message) {
+        if (!breaker.tryAcquire(System.nanoTime())) {
+            return CompletableFuture.failedFuture(new SmsCircuitOpenException("SMS provider circuit is open"));
+        }
+        CompletableFuture<String> sent;
+        try {
+            sent = delegate.sendAsync(message);
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        return sent.whenComplete((messageId, failure) -> {
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (cause instanceof SmsException e && e.isRetryable()) {
+                breaker.onFailure(System.nanoTime());
+            } else {
+                breaker.onSuccess(System.nanoTime());
+            }
+        });
+    }
+
+    /**
+     * @return the breaker guarding the wrapped gateway
+     */
+    public SmsCircuitBreaker breaker() {
+        return breaker;
+    }
+
+    /**
+     * Closes the wrapped gateway if it holds resources.
+     */
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.SmsException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * {@link SmsGateway} that appends every message to a local file instead of sending it, so
+ * OTPs can be read back during local development and end-to-end tests.
+ *
+ * <p>Line format: {@code timestamp<TAB>to<TAB>from<TAB>body}. Lines are written through one
+ * shared buffer and flushed per message, so concurrent sends never interleave.
+ */
+public class FileSmsGateway implements SmsGateway, AutoCloseable {
+
+    /** Value of {@code app.sms.gateway.type} selecting this gateway */
+    public static final String TYPE = "file";
+
+    private final BufferedWriter writer;
+    private long sent;
+
+    /**
+     * @param file the file to append to, created with its parent directories if missing
+     */
+    public FileSmsGateway(Path file) {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open SMS sink " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized String send(SmsMessage message) {
+        try {
+            writer.write(Instant.now() + "\t" + message.to() + "\t" + message.from() + "\t" + message.body());
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            throw new SmsException("Failed to write message to the SMS sink", e);
+        }
+        return "file-" + ++sent;
+    }
+
+    /**
+     * Closes the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,346 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link SmsGateway} that sends through a primary gateway and, when the primary is slow to
+ * accept a message, sends the same message through a secondary one ("hedging"). The first
+ * gateway to accept wins and the other send is ignored, so a recipient may occasionally get
+ * the same code twice.
+ *
+ * <p>The hedge delay is the configured percentile of the primary's recent acceptance times,
+ * kept between {@code minDelayMillis} and {@code maxDelayMillis}: with the 95th percentile,
+ * only the slowest 5% of sends are hedged while the tail latency drops to about the delay
+ * plus the secondary's round trip. A primary failure before the delay hedges at once.
+ *
+ * <p>Hedges are limited by a budget: every send earns {@code budgetPercent} hundredths of a
+ * hedge, up to a reserve of ten, so a slow or failing primary cannot double the traffic.
+ *
+ * <p>A hedged copy is sent from a number of the secondary's {@link SenderPool}, paced by that
+ * pool's rate limiter like any other send. A hedge that would have to wait for its number's
+ * rate is skipped, as it would arrive after the primary's. Without a pool the copy keeps the
+ * primary's number, unpaced, which only suits providers sharing the numbers.
+ *
+ * <p>Both gateways are called from virtual threads, so blocking gateways delay neither the
+ * caller nor the hedge timer.
+ */
+public class HedgedSmsGateway implements SmsGateway, AutoCloseable {
+
+    private static final int SAMPLES = 1024;
+    private static final int RECOMPUTE_EVERY = 32;
+    private static final long HEDGE_COST = 100;
+    private static final long MAX_CREDITS = 10 * HEDGE_COST;
+
+    private final SmsGateway primary;
+    private final SmsGateway secondary;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final long budgetPercent;
+    private final SenderPool secondarySenders;
+
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("sms-hedge").daemon().factory());
+
+    /**
+     * Recent acceptance times of the primary, in nanoseconds. Written without synchronization:
+     * a recomputation racing with a write may see a stale sample, which barely moves a percentile.
+     */
+    private final long[] samples = new long[SAMPLES];
+    private final AtomicInteger sampleCount = new AtomicInteger();
+    private volatile long delayNanos;
+    private final AtomicLong credits = new AtomicLong(MAX_CREDITS);
+
+    private final LongAdder sends = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder secondaryWins = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+    private final LongAdder sendersBusy = new LongAdder();
+
+    /**
+     * Creates a gateway whose hedged copies keep the primary's sender number.
+     *
+     * @param primary the gateway every message is sent through
+     * @param secondary the gateway slow sends are hedged to, sending from the same numbers
+     * @param percentile percentile of the primary's acceptance times after which a send is hedged, e.g. 95
+     * @param minDelayMillis shortest hedge delay
+     * @param maxDelayMillis longest hedge delay, also used until enough sends were timed
+     * @param budgetPercent hedges allowed per hundred sends
+     */
+    public HedgedSmsGateway(SmsGateway primary, SmsGateway secondary, double percentile,
+                            long minDelayMillis, long maxDelayMillis, int budgetPercent) {
+        this(primary, secondary, null, percentile, minDelayMillis, maxDelayMillis, budgetPercent);
+    }
+
+    /**
+     * @param primary the gateway every message is sent through
+     * @param secondary the gateway slow sends are hedged to
+     * @param secondarySenders the numbers hedged copies are sent from, {@code null} to keep the primary's
+     * @param percentile percentile of the primary's acceptance times after which a send is hedged, e.g. 95
+     * @param minDelayMillis shortest hedge delay
+     * @param maxDelayMillis longest hedge delay, also used until enough sends were timed
+     * @param budgetPercent hedges allowed per hundred sends
+     */
+    public HedgedSmsGateway(SmsGateway primary, SmsGateway secondary, SenderPool secondarySenders, double percentile,
+                            long minDelayMillis, long maxDelayMillis, int budgetPercent) {
+        this.primary = primary;
+        this.secondary = secondary;
+        this.percentile = Math.clamp(percentile, 1, 100);
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(minDelayMillis, maxDelayMillis));
+        this.budgetPercent = Math.clamp(budgetPercent, 0, 100);
+        this.secondarySenders = secondarySenders;
+        this.delayNanos = maxDelayNanos;
+    }
+
+    @Override
+    public String send(SmsMessage message) {
+        try {
+            return sendAsync(message).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> sendAsync(SmsMessage message) {
+        sends.increment();
+        credits.getAndUpdate(balance -> Math.min(MAX_CREDITS, balance + budgetPercent));
+        Attempt attempt = new Attempt(message);
+        long started = System.nanoTime();
+        attempt.schedule();
+        launch(primary, message).whenComplete((messageId, failure) -> {
+            if (failure == null) {
+                recordLatency(System.nanoTime() - started);
+                attempt.accept(messageId, false);
+            } else {
+                attempt.primaryFailed(failure);
+            }
+        });
+        return attempt.result;
+    }
+
+    /**
+     * @return the gateway slow sends are hedged to
+     */
+    public SmsGateway secondary() {
+        return secondary;
+    }
+
+    /**
+     * @return the current hedge delay, in nanoseconds
+     */
+    public long delayNanos() {
+        return delayNanos;
+    }
+
+    /**
+     * @return messages sent
+     */
+    public long sendCount() {
+        return sends.sum();
+    }
+
+    /**
+     * @return messages also sent through the secondary gateway
+     */
+    public long hedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return messages the secondary gateway accepted first
+     */
+    public long secondaryWinCount() {
+        return secondaryWins.sum();
+    }
+
+    /**
+     * @return hedges skipped because the budget was spent
+     */
+    public long budgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    /**
+     * @return hedges skipped because no secondary sender number had a token
+     */
+    public long sendersBusyCount() {
+        return sendersBusy.sum();
+    }
+
+    /**
+     * Stops the hedge timer and closes both gateways if they hold resources.
+     */
+    @Override
+    public void close() throws Exception {
+        timer.shutdownNow();
+        senders.shutdown();
+        for (SmsGateway gateway : new SmsGateway[] {primary, secondary}) {
+            if (gateway instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private CompletableFuture<String> launch(SmsGateway gateway, SmsMessage message) {
+        return CompletableFuture.supplyAsync(() -> gateway.sendAsync(message), senders).thenCompose(sent -> sent);
+    }
+
+    private boolean withdrawHedge() {
+        while (true) {
+            long balance = credits.get();
+            if (balance < HEDGE_COST) {
+                return false;
+            }
+            if (credits.compareAndSet(balance, balance - HEDGE_COST)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the copy of the message to hedge, sent from a secondary number that may send
+     *         at once, or {@code null} if none may
+     */
+    private SmsMessage hedgedCopy(SmsMessage message) {
+        if (secondarySenders == null) {
+            return message;
+        }
+        long now = System.nanoTime();
+        SenderPool.Reservation reservation;
+        try {
+            reservation = secondarySenders.reserve(message.to(), now);
+        } catch (CapacityExceededException e) {
+            return null;
+        }
+        if (reservation.notBefore() > now) {
+            secondarySenders.release(reservation, now);
+            return null;
+        }
+        return new SmsMessage(message.to(), reservation.sender(), message.body());
+    }
+
+    private void recordLatency(long nanos) {
+        int count = sampleCount.getAndIncrement();
+        samples[count & (SAMPLES - 1)] = nanos;
+        if ((count + 1) % RECOMPUTE_EVERY == 0) {
+            long[] recent = Arrays.copyOf(samples, Math.min(count + 1, SAMPLES));
+            Arrays.sort(recent);
+            int index = (int) Math.ceil(percentile / 100 * recent.length) - 1;
+            delayNanos = Math.clamp(recent[Math.max(0, index)], minDelayNanos, maxDelayNanos);
+        }
+    }
+
+    /**
+     * One message in flight: completes {@link #result} with the first acceptance and fails it
+     * with the primary's failure once every send made has failed. Transitions are serialized
+     * on the attempt, as the primary, the secondary and the timer may report concurrently.
+     */
+    private final class Attempt {
+
+        final SmsMessage message;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        ScheduledFuture<?> timer;
+        boolean hedged;
+        boolean secondaryLaunched;
+        Throwable primaryFailure;
+        Throwable secondaryFailure;
+
+        Attempt(SmsMessage message) {
+            this.message = message;
+        }
+
+        synchronized void hedge() {
+            if (result.isDone() || hedged) {
+                return;
+            }
+            hedged = true;
+            if (!withdrawHedge()) {
+                budgetExhausted.increment();
+                skip();
+                return;
+            }
+            SmsMessage copy = hedgedCopy(message);
+            if (copy == null) {
+                // The skipped hedge did not cost any budget
+                credits.getAndUpdate(balance -> Math.min(MAX_CREDITS, balance + HEDGE_COST));
+                sendersBusy.increment();
+                skip();
+                return;
+            }
+            hedges.increment();
+            secondaryLaunched = true;
+            launch(secondary, copy).whenComplete((messageId, failure) -> {
+                if (failure == null) {
+                    accept(messageId, true);
+                } else {
+                    secondaryFailed(failure);
+                }
+            });
+        }
+
+        synchronized void primaryFailed(Throwable failure) {
+            primaryFailure = failure;
+            cancelTimer();
+            if (!hedged) {
+                hedge();
+            } else if (!secondaryLaunched || secondaryFailure != null) {
+                result.completeExceptionally(unwrap(failure));
+            }
+        }
+
+        synchronized void secondaryFailed(Throwable failure) {
+            secondaryFailure = failure;
+            if (primaryFailure != null) {
+                // The primary's failure decides whether the send is retried
+                result.completeExceptionally(unwrap(primaryFailure));
+            }
+        }
+
+        synchronized void accept(String messageId, boolean fromSecondary) {
+            if (result.isDone()) {
+                return;
+            }
+            cancelTimer();
+            if (fromSecondary) {
+                // Counted before completing, so the caller sees it
+                secondaryWins.increment();
+            }
+            result.complete(messageId);
+        }
+
+        synchronized void schedule() {
+            timer = HedgedSmsGateway.this.timer.schedule(this::hedge, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void skip() {
+            if (primaryFailure != null) {
+                result.completeExceptionally(unwrap(primaryFailure));
+            }
+        }
+
+        private void cancelTimer() {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+
+        private Throwable unwrap(Throwable failure) {
+            return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.SmsException;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link SmsGateway} calling the Twilio Messages REST API over {@link HttpClient} with
+ * non-blocking I/O, instead of the SDK's synchronous client.
+ *
+ * <p>{@link #sendAsync} returns as soon as the request is written; the answer completes the
+ * future on one of a handful of callback threads, so thousands of sends in flight hold no
+ * thread at all. The client negotiates HTTP/2 and multiplexes all requests over a single
+ * connection when the provider supports it, and otherwise falls back to HTTP/1.1 with the
+ * client's keep-alive connection pool.
+ *
+ * <p>Also usable against any provider or stub exposing the same endpoint, see {@code baseUri}.
+ */
+public class HttpSmsGateway implements SmsGateway, AutoCloseable {
+
+    /** Value of {@code app.sms.gateway.type} selecting this gateway */
+    public static final String TYPE = "http";
+
+    /** The message SID is the only field needed, so the JSON answer is not parsed in full */
+    private static final Pattern SID = Pattern.compile("\"sid\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final ExecutorService callbacks;
+    private final HttpClient client;
+    private final URI messagesUri;
+    private final String authorization;
+    private final Duration requestTimeout;
+
+    /**
+     * @param baseUri the API root, e.g. {@code https://api.twilio.com}
+     * @param accountSid the account SID, also the user name for basic authentication
+     * @param authToken the auth token
+     * @param connectTimeout timeout for establishing a connection
+     * @param requestTimeout timeout for the answer to a send
+     * @param threads callback threads completing the futures
+     */
+    public HttpSmsGateway(URI baseUri, String accountSid, String authToken,
+                          Duration connectTimeout, Duration requestTimeout, int threads) {
+        this.callbacks = Executors.newFixedThreadPool(threads,
+                Thread.ofPlatform().name("sms-http-", 0).daemon().factory());
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .executor(callbacks)
+                .build();
+        this.messagesUri = baseUri.resolve("/2010-04-01/Accounts/" + accountSid + "/Messages.json");
+        this.authorization = "Basic " + Base64.getEncoder()
+                .encodeToString((accountSid + ":" + authToken).getBytes(StandardCharsets.UTF_8));
+        this.requestTimeout = requestTimeout;
+    }
+
+    @Override
+    public String send(SmsMessage message) {
+        try {
+            return sendAsync(message).join();
+        } catch (CompletionException e) {
+            throw (SmsException) e.getCause();
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> sendAsync(SmsMessage message) {
+        HttpRequest request = HttpRequest.newBuilder(messagesUri)
+                .timeout(requestTimeout)
+                .header("Authorization", authorization)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form(message)))
+                .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .handle((response, failure) -> {
+                    if (failure != null) {
+                        Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                        throw new SmsException("Failed to reach the SMS provider", cause);
+                    }
+                    return messageId(response);
+                });
+    }
+
+    /**
+     * Closes the connections and stops the callback threads.
+     */
+    @Override
+    public void close() {
+        client.close();
+        callbacks.shutdown();
+    }
+
+    private static String messageId(HttpResponse<String> response) {
+        if (response.statusCode() / 100 != 2) {
+            throw new SmsException("SMS provider answered " + response.statusCode(), response.statusCode());
+        }
+        Matcher matcher = SID.matcher(response.body());
+        if (!matcher.find()) {
+            // Accepted, so sending again could deliver the message twice
+            throw new SmsException("SMS provider answer has no message SID", response.statusCode());
+        }
+        return matcher.group(1);
+    }
+
+    private static String form(SmsMessage message) {
+        return "To=" + URLEncoder.encode(message.to(), StandardCharsets.UTF_8)
+                + "&From=" + URLEncoder.encode(message.from(), StandardCharsets.UTF_8)
+                + "&Body=" + URLEncoder.encode(message.body(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.mfacallbacks.sms;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link SmsGateway} that accepts every message and drops it, for measuring the service
+ * itself without any provider cost.
+ */
+public class NullSmsGateway implements SmsGateway {
+
+    /** Value of {@code app.sms.gateway.type} selecting this gateway */
+    public static final String TYPE = "null";
+
+    private static final String MESSAGE_ID = "null";
+
+    private final LongAdder sent = new LongAdder();
+
+    @Override
+    public String send(SmsMessage message) {
+        sent.increment();
+        return MESSAGE_ID;
+    }
+
+    /**
+     * @return the number of messages dropped so far
+     */
+    public long sentCount() {
+        return sent.sum();
+    }
+}
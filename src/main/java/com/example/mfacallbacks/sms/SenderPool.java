@@ -0,0 +1,140 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of sender numbers, so SMS throughput is not capped by a single number's carrier limit.
+ *
+ * <p>Numbers may be grouped by destination country prefix: a recipient is served by the group
+ * with the longest matching prefix, or by the default numbers if none matches. Within a group
+ * the send goes to the least-loaded number, the one whose {@link SenderRateLimiter} bucket
+ * holds the most tokens; ties are broken round robin so idle numbers share the load.
+ *
+ * <p>With sticky assignment a recipient always gets the same number of its group, chosen by
+ * hashing the recipient so it holds across restarts and instances without any state. It is
+ * only left when that number's backlog is full, as a message from another number beats a 429.
+ * Changing the group's numbers reassigns recipients.
+ */
+public class SenderPool {
+
+    /**
+     * A sender number and the time its send may start.
+     *
+     * @param sender the number to send from
+     * @param notBefore {@link System#nanoTime()} at which the send may start
+     */
+    public record Reservation(String sender, long notBefore) {
+    }
+
+    private final List<String> defaultNumbers;
+    private final List<Group> groups;
+    private final boolean sticky;
+    private final SenderRateLimiter rateLimiter;
+    private final AtomicInteger rotation = new AtomicInteger();
+
+    /**
+     * @param defaultNumbers numbers serving recipients outside every group
+     * @param numbersByPrefix numbers dedicated to recipients starting with a country prefix, e.g. {@code +44}
+     * @param sticky whether a recipient keeps its number
+     * @param rateLimiter the per-number token buckets
+     * @throws IllegalArgumentException if the default numbers or a group are empty
+     */
+    public SenderPool(List<String> defaultNumbers, Map<String, List<String>> numbersByPrefix,
+                      boolean sticky, SenderRateLimiter rateLimiter) {
+        if (defaultNumbers.isEmpty()) {
+            throw new IllegalArgumentException("At least one default sender number is required");
+        }
+        this.defaultNumbers = List.copyOf(defaultNumbers);
+        List<Group> byPrefix = new ArrayList<>();
+        numbersByPrefix.forEach((prefix, numbers) -> {
+            if (numbers.isEmpty()) {
+                throw new IllegalArgumentException("No sender numbers for prefix " + prefix);
+            }
+            byPrefix.add(new Group(prefix, List.copyOf(numbers)));
+        });
+        // Longest prefix first, so +1268 wins over +1
+        byPrefix.sort(Comparator.comparingInt((Group group) -> group.prefix.length()).reversed());
+        this.groups = List.copyOf(byPrefix);
+        this.sticky = sticky;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Picks the number to send from and takes a token of its bucket.
+     *
+     * @param recipient the recipient's number in E.164 format
+     * @param now current {@link System#nanoTime()}
+     * @return the sender number and its start time
+     * @throws CapacityExceededException if every number serving the recipient has a full backlog
+     */
+    public Reservation reserve(String recipient, long now) {
+        List<String> numbers = numbersFor(recipient);
+        if (sticky) {
+            String assigned = numbers.get(Math.floorMod(recipient.hashCode(), numbers.size()));
+            long start = rateLimiter.tryReserve(assigned, now);
+            if (start != SenderRateLimiter.REJECTED) {
+                return new Reservation(assigned, start);
+            }
+        }
+        String sender = leastLoaded(numbers, now);
+        return new Reservation(sender, rateLimiter.reserve(sender, now));
+    }
+
+    /**
+     * Gives back the token of a reservation whose send could not be queued.
+     *
+     * @param reservation the reservation returned by {@link #reserve}
+     * @param now the time passed to {@link #reserve}
+     */
+    public void release(Reservation reservation, long now) {
+        rateLimiter.release(reservation.sender(), reservation.notBefore() - now);
+    }
+
+    /**
+     * @return every configured number, default ones first
+     */
+    public Set<String> numbers() {
+        Set<String> numbers = new LinkedHashSet<>(defaultNumbers);
+        groups.forEach(group -> numbers.addAll(group.numbers));
+        return numbers;
+    }
+
+    private List<String> numbersFor(String recipient) {
+        for (Group group : groups) {
+            if (recipient.startsWith(group.prefix)) {
+                return group.numbers;
+            }
+        }
+        return defaultNumbers;
+    }
+
+    private String leastLoaded(List<String> numbers, long now) {
+        int size = numbers.size();
+        if (size == 1) {
+            return numbers.get(0);
+        }
+        int offset = Math.floorMod(rotation.getAndIncrement(), size);
+        String best = null;
+        long bestBacklog = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            String number = numbers.get((offset + i) % size);
+            long backlog = rateLimiter.backlogNanos(number, now);
+            if (backlog < bestBacklog) {
+                best = number;
+                bestBacklog = backlog;
+            }
+        }
+        return best;
+    }
+
+    private record Group(String prefix, List<String> numbers) {
+    }
+}
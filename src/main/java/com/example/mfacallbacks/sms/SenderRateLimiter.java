@@ -0,0 +1,204 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket per sender number, keeping sends within the provider's per-number throughput
+ * (about 1 message per second for a long code, more for short codes).
+ *
+ * <p>A send does not wait for a token here: {@link #reserve} takes the next token of the
+ * sender's bucket, possibly one that is only refilled in the future, and returns when it may
+ * start. The {@link SmsDispatchExecutor} holds the send until then, so a burst is spread at
+ * the configured rate instead of being answered with 429s by the provider. Each bucket is a
+ * single {@code long}, the time at which it will be full again, advanced with a compare-and-set.
+ *
+ * <p>The backlog is bounded in time: a send that would have to wait longer than
+ * {@code maxBacklogMillis} for its token is rejected with a {@link CapacityExceededException},
+ * since its OTP would be close to expiry by the time it is delivered.
+ */
+public class SenderRateLimiter {
+
+    /** Returned by {@link #tryReserve} when the send would wait longer than the maximum backlog */
+    static final long REJECTED = Long.MIN_VALUE;
+
+    private final double defaultPerSecond;
+    private final int burst;
+    private final long maxBacklogNanos;
+    private final Map<String, Double> perSecondBySender;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final LongAdder reserved = new LongAdder();
+    private final LongAdder backlogNanos = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param defaultPerSecond sends per second for numbers without an override, 0 for no limit
+     * @param burst sends a number may make back to back after being idle
+     * @param maxBacklogMillis longest a send may wait for its sender's token
+     * @param perSecondBySender sends per second for specific numbers, e.g. short codes
+     */
+    public SenderRateLimiter(double defaultPerSecond, int burst, long maxBacklogMillis,
+                             Map<String, Double> perSecondBySender) {
+        this.defaultPerSecond = defaultPerSecond;
+        this.burst = Math.max(1, burst);
+        this.maxBacklogNanos = TimeUnit.MILLISECONDS.toNanos(maxBacklogMillis);
+        this.perSecondBySender = Map.copyOf(perSecondBySender);
+    }
+
+    /**
+     * Takes the next token of the sender's bucket.
+     *
+     * @param sender the sending number
+     * @param now current {@link System#nanoTime()}
+     * @return the {@link System#nanoTime()} at which the send may start, {@code now} if it may start at once
+     * @throws CapacityExceededException if the send would wait longer than the maximum backlog
+     */
+    public long reserve(String sender, long now) {
+        long start = tryReserve(sender, now);
+        if (start == REJECTED) {
+            rejected.increment();
+            throw new CapacityExceededException("SMS sender " + sender + " is over its rate, please retry later");
+        }
+        return start;
+    }
+
+    /**
+     * Takes the next token of the sender's bucket unless the send would wait longer than the
+     * maximum backlog; a refusal is not counted as a rejection.
+     *
+     * @param sender the sending number
+     * @param now current {@link System#nanoTime()}
+     * @return the {@link System#nanoTime()} at which the send may start, or {@link #REJECTED}
+     */
+    long tryReserve(String sender, long now) {
+        Bucket bucket = bucket(sender);
+        if (bucket.intervalNanos == 0) {
+            bucket.reserved.increment();
+            reserved.increment();
+            return now;
+        }
+        while (true) {
+            long full = bucket.fullAt.get();
+            long next = Math.max(full, now) + bucket.intervalNanos;
+            long start = Math.max(now, next - bucket.burstNanos);
+            if (start - now > maxBacklogNanos) {
+                return REJECTED;
+            }
+            if (bucket.fullAt.compareAndSet(full, next)) {
+                bucket.reserved.increment();
+                reserved.increment();
+                backlogNanos.add(start - now);
+                return start;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken by {@link #reserve} for a send that was then not queued, so a
+     * rejected send does not delay the sender's next ones.
+     *
+     * @param sender the sending number
+     * @param waitNanos how long the send would have waited for the token
+     */
+    public void release(String sender, long waitNanos) {
+        Bucket bucket = bucket(sender);
+        bucket.fullAt.addAndGet(-bucket.intervalNanos);
+        bucket.reserved.decrement();
+        reserved.decrement();
+        backlogNanos.add(-waitNanos);
+    }
+
+    /**
+     * @param sender the sending number
+     * @param now current {@link System#nanoTime()}
+     * @return how long a send queued now would wait for the sender's token, in nanoseconds;
+     *         negative while the bucket holds tokens, the more negative the more it holds
+     */
+    public long backlogNanos(String sender, long now) {
+        return bucket(sender).backlogNanos(now);
+    }
+
+    /**
+     * @param now current {@link System#nanoTime()}
+     * @return how long a send queued now would wait for its token, for the most backlogged sender, in nanoseconds
+     */
+    public long longestBacklogNanos(long now) {
+        long longest = 0;
+        for (Bucket bucket : buckets.values()) {
+            longest = Math.max(longest, bucket.backlogNanos(now));
+        }
+        return longest;
+    }
+
+    /**
+     * @param sender the sending number
+     * @return the sender's rate in sends per second, 0 if unlimited
+     */
+    public double perSecond(String sender) {
+        return perSecondBySender.getOrDefault(sender, defaultPerSecond);
+    }
+
+    /**
+     * @param sender the sending number
+     * @return sends of the sender that got a token
+     */
+    public long reservedCount(String sender) {
+        return bucket(sender).reserved.sum();
+    }
+
+    /**
+     * @return sends that got a token
+     */
+    public long reservedCount() {
+        return reserved.sum();
+    }
+
+    /**
+     * @return total time sends waited for their token, in nanoseconds
+     */
+    public long backlogNanos() {
+        return backlogNanos.sum();
+    }
+
+    /**
+     * @return sends rejected because their sender's backlog was full
+     */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    private Bucket bucket(String sender) {
+        return buckets.computeIfAbsent(sender, this::newBucket);
+    }
+
+    private Bucket newBucket(String sender) {
+        double perSecond = perSecond(sender);
+        // A zero interval marks an unlimited sender, whose sends are only counted
+        return new Bucket(perSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / perSecond) : 0, burst);
+    }
+
+    private static final class Bucket {
+
+        /** Time at which the bucket is full again, in {@link System#nanoTime()} terms */
+        final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE / 2);
+        final long intervalNanos;
+        final long burstNanos;
+        final LongAdder reserved = new LongAdder();
+
+        Bucket(long intervalNanos, int burst) {
+            this.intervalNanos = intervalNanos;
+            this.burstNanos = intervalNanos * burst;
+        }
+
+        long backlogNanos(long now) {
+            // An unlimited sender always holds more tokens than any limited one
+            return intervalNanos == 0 ? Long.MIN_VALUE / 2 : fullAt.get() + intervalNanos - burstNanos - now;
+        }
+    }
+}
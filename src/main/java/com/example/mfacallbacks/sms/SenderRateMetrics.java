@@ -0,0 +1,67 @@
+package com.example.mfacallbacks.sms;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes {@link SenderRateLimiter} state as Micrometer meters under the {@code sms.rate} prefix,
+ * and per sender number, tagged {@code number}, under the {@code sms.sender} prefix.
+ *
+ * <p>Utilization of a number is the rate of {@code sms.sender.capacity.used}: the seconds of
+ * its rate taken by sends, so a per-second rate of 1 means the number is sending at its limit.
+ */
+public class SenderRateMetrics implements MeterBinder {
+
+    private final SenderRateLimiter limiter;
+    private final Collection<String> senders;
+
+    public SenderRateMetrics(SenderRateLimiter limiter, Collection<String> senders) {
+        this.limiter = limiter;
+        this.senders = List.copyOf(senders);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("sms.rate.backlog", limiter,
+                        l -> l.longestBacklogNanos(System.nanoTime()) / (double) TimeUnit.SECONDS.toNanos(1))
+                .description("Wait for a token faced by an SMS queued now, for the most backlogged sender")
+                .baseUnit("seconds")
+                .register(registry);
+        FunctionTimer.builder("sms.rate.backlog.age", limiter,
+                        SenderRateLimiter::reservedCount, SenderRateLimiter::backlogNanos, TimeUnit.NANOSECONDS)
+                .description("Time SMS sends spent in their sender's backlog before their token")
+                .register(registry);
+        FunctionCounter.builder("sms.rate.rejected", limiter, SenderRateLimiter::rejectedCount)
+                .description("SMS sends rejected because their sender's backlog was full")
+                .register(registry);
+        for (String sender : senders) {
+            Gauge.builder("sms.sender.backlog", limiter,
+                            l -> Math.max(0, l.backlogNanos(sender, System.nanoTime())) / (double) TimeUnit.SECONDS.toNanos(1))
+                    .description("Wait for a token faced by an SMS from this number queued now")
+                    .tag("number", sender)
+                    .baseUnit("seconds")
+                    .register(registry);
+            Gauge.builder("sms.sender.limit", limiter, l -> l.perSecond(sender))
+                    .description("SMS sends per second allowed from this number, 0 if unlimited")
+                    .tag("number", sender)
+                    .register(registry);
+            FunctionCounter.builder("sms.sender.sends", limiter, l -> l.reservedCount(sender))
+                    .description("SMS sends from this number")
+                    .tag("number", sender)
+                    .register(registry);
+            FunctionCounter.builder("sms.sender.capacity.used", limiter,
+                            l -> l.perSecond(sender) > 0 ? l.reservedCount(sender) / l.perSecond(sender) : 0)
+                    .description("Seconds of this number's rate used by its sends; the rate of this is its utilization")
+                    .tag("number", sender)
+                    .baseUnit("seconds")
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.mfacallbacks.sms;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Circuit breaker for the SMS provider, so a degraded provider is not sent traffic it cannot
+ * handle and callers learn at once that no SMS can go out.
+ *
+ * <p>Closed, it records the outcome of the last {@code windowSize} calls and opens once at
+ * least {@code minimumCalls} were made and the share of failures reaches the threshold. Open,
+ * it refuses every call for {@code openMillis}. The first call after that turns it half-open
+ * and lets up to {@code probes} calls through: it closes again once all of them succeed and
+ * opens for another period on the first failure.
+ *
+ * <p>Permission checks while closed read one volatile field; recording an outcome takes the
+ * breaker's lock, which is cheap next to the provider round trip it follows.
+ */
+public class SmsCircuitBreaker {
+
+    /** State of the breaker */
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureRatePercent;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int probes;
+
+    /** Outcomes of the last calls while closed, true for a failure */
+    private final boolean[] window;
+    private int windowNext;
+    private int windowCalls;
+    private int windowFailures;
+
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+    /**
+     * @param failureRatePercent share of failed calls in the window that opens the breaker
+     * @param windowSize number of recent calls the failure rate is computed over
+     * @param minimumCalls calls needed in the window before the breaker may open
+     * @param openMillis how long the breaker stays open before probing
+     * @param probes calls let through while half-open, all of which must succeed to close
+     */
+    public SmsCircuitBreaker(int failureRatePercent, int windowSize, int minimumCalls, long openMillis, int probes) {
+        this.failureRatePercent = Math.clamp(failureRatePercent, 1, 100);
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.clamp(minimumCalls, 1, window.length);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.probes = Math.max(1, probes);
+    }
+
+    /**
+     * Asks to make a call; every permitted call must be followed by {@link #onSuccess} or
+     * {@link #onFailure}.
+     *
+     * @param now current {@link System#nanoTime()}
+     * @return whether the call may be made
+     */
+    public boolean tryAcquire(long now) {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            if (state == State.OPEN && now - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                probesStarted = 0;
+                probesSucceeded = 0;
+            }
+            if (state == State.CLOSED || (state == State.HALF_OPEN && probesStarted < probes)) {
+                if (state == State.HALF_OPEN) {
+                    probesStarted++;
+                }
+                return true;
+            }
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Records a call the provider handled, including one it refused for good, e.g. an invalid number.
+     *
+     * @param now current {@link System#nanoTime()}
+     */
+    public synchronized void onSuccess(long now) {
+        successes.increment();
+        if (state == State.CLOSED) {
+            record(false);
+        } else if (state == State.HALF_OPEN && ++probesSucceeded >= probes) {
+            state = State.CLOSED;
+            windowNext = 0;
+            windowCalls = 0;
+            windowFailures = 0;
+        }
+    }
+
+    /**
+     * Records a call the provider failed to handle: no answer, 429 or 5xx.
+     *
+     * @param now current {@link System#nanoTime()}
+     */
+    public synchronized void onFailure(long now) {
+        failures.increment();
+        if (state == State.CLOSED) {
+            record(true);
+            if (windowCalls >= minimumCalls && windowFailures * 100 >= failureRatePercent * windowCalls) {
+                open(now);
+            }
+        } else if (state == State.HALF_OPEN) {
+            open(now);
+        }
+    }
+
+    /**
+     * @param now current {@link System#nanoTime()}
+     * @return how long until the breaker probes the provider again, 0 if it accepts calls
+     */
+    public synchronized long retryAfterNanos(long now) {
+        return state == State.OPEN ? Math.max(0, openedAt + openNanos - now) : 0;
+    }
+
+    /**
+     * @return the current state
+     */
+    public State state() {
+        return state;
+    }
+
+    /**
+     * @return the share of failures among the calls in the window, in percent
+     */
+    public synchronized double failureRatePercent() {
+        return windowCalls == 0 ? 0 : windowFailures * 100.0 / windowCalls;
+    }
+
+    /**
+     * @return calls the provider handled
+     */
+    public long successCount() {
+        return successes.sum();
+    }
+
+    /**
+     * @return calls the provider failed to handle
+     */
+    public long failureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * @return calls refused while open or out of probes
+     */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return times the breaker opened
+     */
+    public long openedCount() {
+        return opened.sum();
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openedAt = now;
+        opened.increment();
+    }
+
+    private void record(boolean failure) {
+        if (windowCalls == window.length) {
+            if (window[windowNext]) {
+                windowFailures--;
+            }
+        } else {
+            windowCalls++;
+        }
+        window[windowNext] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowNext = (windowNext + 1) % window.length;
+    }
+}
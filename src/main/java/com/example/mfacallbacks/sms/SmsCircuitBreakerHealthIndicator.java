@@ -0,0 +1,38 @@
+package com.example.mfacallbacks.sms;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports the {@link SmsCircuitBreaker} state under the {@code sms} health component.
+ *
+ * <p>An open breaker is reported as {@link #DEGRADED} rather than down: the provider is
+ * unavailable to every instance alike, and TOTP verification still works, so the instance
+ * should stay in rotation. The status is ordered and mapped to 200 in {@code application.yml}.
+ */
+public class SmsCircuitBreakerHealthIndicator implements HealthIndicator {
+
+    /** Status of the {@code sms} component while the breaker is open */
+    public static final Status DEGRADED = new Status("DEGRADED", "SMS provider failing, MFA by SMS refused");
+
+    private final SmsCircuitBreaker breaker;
+
+    public SmsCircuitBreakerHealthIndicator(SmsCircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    @Override
+    public Health health() {
+        long now = System.nanoTime();
+        SmsCircuitBreaker.State state = breaker.state();
+        Health.Builder health = state == SmsCircuitBreaker.State.OPEN ? Health.status(DEGRADED) : Health.up();
+        return health
+                .withDetail("circuit", state.name())
+                .withDetail("failureRatePercent", breaker.failureRatePercent())
+                .withDetail("retryAfterMillis", TimeUnit.NANOSECONDS.toMillis(breaker.retryAfterNanos(now)))
+                .build();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.mfacallbacks.sms;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes {@link SmsCircuitBreaker} state as Micrometer meters under the {@code sms.circuit}
+ * prefix, or another one for a breaker guarding a different provider.
+ *
+ * <p>{@code sms.circuit.state} is published once per state, tagged {@code state}, with 1 for
+ * the current state and 0 for the others.
+ */
+public class SmsCircuitBreakerMetrics implements MeterBinder {
+
+    private final SmsCircuitBreaker breaker;
+    private final String prefix;
+
+    public SmsCircuitBreakerMetrics(SmsCircuitBreaker breaker) {
+        this(breaker, "sms.circuit");
+    }
+
+    /**
+     * @param breaker the breaker to publish
+     * @param prefix the meter name prefix, e.g. {@code sms.hedge.secondary.circuit}
+     */
+    public SmsCircuitBreakerMetrics(SmsCircuitBreaker breaker, String prefix) {
+        this.breaker = breaker;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (SmsCircuitBreaker.State state : SmsCircuitBreaker.State.values()) {
+            Gauge.builder(prefix + ".state", breaker, b -> b.state() == state ? 1 : 0)
+                    .description("Whether the SMS provider circuit breaker is in this state")
+                    .tag("state", state.name().toLowerCase())
+                    .register(registry);
+        }
+        Gauge.builder(prefix + ".failure.rate", breaker, SmsCircuitBreaker::failureRatePercent)
+                .description("Share of failed calls among the recent SMS provider calls, in percent")
+                .register(registry);
+        FunctionCounter.builder(prefix + ".calls", breaker, SmsCircuitBreaker::successCount)
+                .description("SMS provider calls by outcome")
+                .tag("outcome", "success")
+                .register(registry);
+        FunctionCounter.builder(prefix + ".calls", breaker, SmsCircuitBreaker::failureCount)
+                .description("SMS provider calls by outcome")
+                .tag("outcome", "failure")
+                .register(registry);
+        FunctionCounter.builder(prefix + ".calls", breaker, SmsCircuitBreaker::rejectedCount)
+                .description("SMS provider calls by outcome")
+                .tag("outcome", "rejected")
+                .register(registry);
+        FunctionCounter.builder(prefix + ".opened", breaker, SmsCircuitBreaker::openedCount)
+                .description("Times the SMS provider circuit breaker opened")
+                .register(registry);
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.SmsCircuitOpenException;
+import com.example.mfacallbacks.exception.SmsException;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limit on SMS sends in flight at the provider that adapts to the provider's capacity, as any
+ * fixed limit is wrong part of the time: too low while the provider is fast, too high once it
+ * slows down and sends queue there until they time out.
+ *
+ * <p>Every finished send reports its round trip. With {@link Algorithm#GRADIENT}, after each
+ * window of samples the limit is scaled by the ratio of the no-load round trip, times
+ * {@code rttTolerance}, to the window's: while the provider answers about as fast as unloaded
+ * the limit grows by about its square root, and once sends queue at the provider and round
+ * trips rise beyond the tolerance, it shrinks in proportion, at most by half. The no-load round
+ * trip is the lowest seen; it only rises towards recent ones while less than half the limit is
+ * used, as otherwise the rise may be the queue this limiter let build up. With {@link Algorithm#AIMD}
+ * round trips are ignored and the limit grows by one per limit's worth of sends. Under both, a
+ * drop (no answer, 429 or 5xx) multiplies the limit by {@code backoffRatio}, at most once per
+ * round trip, as the failures of one overloaded moment arrive together. {@link Algorithm#FIXED}
+ * keeps the initial limit.
+ *
+ * <p>The limit only grows while at least half of it is used, so a quiet period does not leave
+ * a limit the provider was never shown to handle. Sends refused by an open circuit breaker and
+ * failures other than {@link SmsException} say nothing about the provider and are ignored.
+ *
+ * <p>Sends waiting for a slot are served in arrival order, like with a fair semaphore.
+ */
+public class SmsConcurrencyLimiter {
+
+    /** How the limit follows the provider */
+    public enum Algorithm { FIXED, AIMD, GRADIENT }
+
+    private static final int WINDOW_SAMPLES = 10;
+    private static final double NO_LOAD_RTT_WEIGHT = 0.05;
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final Algorithm algorithm;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final double backoffRatio;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition slotFree = lock.newCondition();
+
+    /** Guarded by the lock, as are the fields below it */
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private int windowSamples;
+    private long windowRttNanos;
+    private int windowMaxInFlight;
+    private double noLoadRttNanos;
+    private double recentRttNanos;
+    private long lastBackoff;
+
+    private volatile int currentLimit;
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder sampleNanos = new LongAdder();
+    private final LongAdder drops = new LongAdder();
+
+    /**
+     * @param algorithm how the limit adapts
+     * @param initialLimit sends in flight allowed at first
+     * @param minLimit lowest limit
+     * @param maxLimit highest limit
+     * @param rttTolerance how much recent round trips may exceed the long-term one before the gradient limit shrinks, e.g. 1.5
+     * @param backoffRatio factor applied to the limit on a drop, e.g. 0.9
+     */
+    public SmsConcurrencyLimiter(Algorithm algorithm, int initialLimit, int minLimit, int maxLimit,
+                                 double rttTolerance, double backoffRatio) {
+        this.algorithm = algorithm;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.rttTolerance = Math.max(1, rttTolerance);
+        this.backoffRatio = Math.clamp(backoffRatio, 0.1, 1);
+        this.limit = Math.clamp(initialLimit, this.minLimit, this.maxLimit);
+        this.currentLimit = (int) limit;
+        // Long enough ago for the first drop to count
+        this.lastBackoff = System.nanoTime() - Long.MAX_VALUE / 2;
+    }
+
+    /**
+     * Waits for a slot; every acquired slot must be given back with {@link #release}.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            // Queue behind earlier arrivals even if a slot is free
+            if (waiting > 0 || inFlight >= currentLimit) {
+                waiting++;
+                try {
+                    do {
+                        slotFree.await();
+                    } while (inFlight >= currentLimit);
+                } catch (InterruptedException e) {
+                    // Pass on a signal this thread may have taken
+                    if (inFlight < currentLimit) {
+                        slotFree.signal();
+                    }
+                    throw e;
+                } finally {
+                    waiting--;
+                }
+            }
+            inFlight++;
+            windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back a slot and adjusts the limit to the send's outcome.
+     *
+     * @param rttNanos time the send was in flight
+     * @param failure why the send failed, null if the provider accepted it
+     */
+    public void release(long rttNanos, Throwable failure) {
+        long now = System.nanoTime();
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        lock.lock();
+        try {
+            inFlight--;
+            int before = currentLimit;
+            if (cause == null || (cause instanceof SmsException e && !e.isRetryable())) {
+                onSample(rttNanos);
+            } else if (cause instanceof SmsException && !(cause instanceof SmsCircuitOpenException)) {
+                onDrop(now);
+            }
+            currentLimit = Math.max(minLimit, (int) limit);
+            int signals = Math.min(currentLimit - inFlight, 1 + Math.max(0, currentLimit - before));
+            for (int i = 0; i < signals; i++) {
+                slotFree.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current limit of sends in flight
+     */
+    public int limit() {
+        return currentLimit;
+    }
+
+    /**
+     * @return sends holding a slot
+     */
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return round trips recorded, i.e. sends the provider answered
+     */
+    public long sampleCount() {
+        return samples.sum();
+    }
+
+    /**
+     * @return total of the recorded round trips, in nanoseconds
+     */
+    public long sampleNanos() {
+        return sampleNanos.sum();
+    }
+
+    /**
+     * @return sends the provider dropped: no answer, 429 or 5xx
+     */
+    public long dropCount() {
+        return drops.sum();
+    }
+
+    private void onSample(long rttNanos) {
+        samples.increment();
+        sampleNanos.add(rttNanos);
+        if (algorithm == Algorithm.FIXED) {
+            return;
+        }
+        // This send still counts as in flight for the utilization check
+        if (algorithm == Algorithm.AIMD && inFlight + 1 >= limit / 2) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        windowRttNanos += rttNanos;
+        if (++windowSamples < WINDOW_SAMPLES) {
+            return;
+        }
+        recentRttNanos = Math.max(1, (double) windowRttNanos / windowSamples);
+        boolean saturated = windowMaxInFlight >= limit / 2;
+        if (noLoadRttNanos == 0 || recentRttNanos < noLoadRttNanos) {
+            noLoadRttNanos = recentRttNanos;
+        } else if (!saturated) {
+            noLoadRttNanos += (recentRttNanos - noLoadRttNanos) * NO_LOAD_RTT_WEIGHT;
+        }
+        if (algorithm == Algorithm.GRADIENT) {
+            double gradient = Math.clamp(rttTolerance * noLoadRttNanos / recentRttNanos, MIN_GRADIENT, 1);
+            double target = limit * gradient + Math.sqrt(limit);
+            if (!saturated) {
+                target = Math.min(target, limit);
+            }
+            limit = Math.clamp(limit * (1 - SMOOTHING) + target * SMOOTHING, minLimit, maxLimit);
+        }
+        windowSamples = 0;
+        windowRttNanos = 0;
+        windowMaxInFlight = inFlight;
+    }
+
+    private void onDrop(long now) {
+        drops.increment();
+        if (algorithm == Algorithm.FIXED || now - lastBackoff < recentRttNanos) {
+            return;
+        }
+        limit = Math.max(minLimit, limit * backoffRatio);
+        lastBackoff = now;
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs outbound SMS sends on virtual threads, at most as many at a time as its
+ * {@link SmsConcurrencyLimiter} allows.
+ *
+ * <p>Every task gets its own virtual thread, which waits for a slot of the limiter, in arrival
+ * order, before running. The waiting threads are the queue: at most {@code queueCapacity} of them
+ * are accepted, and further tasks are rejected with a {@link CapacityExceededException} (429)
+ * instead of piling up behind a slow provider. A blocking provider call parks a virtual
+ * thread rather than holding a platform thread, so a burst of sends never takes threads
+ * from request handling or from the scheduled OTP cleanup.
+ *
+ * <p>Sends over a non-blocking transport are submitted with {@link #submit}: the slot is held
+ * until the returned stage completes, so the cap still applies to requests in flight at the
+ * provider, while the virtual thread is released as soon as the request is written. The time
+ * until the stage completes is the round trip the limiter adapts to.
+ *
+ * <p>A send may also be held until a given time, the token its sender got from the
+ * {@link SenderRateLimiter}: its virtual thread sleeps until then and counts as queued.
+ *
+ * <p>Deliberately not a {@link java.util.concurrent.Executor}: an executor bean would make
+ * Spring Boot drop its application task executor, and every other {@code @Async} method
+ * would end up competing with SMS sends.
+ */
+@Slf4j
+public class SmsDispatchExecutor implements AutoCloseable {
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final SmsConcurrencyLimiter limiter;
+    private final int queueCapacity;
+    private final long shutdownTimeoutMillis;
+    private final ExecutorService threads;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * @param maxConcurrency sends in flight at once, matched to the provider's concurrency limit
+     * @param queueCapacity sends allowed to wait for a free slot
+     * @param shutdownTimeoutMillis how long {@link #close()} lets queued sends finish
+     */
+    public SmsDispatchExecutor(int maxConcurrency, int queueCapacity, long shutdownTimeoutMillis) {
+        this(new SmsConcurrencyLimiter(SmsConcurrencyLimiter.Algorithm.FIXED, maxConcurrency, maxConcurrency,
+                maxConcurrency, 1, 1), queueCapacity, shutdownTimeoutMillis);
+    }
+
+    /**
+     * @param limiter limit of sends in flight at once
+     * @param queueCapacity sends allowed to wait for a free slot
+     * @param shutdownTimeoutMillis how long {@link #close()} lets queued sends finish
+     */
+    public SmsDispatchExecutor(SmsConcurrencyLimiter limiter, int queueCapacity, long shutdownTimeoutMillis) {
+        this.limiter = limiter;
+        this.queueCapacity = queueCapacity;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        this.threads = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sms-dispatch-", 0).factory());
+    }
+
+    /**
+     * Queues a send and returns immediately.
+     *
+     * @param task the send to run
+     * @throws CapacityExceededException if the queue is full or the executor is shutting down
+     */
+    public void execute(Runnable task) {
+        submit(() -> {
+            task.run();
+            return DONE;
+        });
+    }
+
+    /**
+     * Queues an asynchronous send and returns immediately. Its slot is released when the
+     * stage returned by the task completes.
+     *
+     * @param task starts the send and returns its completion
+     * @throws CapacityExceededException if the queue is full or the executor is shutting down
+     */
+    public void submit(Supplier<? extends CompletionStage<?>> task) {
+        submit(System.nanoTime(), task);
+    }
+
+    /**
+     * Queues an asynchronous send that must not start before the given time and returns
+     * immediately. Its slot is released when the stage returned by the task completes.
+     *
+     * @param notBefore {@link System#nanoTime()} before which the send is held
+     * @param task starts the send and returns its completion
+     * @throws CapacityExceededException if the queue is full or the executor is shutting down
+     */
+    public void submit(long notBefore, Supplier<? extends CompletionStage<?>> task) {
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            rejected.increment();
+            throw new CapacityExceededException("SMS dispatch queue is full, please retry later");
+        }
+        long enqueued = System.nanoTime();
+        try {
+            threads.execute(() -> run(task, enqueued, notBefore));
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            rejected.increment();
+            throw new CapacityExceededException("SMS dispatch is shutting down");
+        }
+    }
+
+    private void run(Supplier<? extends CompletionStage<?>> task, long enqueued, long notBefore) {
+        try {
+            long delay = notBefore - System.nanoTime();
+            if (delay > 0) {
+                Thread.sleep(Duration.ofNanos(delay));
+            }
+            limiter.acquire();
+        } catch (InterruptedException e) {
+            queued.decrementAndGet();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        queued.decrementAndGet();
+        waits.increment();
+        waitNanos.add(System.nanoTime() - enqueued);
+        long started = System.nanoTime();
+        CompletionStage<?> completion;
+        try {
+            completion = task.get();
+        } catch (RuntimeException e) {
+            log.error("SMS dispatch task failed", e);
+            completion = CompletableFuture.failedFuture(e);
+        }
+        completion.whenComplete((result, failure) -> {
+            limiter.release(System.nanoTime() - started, failure);
+            completed.increment();
+        });
+    }
+
+    /**
+     * @return sends waiting for a free slot or for their sender's rate
+     */
+    public int queueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * @return sends currently in flight
+     */
+    public int activeCount() {
+        return limiter.inFlight();
+    }
+
+    /**
+     * @return the current limit of sends in flight
+     */
+    public int maxConcurrency() {
+        return limiter.limit();
+    }
+
+    /**
+     * @return the limiter of sends in flight
+     */
+    public SmsConcurrencyLimiter limiter() {
+        return limiter;
+    }
+
+    /**
+     * @return sends that finished, successfully or not
+     */
+    public long completedCount() {
+        return completed.sum();
+    }
+
+    /**
+     * @return sends rejected because the queue was full
+     */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return sends that got a slot, i.e. the number of recorded waits
+     */
+    public long waitCount() {
+        return waits.sum();
+    }
+
+    /**
+     * @return total time sends spent queued, rate delays included, in nanoseconds
+     */
+    public long waitNanos() {
+        return waitNanos.sum();
+    }
+
+    /**
+     * Stops accepting sends and lets queued ones finish for up to the shutdown timeout.
+     */
+    @Override
+    public void close() {
+        threads.shutdown();
+        try {
+            if (!threads.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("Dropping {} queued SMS sends at shutdown", queued.get());
+                threads.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            threads.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.mfacallbacks.sms;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes {@link SmsDispatchExecutor} state as Micrometer meters under the {@code sms.dispatch} prefix.
+ *
+ * <p>{@code sms.dispatch.limit} is the current limit of its {@link SmsConcurrencyLimiter}; with
+ * an adaptive limit, it follows the provider's capacity as seen through {@code sms.dispatch.rtt}
+ * and {@code sms.dispatch.dropped}.
+ */
+public class SmsDispatchMetrics implements MeterBinder {
+
+    private final SmsDispatchExecutor executor;
+
+    public SmsDispatchMetrics(SmsDispatchExecutor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("sms.dispatch.queue.depth", executor, SmsDispatchExecutor::queueDepth)
+                .description("SMS sends waiting for a free slot")
+                .register(registry);
+        Gauge.builder("sms.dispatch.active", executor, SmsDispatchExecutor::activeCount)
+                .description("SMS sends in flight")
+                .register(registry);
+        Gauge.builder("sms.dispatch.limit", executor, SmsDispatchExecutor::maxConcurrency)
+                .description("Current limit of SMS sends in flight")
+                .register(registry);
+        FunctionTimer.builder("sms.dispatch.rtt", executor.limiter(),
+                        SmsConcurrencyLimiter::sampleCount, SmsConcurrencyLimiter::sampleNanos, TimeUnit.NANOSECONDS)
+                .description("Round trip of SMS sends the provider answered, the signal the limit adapts to")
+                .register(registry);
+        FunctionCounter.builder("sms.dispatch.dropped", executor.limiter(), SmsConcurrencyLimiter::dropCount)
+                .description("SMS sends the provider did not answer or refused with 429 or 5xx, which cut an adaptive limit")
+                .register(registry);
+        FunctionTimer.builder("sms.dispatch.wait", executor,
+                        SmsDispatchExecutor::waitCount, SmsDispatchExecutor::waitNanos, TimeUnit.NANOSECONDS)
+                .description("Time SMS sends spent queued before getting a slot")
+                .register(registry);
+        FunctionCounter.builder("sms.dispatch.completed", executor, SmsDispatchExecutor::completedCount)
+                .description("SMS sends finished, successfully or not")
+                .register(registry);
+        FunctionCounter.builder("sms.dispatch.rejected", executor, SmsDispatchExecutor::rejectedCount)
+                .description("SMS sends rejected because the dispatch queue was full")
+                .register(registry);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.SmsException;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * SPI for the SMS provider that delivers OTP messages.
+ *
+ * <p>Implementations must be safe for concurrent use: {@link com.example.mfacallbacks.service.SmsService}
+ * calls them from the virtual threads of the {@link SmsDispatchExecutor}, so blocking on
+ * network I/O is fine. Transports with non-blocking I/O override {@link #sendAsync} so that a
+ * send in flight holds no thread at all. The implementation is selected with the
+ * {@code app.sms.gateway.type} property.
+ */
+public interface SmsGateway {
+
+    /**
+     * Hands a message to the provider, blocking until it was accepted or refused.
+     *
+     * @param message the message to send
+     * @return the provider's ID for the message
+     * @throws SmsException if the provider did not accept the message
+     */
+    String send(SmsMessage message);
+
+    /**
+     * Hands a message to the provider without waiting for the answer.
+     * The default implementation sends on the calling thread.
+     *
+     * @param message the message to send
+     * @return a future completed with the provider's ID for the message, or completed
+     *         exceptionally with an {@link SmsException} if the provider did not accept it
+     */
+    default CompletableFuture<String> sendAsync(SmsMessage message) {
+        try {
+            return CompletableFuture.completedFuture(send(message));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.mfacallbacks.sms;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes {@link HedgedSmsGateway} state as Micrometer meters under the {@code sms.hedge} prefix.
+ *
+ * <p>The hedge ratio is {@code sms.hedge.hedged} over {@code sms.hedge.sends}, capped by the budget.
+ */
+public class SmsHedgeMetrics implements MeterBinder {
+
+    private final HedgedSmsGateway gateway;
+
+    public SmsHedgeMetrics(HedgedSmsGateway gateway) {
+        this.gateway = gateway;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("sms.hedge.delay", gateway, g -> g.delayNanos() / (double) TimeUnit.SECONDS.toNanos(1))
+                .description("Time after which an SMS not yet accepted by the primary provider is hedged")
+                .baseUnit("seconds")
+                .register(registry);
+        FunctionCounter.builder("sms.hedge.sends", gateway, HedgedSmsGateway::sendCount)
+                .description("SMS sends through the hedged gateway")
+                .register(registry);
+        FunctionCounter.builder("sms.hedge.hedged", gateway, HedgedSmsGateway::hedgeCount)
+                .description("SMS sends repeated through the secondary provider")
+                .register(registry);
+        FunctionCounter.builder("sms.hedge.secondary.wins", gateway, HedgedSmsGateway::secondaryWinCount)
+                .description("SMS sends the secondary provider accepted first")
+                .register(registry);
+        FunctionCounter.builder("sms.hedge.budget.exhausted", gateway, HedgedSmsGateway::budgetExhaustedCount)
+                .description("Hedges skipped because the hedge budget was spent")
+                .register(registry);
+        FunctionCounter.builder("sms.hedge.senders.busy", gateway, HedgedSmsGateway::sendersBusyCount)
+                .description("Hedges skipped because no secondary sender number could send at once")
+                .register(registry);
+    }
+}
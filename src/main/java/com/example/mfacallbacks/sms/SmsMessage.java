@@ -0,0 +1,11 @@
+package com.example.mfacallbacks.sms;
+
+/**
+ * An outbound text message.
+ *
+ * @param to the recipient's phone number in E.164 format
+ * @param from the sender phone number in E.164 format
+ * @param body the message text
+ */
+public record SmsMessage(String to, String from, String body) {
+}
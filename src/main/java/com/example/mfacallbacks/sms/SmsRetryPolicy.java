@@ -0,0 +1,68 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.SmsException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether and when a failed SMS send is tried again.
+ *
+ * <p>Only failures the provider may recover from are retried, see {@link SmsException#isRetryable()}.
+ * The delay grows exponentially from {@code baseDelayMillis} up to {@code maxDelayMillis} and is
+ * drawn uniformly below that ceiling ("full jitter"), so sends failed by the same provider hiccup
+ * do not come back all at once.
+ */
+public class SmsRetryPolicy {
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+
+    /**
+     * @param maxAttempts attempts per message, the first one included
+     * @param baseDelayMillis ceiling of the delay before the first retry
+     * @param maxDelayMillis largest ceiling of the delay before any retry
+     */
+    public SmsRetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, baseDelayMillis));
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(baseDelayMillis, maxDelayMillis));
+    }
+
+    /**
+     * @param failure the failure of the send
+     * @return whether the send may succeed if tried again
+     */
+    public boolean isRetryable(Throwable failure) {
+        return failure instanceof SmsException e && e.isRetryable();
+    }
+
+    /**
+     * @param failure the failure of the send
+     * @param attempt the attempt that failed, starting at 1
+     * @return whether the send should be tried again
+     */
+    public boolean shouldRetry(Throwable failure, int attempt) {
+        return attempt < maxAttempts && isRetryable(failure);
+    }
+
+    /**
+     * @param attempt the attempt that failed, starting at 1
+     * @return the delay before the next attempt, in nanoseconds
+     */
+    public long backoffNanos(int attempt) {
+        long ceiling = baseDelayNanos;
+        for (int i = 1; i < attempt && ceiling < maxDelayNanos; i++) {
+            ceiling <<= 1;
+        }
+        return ThreadLocalRandom.current().nextLong(Math.min(ceiling, maxDelayNanos) + 1);
+    }
+
+    /**
+     * @return attempts per message, the first one included
+     */
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.SmsException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for an HTTP SMS provider, for load tests and benchmarks without network.
+ *
+ * <p>Each send sleeps for the configured latency plus a uniformly distributed jitter, like a
+ * provider round trip would block the caller, and fails with a retryable 503 with the
+ * configured probability.
+ * Nothing is delivered.
+ */
+public class StubSmsGateway implements SmsGateway {
+
+    /** Value of {@code app.sms.gateway.type} selecting this gateway */
+    public static final String TYPE = "stub";
+
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final double errorRate;
+    private final AtomicLong sent = new AtomicLong();
+
+    /**
+     * @param latencyMillis minimum simulated round trip
+     * @param jitterMillis maximum random delay added to the latency
+     * @param errorRate probability of a send failing, between 0 and 1
+     */
+    public StubSmsGateway(long latencyMillis, long jitterMillis, double errorRate) {
+        this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+        this.jitterNanos = TimeUnit.MILLISECONDS.toNanos(jitterMillis);
+        this.errorRate = errorRate;
+    }
+
+    @Override
+    public String send(SmsMessage message) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyNanos + (jitterNanos > 0 ? random.nextLong(jitterNanos + 1) : 0);
+        if (delay > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SmsException("Interrupted while sending", e);
+            }
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            throw new SmsException("Simulated provider error", 503);
+        }
+        return "stub-" + sent.incrementAndGet();
+    }
+
+    /**
+     * @return the number of messages accepted so far
+     */
+    public long sentCount() {
+        return sent.get();
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.SmsException;
+import com.twilio.exception.ApiException;
+import com.twilio.rest.api.v2010.account.Message;
+import com.twilio.type.PhoneNumber;
+
+/**
+ * {@link SmsGateway} sending through the Twilio REST API with the client initialized by
+ * {@link com.example.mfacallbacks.config.TwilioConfig}.
+ */
+public class TwilioSmsGateway implements SmsGateway {
+
+    /** Value of {@code app.sms.gateway.type} selecting this gateway */
+    public static final String TYPE = "twilio";
+
+    @Override
+    public String send(SmsMessage message) {
+        try {
+            return Message.creator(
+                new PhoneNumber(message.to()),
+                new PhoneNumber(message.from()),
+                message.body()
+            ).create().getSid();
+        } catch (ApiException e) {
+            Integer status = e.getStatusCode();
+            throw new SmsException("Twilio rejected the message", status != null ? status : SmsException.NO_STATUS, e);
+        } catch (Exception e) {
+            throw new SmsException("Failed to reach Twilio", e);
+        }
+    }
+}
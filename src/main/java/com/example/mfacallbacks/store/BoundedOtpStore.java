@@ -0,0 +1,124 @@
+package com.example.mfacallbacks.store;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * {@link OtpStore} decorator that caps the number of pending challenges.
+ *
+ * <p>When the cap is reached, a new challenge either evicts the challenges closest to expiry
+ * ({@link OverflowPolicy#EVICT}) or is rejected with a {@link CapacityExceededException}
+ * ({@link OverflowPolicy#REJECT}). Eviction falls back to rejection when the delegate cannot
+ * evict, and reports the key of every evicted entry to the
+ * {@link #setEvictionListener eviction listener}.
+ *
+ * <p>The check uses a count kept here rather than the delegate's size, which may lock every
+ * segment of every shard. The count follows puts, consumes, expiry and eviction; it is not
+ * told when a put replaces an entry or the delegate drops one on its own, so it is reset to
+ * the delegate's size on every {@link #expire} pass, off the request path. It is read without
+ * locking, so the cap may be exceeded briefly by the number of concurrent writers.
+ */
+public class BoundedOtpStore implements OtpStore, AutoCloseable {
+
+    /**
+     * What to do with a new challenge when the store is full.
+     */
+    public enum OverflowPolicy {
+        /** Reject the new challenge with 429 */
+        REJECT,
+        /** Evict the challenges closest to expiry */
+        EVICT
+    }
+
+    private final OtpStore delegate;
+    private final long maxEntries;
+    private final OverflowPolicy policy;
+
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private volatile Consumer<String> evictionListener = key -> { };
+
+    /**
+     * @param delegate the store holding the entries
+     * @param maxEntries the maximum number of pending challenges
+     * @param policy the overflow policy
+     */
+    public BoundedOtpStore(OtpStore delegate, long maxEntries, OverflowPolicy policy) {
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.policy = policy;
+    }
+
+    @Override
+    public void put(String userId, long packedOtp) {
+        long excess = entries.sum() - maxEntries + 1;
+        if (excess > 0) {
+            int removed = policy == OverflowPolicy.EVICT ? evict((int) Math.min(excess, Integer.MAX_VALUE), evictionListener) : 0;
+            if (removed < excess) {
+                rejected.increment();
+                throw new CapacityExceededException("Too many pending OTP challenges, please retry later");
+            }
+        }
+        delegate.put(userId, packedOtp);
+        entries.increment();
+    }
+
+    @Override
+    public OtpConsumeResult consume(String userId, int digits, long now) {
+        OtpConsumeResult result = delegate.consume(userId, digits, now);
+        if (result == OtpConsumeResult.CONSUMED || result == OtpConsumeResult.EXPIRED) {
+            entries.decrement();
+        }
+        return result;
+    }
+
+    @Override
+    public int expire(long now) {
+        int removed = delegate.expire(now);
+        // Resynchronize with the delegate, whose size may be costly but is read once per pass here
+        entries.add(delegate.size() - entries.sum());
+        return removed;
+    }
+
+    @Override
+    public int evict(int count, Consumer<String> onEvicted) {
+        int removed = delegate.evict(count, onEvicted);
+        evicted.add(removed);
+        entries.add(-removed);
+        return removed;
+    }
+
+    @Override
+    public void setEvictionListener(Consumer<String> listener) {
+        this.evictionListener = listener;
+    }
+
+    @Override
+    public long size() {
+        return delegate.size();
+    }
+
+    @Override
+    public OtpStoreStats stats() {
+        OtpStoreStats stats = delegate.stats();
+        return new OtpStoreStats(stats.type(), stats.size(), stats.puts(), stats.consumed(), stats.expired(),
+                evicted.sum(), stats.rejected() + rejected.sum());
+    }
+
+    @Override
+    public List<OtpShardStats> shardStats() {
+        return delegate.shardStats();
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+}
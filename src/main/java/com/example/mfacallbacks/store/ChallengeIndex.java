@@ -0,0 +1,178 @@
+package com.example.mfacallbacks.store;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Secondary index of the challenges pending for each user, used to cap them per user and to
+ * find the latest one when a verification does not name its challenge.
+ *
+ * <p>Each user maps to a small immutable array of {@link Challenge}s in registration order,
+ * replaced on every change. A challenge carries the key its OTP is stored under, built once
+ * when it is registered, so that verifications find the key instead of building it again.
+ * Updates go through the map's
+ * per-key atomic operations, so the cap is enforced per user without any global lock, and
+ * reads see a consistent array without locking at all. Entries of users who never come back
+ * are dropped by {@link #expire(long)} via an {@link ExpiryWheel}.
+ */
+public class ChallengeIndex {
+
+    /** Never used as a challenge ID, so it can stand for a missing or malformed one */
+    public static final long NONE = 0L;
+
+    private static final Challenge[] EMPTY = new Challenge[0];
+
+    private final ConcurrentMap<String, Challenge[]> pending = new ConcurrentHashMap<>();
+    private final ExpiryWheel<Scheduled> expiryWheel;
+
+    /**
+     * @param horizonSeconds the longest time-to-live of challenges, used to size the expiry wheel
+     */
+    public ChallengeIndex(long horizonSeconds) {
+        this.expiryWheel = new ExpiryWheel<>(horizonSeconds, Scheduled::expiryTime);
+    }
+
+    /**
+     * Registers a challenge unless the user already has {@code maxPending} unexpired ones.
+     *
+     * @param userId the user ID
+     * @param challenge the challenge, whose ID is not {@link #NONE}
+     * @param now current time in seconds since epoch
+     * @param maxPending the maximum number of pending challenges per user
+     * @return true if registered, false if the user is at the cap
+     */
+    public boolean register(String userId, Challenge challenge, long now, int maxPending) {
+        boolean[] registered = {false};
+        pending.compute(userId, (key, challenges) -> {
+            Challenge[] live = prune(challenges == null ? EMPTY : challenges, now);
+            if (live.length >= maxPending) {
+                return live.length == 0 ? null : live;
+            }
+            Challenge[] updated = Arrays.copyOf(live, live.length + 1);
+            updated[live.length] = challenge;
+            registered[0] = true;
+            return updated;
+        });
+        if (registered[0]) {
+            expiryWheel.schedule(new Scheduled(userId, challenge.expiryTime()), challenge.expiryTime());
+        }
+        return registered[0];
+    }
+
+    /**
+     * Removes a challenge, typically after it was consumed.
+     *
+     * @param userId the user ID
+     * @param challengeId the challenge ID
+     */
+    public void remove(String userId, long challengeId) {
+        pending.computeIfPresent(userId, (key, challenges) -> {
+            for (int i = 0; i < challenges.length; i++) {
+                if (challenges[i].challengeId() == challengeId) {
+                    if (challenges.length == 1) {
+                        return null;
+                    }
+                    Challenge[] updated = new Challenge[challenges.length - 1];
+                    System.arraycopy(challenges, 0, updated, 0, i);
+                    System.arraycopy(challenges, i + 1, updated, i, challenges.length - i - 1);
+                    return updated;
+                }
+            }
+            return challenges;
+        });
+    }
+
+    /**
+     * @param userId the user ID
+     * @param now current time in seconds since epoch
+     * @return the most recently registered unexpired challenge, or {@code null}
+     */
+    public Challenge latest(String userId, long now) {
+        Challenge[] challenges = pending.get(userId);
+        if (challenges != null) {
+            for (int i = challenges.length - 1; i >= 0; i--) {
+                if (challenges[i].expiryTime() > now) {
+                    return challenges[i];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param userId the user ID
+     * @param challengeId the challenge ID
+     * @param now current time in seconds since epoch
+     * @return the challenge, or {@code null} if it is not pending
+     */
+    public Challenge find(String userId, long challengeId, long now) {
+        Challenge[] challenges = pending.get(userId);
+        if (challenges != null) {
+            for (Challenge challenge : challenges) {
+                if (challenge.challengeId() == challengeId) {
+                    return challenge.expiryTime() > now ? challenge : null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops challenges whose expiry time is at or before {@code now}.
+     *
+     * @param now current time in seconds since epoch
+     * @return the number of users whose entries were pruned
+     */
+    public int expire(long now) {
+        int[] pruned = {0};
+        expiryWheel.advance(now, scheduled -> {
+            pending.computeIfPresent(scheduled.userId(), (key, challenges) -> {
+                Challenge[] live = prune(challenges, now);
+                return live.length == 0 ? null : live;
+            });
+            pruned[0]++;
+        });
+        return pruned[0];
+    }
+
+    /**
+     * @return the number of users with pending challenges
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    private static Challenge[] prune(Challenge[] challenges, long now) {
+        int live = 0;
+        for (Challenge challenge : challenges) {
+            if (challenge.expiryTime() > now) {
+                live++;
+            }
+        }
+        if (live == challenges.length) {
+            return challenges;
+        }
+        Challenge[] pruned = new Challenge[live];
+        int j = 0;
+        for (Challenge challenge : challenges) {
+            if (challenge.expiryTime() > now) {
+                pruned[j++] = challenge;
+            }
+        }
+        return pruned;
+    }
+
+    /**
+     * A pending challenge.
+     *
+     * @param challengeId the challenge ID
+     * @param expiryTime expiry of the challenge in seconds since epoch
+     * @param storeKey the key its OTP is stored under
+     */
+    public record Challenge(long challengeId, long expiryTime, String storeKey) {
+    }
+
+    private record Scheduled(String userId, long expiryTime) {
+    }
+}
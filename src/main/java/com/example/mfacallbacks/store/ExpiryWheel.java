@@ -0,0 +1,231 @@
+package com.example.mfacallbacks.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Hashed timing wheel with one-second slots used to expire entries close to their deadline.
+ *
+ * <p>Scheduling links the element into the slot of its deadline second, and
+ * {@link #advance(long, Consumer)} only visits the slots for the seconds that passed since
+ * the previous call. Cleanup work is therefore proportional to the number of entries that
+ * actually expire rather than to the number of pending entries. Deadlines further away than
+ * the wheel span stay in their slot for additional rounds.
+ *
+ * <p>Each slot is a doubly linked list of {@link Timer}s guarded by its own lock, so an element
+ * that is removed early, for example because it was consumed or replaced, can be
+ * {@link #cancel cancelled} in constant time instead of being retained until its deadline.
+ *
+ * <p>{@link #schedule(Object, long)} and {@link #cancel(Timer)} may be called from any thread;
+ * {@link #advance(long, Consumer)} is serialized internally and is meant to be driven by a
+ * single cleanup job. Callbacks run without any slot lock held.
+ *
+ * @param <E> the type of the scheduled elements
+ */
+public class ExpiryWheel<E> {
+
+    private final Slot<E>[] slots;
+    private final int mask;
+    private final ToLongFunction<E> deadlineOf;
+
+    /** Due elements unlinked from one slot, handed to the callback once its lock is released */
+    private final List<E> due = new ArrayList<>();
+
+    /** Last second that has been fully processed, or {@code Long.MIN_VALUE} before the first advance */
+    private volatile long lastTick = Long.MIN_VALUE;
+
+    /**
+     * Creates a wheel covering at least {@code horizonSeconds} seconds.
+     *
+     * @param horizonSeconds the longest expected time-to-live; rounded up to a power of two
+     * @param deadlineOf extracts the deadline, in seconds since epoch, from an element
+     */
+    public ExpiryWheel(long horizonSeconds, ToLongFunction<E> deadlineOf) {
+        int size = Integer.highestOneBit((int) Math.max(2, Math.min(horizonSeconds, 1 << 20)) - 1) << 1;
+        this.slots = newSlots(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot<>(i);
+        }
+        this.mask = size - 1;
+        this.deadlineOf = deadlineOf;
+    }
+
+    /**
+     * Schedules an element for expiry at its deadline.
+     *
+     * @param element the element to schedule
+     * @param deadline the deadline in seconds since epoch
+     * @return the handle to {@link #cancel} the element with
+     */
+    public Timer<E> schedule(E element, long deadline) {
+        // Deadlines that were already processed go to the next slot that will be visited
+        long tick = Math.max(deadline, lastTick + 1);
+        Slot<E> slot = slots[(int) (tick & mask)];
+        Timer<E> timer = new Timer<>(element, slot.index);
+        synchronized (slot) {
+            slot.link(timer);
+        }
+        return timer;
+    }
+
+    /**
+     * Removes an element from the wheel before its deadline. Cancelling an element that has
+     * already expired, been evicted or been cancelled has no effect.
+     *
+     * @param timer the handle returned by {@link #schedule}
+     */
+    public void cancel(Timer<E> timer) {
+        Slot<E> slot = slots[timer.slot];
+        synchronized (slot) {
+            if (timer.isLinked()) {
+                slot.unlink(timer);
+            }
+        }
+    }
+
+    /**
+     * Processes all slots up to and including {@code now} and hands every element whose
+     * deadline has passed to {@code onExpired}.
+     *
+     * @param now current time in seconds since epoch
+     * @param onExpired callback invoked for each expired element
+     */
+    public synchronized void advance(long now, Consumer<E> onExpired) {
+        long from = lastTick == Long.MIN_VALUE ? now - mask : Math.max(lastTick + 1, now - mask);
+        for (long tick = from; tick <= now; tick++) {
+            Slot<E> slot = slots[(int) (tick & mask)];
+            synchronized (slot) {
+                Timer<E> timer = slot.head.next;
+                while (timer != slot.head) {
+                    Timer<E> next = timer.next;
+                    // Elements whose deadline lies more than one round ahead stay for a later pass
+                    if (deadlineOf.applyAsLong(timer.element) <= now) {
+                        slot.unlink(timer);
+                        due.add(timer.element);
+                    }
+                    timer = next;
+                }
+            }
+            due.forEach(onExpired);
+            due.clear();
+        }
+        if (now > lastTick) {
+            lastTick = now;
+        }
+    }
+
+    /**
+     * Removes elements from the wheel starting with the earliest upcoming deadlines until
+     * {@code onEvicted} has accepted {@code max} of them. Elements that are rejected, for
+     * example because they were already replaced, are dropped from the wheel as well.
+     *
+     * @param max the maximum number of elements to evict
+     * @param onEvicted removes the element from its owner and returns true if it was still live
+     * @return the number of accepted elements
+     */
+    public synchronized int drainEarliest(int max, Predicate<E> onEvicted) {
+        int evicted = 0;
+        long from = lastTick == Long.MIN_VALUE ? 0 : lastTick + 1;
+        for (long tick = from; tick <= from + mask && evicted < max; tick++) {
+            Slot<E> slot = slots[(int) (tick & mask)];
+            E element;
+            while (evicted < max && (element = slot.poll()) != null) {
+                if (onEvicted.test(element)) {
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @return the number of slots in the wheel
+     */
+    public int slotCount() {
+        return slots.length;
+    }
+
+    /**
+     * @return the number of scheduled elements; counts each slot under its lock, so only
+     *         exact while the wheel is not modified concurrently
+     */
+    public long size() {
+        long size = 0;
+        for (Slot<E> slot : slots) {
+            synchronized (slot) {
+                size += slot.size;
+            }
+        }
+        return size;
+    }
+
+    // Generic arrays cannot be created directly; the array never escapes this wheel
+    @SuppressWarnings("unchecked")
+    private static <E> Slot<E>[] newSlots(int size) {
+        return (Slot<E>[]) new Slot<?>[size];
+    }
+
+    /**
+     * Handle of a scheduled element. Its links are only accessed under the lock of its slot.
+     *
+     * @param <E> the type of the scheduled element
+     */
+    public static final class Timer<E> {
+        private final E element;
+        private final int slot;
+        private Timer<E> prev;
+        private Timer<E> next;
+
+        private Timer(E element, int slot) {
+            this.element = element;
+            this.slot = slot;
+        }
+
+        private boolean isLinked() {
+            return next != null;
+        }
+    }
+
+    /**
+     * Circular list of the timers due in one second of the wheel, around a sentinel head.
+     */
+    private static final class Slot<E> {
+        final int index;
+        final Timer<E> head = new Timer<>(null, -1);
+        int size;
+
+        Slot(int index) {
+            this.index = index;
+            head.prev = head;
+            head.next = head;
+        }
+
+        void link(Timer<E> timer) {
+            timer.prev = head.prev;
+            timer.next = head;
+            head.prev.next = timer;
+            head.prev = timer;
+            size++;
+        }
+
+        void unlink(Timer<E> timer) {
+            timer.prev.next = timer.next;
+            timer.next.prev = timer.prev;
+            timer.prev = null;
+            timer.next = null;
+            size--;
+        }
+
+        synchronized E poll() {
+            Timer<E> first = head.next;
+            if (first == head) {
+                return null;
+            }
+            unlink(first);
+            return first.element;
+        }
+    }
+}
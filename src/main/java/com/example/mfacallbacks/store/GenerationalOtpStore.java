@@ -0,0 +1,232 @@
+package com.example.mfacallbacks.store;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * {@link OtpStore} that groups entries into time-sliced generations and expires a whole
+ * generation at once.
+ *
+ * <p>Every OTP has the same time-to-live, so an entry's generation is simply its expiry time
+ * divided by the generation length. Writes go to the generation of their expiry, reads check
+ * the few live generations, and once every deadline of a generation has passed its map is
+ * dropped from the ring in a single operation: there is no per-entry expiry work and no
+ * expiry bookkeeping per entry. The price is that expired entries are retained for up to one
+ * generation length; {@link #consume} still checks each entry's own deadline.
+ *
+ * <p>A put only touches the generation of its expiry. An OTP that replaces one in an older
+ * generation, which needs a later expiry for the same key, shadows it because reads check the
+ * newest generation first; the older copy is removed once the newer one is consumed, or
+ * dropped with its generation.
+ */
+public class GenerationalOtpStore implements OtpStore {
+
+    /** Store type name used in {@code app.otp.store.type} */
+    public static final String TYPE = "generational";
+
+    private final long generationSeconds;
+
+    /** Live generations indexed by {@code generation % length}; null slots are empty */
+    private final AtomicReferenceArray<Generation> ring;
+
+    /** Size of the last complete generation, used to presize the map of a new one */
+    private volatile int generationSizeHint = 16;
+
+    /** Highest generation index installed so far, where reads start */
+    private final AtomicLong newestIndex = new AtomicLong(Long.MIN_VALUE);
+
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder consumed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * @param horizonSeconds the longest time-to-live of stored OTPs
+     * @param generationSeconds the time span covered by one generation, e.g. the time-to-live;
+     *        shorter generations release memory sooner but add maps to check on every read
+     */
+    public GenerationalOtpStore(long horizonSeconds, long generationSeconds) {
+        if (generationSeconds <= 0) {
+            throw new IllegalArgumentException("Generation length must be positive");
+        }
+        this.generationSeconds = generationSeconds;
+        // Deadlines between now and now + horizon span this many generations, plus the one being dropped
+        this.ring = new AtomicReferenceArray<>((int) ((horizonSeconds + generationSeconds - 1) / generationSeconds) + 2);
+    }
+
+    @Override
+    public void put(String userId, long packedOtp) {
+        long index = PackedOtp.expiryTime(packedOtp) / generationSeconds;
+        Generation target = generation(index);
+        if (target == null) {
+            // The slot is held by a newer generation, so this deadline has long passed
+            expired.increment();
+            return;
+        }
+        target.entries.put(userId, packedOtp);
+        puts.increment();
+    }
+
+    @Override
+    public OtpConsumeResult consume(String userId, int digits, long now) {
+        OtpConsumeResult[] result = {OtpConsumeResult.NOT_FOUND};
+        long newest = newestIndex.get();
+        long index = newest;
+        for (; index > newest - ring.length() && result[0] == OtpConsumeResult.NOT_FOUND; index--) {
+            Generation generation = generationAt(index);
+            if (generation == null) {
+                continue;
+            }
+            // Same single atomic lookup as InMemoryOtpStore, within the generation holding the user
+            generation.entries.computeIfPresent(userId, (key, packedOtp) -> {
+                if (PackedOtp.expiryTime(packedOtp) <= now) {
+                    result[0] = OtpConsumeResult.EXPIRED;
+                    return null;
+                }
+                if (PackedOtp.isLocked(packedOtp)) {
+                    result[0] = OtpConsumeResult.LOCKED;
+                    return packedOtp;
+                }
+                if (!PackedOtp.matches(PackedOtp.digits(packedOtp), digits)) {
+                    long updated = PackedOtp.afterMismatch(packedOtp);
+                    result[0] = PackedOtp.isLocked(updated) ? OtpConsumeResult.LOCKED_OUT : OtpConsumeResult.MISMATCH;
+                    return updated;
+                }
+                result[0] = OtpConsumeResult.CONSUMED;
+                return null;
+            });
+        }
+        if (result[0] == OtpConsumeResult.CONSUMED) {
+            // Older generations may still hold a copy this one replaced; it must not outlive it
+            for (; index > newest - ring.length(); index--) {
+                Generation older = generationAt(index);
+                if (older != null) {
+                    older.entries.remove(userId);
+                }
+            }
+        }
+
+        if (result[0] == OtpConsumeResult.CONSUMED) {
+            consumed.increment();
+        } else if (result[0] == OtpConsumeResult.EXPIRED) {
+            expired.increment();
+        }
+        return result[0];
+    }
+
+    @Override
+    public int expire(long now) {
+        int removed = 0;
+        for (int i = 0; i < ring.length(); i++) {
+            Generation generation = ring.get(i);
+            // Every deadline in the generation is before its end, so all of them are at or before now
+            if (generation != null && (generation.index + 1) * generationSeconds - 1 <= now
+                    && ring.compareAndSet(i, generation, null)) {
+                removed += generation.entries.size();
+            }
+        }
+        expired.add(removed);
+        return removed;
+    }
+
+    @Override
+    public int evict(int count, Consumer<String> onEvicted) {
+        int removed = 0;
+        while (removed < count) {
+            Generation oldest = null;
+            for (int i = 0; i < ring.length(); i++) {
+                Generation generation = ring.get(i);
+                if (generation != null && !generation.entries.isEmpty()
+                        && (oldest == null || generation.index < oldest.index)) {
+                    oldest = generation;
+                }
+            }
+            if (oldest == null) {
+                break;
+            }
+            Iterator<String> userIds = oldest.entries.keySet().iterator();
+            while (removed < count && userIds.hasNext()) {
+                String userId = userIds.next();
+                userIds.remove();
+                onEvicted.accept(userId);
+                removed++;
+            }
+        }
+        evicted.add(removed);
+        return removed;
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (int i = 0; i < ring.length(); i++) {
+            Generation generation = ring.get(i);
+            if (generation != null) {
+                size += generation.entries.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public OtpStoreStats stats() {
+        return new OtpStoreStats(TYPE, size(), puts.sum(), consumed.sum(), expired.sum(), evicted.sum(), 0);
+    }
+
+    /**
+     * @return the live generation with the given index, or null
+     */
+    private Generation generationAt(long index) {
+        Generation generation = ring.get((int) Math.floorMod(index, (long) ring.length()));
+        return generation != null && generation.index == index ? generation : null;
+    }
+
+    /**
+     * Returns the generation with the given index, installing it if its slot is empty or
+     * holds a generation that has wrapped around.
+     *
+     * @return the generation, or null if the slot already holds a later generation
+     */
+    private Generation generation(long index) {
+        int slot = (int) Math.floorMod(index, (long) ring.length());
+        while (true) {
+            Generation current = ring.get(slot);
+            if (current != null && current.index == index) {
+                return current;
+            }
+            if (current != null && current.index > index) {
+                return null;
+            }
+            Generation created = new Generation(index, generationSizeHint);
+            if (ring.compareAndSet(slot, current, created)) {
+                newestIndex.accumulateAndGet(index, Math::max);
+                if (current != null) {
+                    // Not yet dropped by expire(), but every deadline in it is a full ring ago
+                    expired.add(current.entries.size());
+                }
+                // Arrivals are steady, so the previous generation predicts the size of this one and
+                // presizing keeps table resizes off the request path
+                Generation previous = ring.get((int) Math.floorMod(index - 1, (long) ring.length()));
+                if (previous != null && previous.index == index - 1) {
+                    generationSizeHint = Math.max(16, previous.entries.size());
+                }
+                return created;
+            }
+        }
+    }
+
+    /** The entries whose deadlines fall within one generation */
+    private static final class Generation {
+        private final long index;
+        private final ConcurrentHashMap<String, Long> entries;
+
+        Generation(long index, int expectedSize) {
+            this.index = index;
+            this.entries = new ConcurrentHashMap<>(expectedSize);
+        }
+    }
+}
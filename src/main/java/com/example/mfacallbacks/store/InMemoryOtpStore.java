@@ -0,0 +1,172 @@
+package com.example.mfacallbacks.store;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Default {@link OtpStore} backed by a {@link ConcurrentHashMap} keyed by user ID.
+ *
+ * <p>Every entry is also scheduled on an {@link ExpiryWheel}, so {@link #expire(long)} only
+ * touches the entries whose deadline has passed instead of scanning the whole map. Entries
+ * that leave the map early, because they were consumed or replaced, are cancelled on the
+ * wheel at the same time, so it only retains pending entries.
+ */
+public class InMemoryOtpStore implements OtpStore {
+
+    /** Store type name used in {@code app.otp.store.type} */
+    public static final String TYPE = "memory";
+
+    /** Approximate retained heap per entry, used to turn a byte budget into an entry count */
+    public static final int ESTIMATED_ENTRY_BYTES = 210;
+
+    /** Wheel span used when no time-to-live is given, comfortably above the 5 minute default */
+    private static final long DEFAULT_HORIZON_SECONDS = 512;
+
+    /** Thread-safe map to store active OTPs with user ID as key */
+    private final ConcurrentMap<String, OtpData> otpStore = new ConcurrentHashMap<>();
+
+    /** Expiry schedule of the stored entries */
+    private final ExpiryWheel<OtpData> expiryWheel;
+
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder consumed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    public InMemoryOtpStore() {
+        this(DEFAULT_HORIZON_SECONDS);
+    }
+
+    /**
+     * @param horizonSeconds the longest time-to-live of stored OTPs, used to size the expiry wheel
+     */
+    public InMemoryOtpStore(long horizonSeconds) {
+        this.expiryWheel = new ExpiryWheel<>(horizonSeconds, OtpData::expiryTime);
+    }
+
+    @Override
+    public void put(String userId, long packedOtp) {
+        OtpData otpData = new OtpData(userId, packedOtp);
+        // Scheduled before it is published, so whoever removes it from the map can cancel it
+        otpData.timer = expiryWheel.schedule(otpData, otpData.expiryTime());
+        OtpData replaced = otpStore.put(userId, otpData);
+        if (replaced != null) {
+            expiryWheel.cancel(replaced.timer);
+        }
+        puts.increment();
+    }
+
+    @Override
+    public OtpConsumeResult consume(String userId, int digits, long now) {
+        OtpConsumeResult[] result = {OtpConsumeResult.NOT_FOUND};
+        OtpData[] removed = {null};
+        // A single atomic lookup: the bin lock serializes concurrent verifies for the same user,
+        // so a matching code is consumed exactly once and never accepted twice
+        otpStore.computeIfPresent(userId, (key, otpData) -> {
+            if (otpData.expiryTime() <= now) {
+                // Clean up expired OTP to prevent memory leaks
+                result[0] = OtpConsumeResult.EXPIRED;
+                removed[0] = otpData;
+                return null;
+            }
+            if (PackedOtp.isLocked(otpData.packedOtp)) {
+                result[0] = OtpConsumeResult.LOCKED;
+                return otpData;
+            }
+            if (!PackedOtp.matches(otpData.digits(), digits)) {
+                // Updated in place under the bin lock: the wheel holds this exact instance
+                otpData.packedOtp = PackedOtp.afterMismatch(otpData.packedOtp);
+                result[0] = PackedOtp.isLocked(otpData.packedOtp) ? OtpConsumeResult.LOCKED_OUT : OtpConsumeResult.MISMATCH;
+                return otpData;
+            }
+            // Remove the OTP after successful validation (prevent replay attacks)
+            result[0] = OtpConsumeResult.CONSUMED;
+            removed[0] = otpData;
+            return null;
+        });
+
+        if (removed[0] != null) {
+            expiryWheel.cancel(removed[0].timer);
+        }
+        if (result[0] == OtpConsumeResult.CONSUMED) {
+            consumed.increment();
+        } else if (result[0] == OtpConsumeResult.EXPIRED) {
+            expired.increment();
+        }
+        return result[0];
+    }
+
+    @Override
+    public int expire(long now) {
+        int[] removed = {0};
+        // remove(key, value) skips entries that were replaced or consumed in the meantime
+        expiryWheel.advance(now, otpData -> {
+            if (otpStore.remove(otpData.userId(), otpData)) {
+                removed[0]++;
+            }
+        });
+        expired.add(removed[0]);
+        return removed[0];
+    }
+
+    @Override
+    public int evict(int count, Consumer<String> onEvicted) {
+        int removed = expiryWheel.drainEarliest(count, otpData -> {
+            if (!otpStore.remove(otpData.userId(), otpData)) {
+                return false;
+            }
+            onEvicted.accept(otpData.userId());
+            return true;
+        });
+        evicted.add(removed);
+        return removed;
+    }
+
+    @Override
+    public long size() {
+        return otpStore.size();
+    }
+
+    @Override
+    public OtpStoreStats stats() {
+        return new OtpStoreStats(TYPE, size(), puts.sum(), consumed.sum(), expired.sum(), evicted.sum(), 0);
+    }
+
+    /**
+     * @return the number of entries on the expiry wheel, which only exceeds {@link #size()}
+     *         while a removal is cancelling its entry
+     */
+    long scheduled() {
+        return expiryWheel.size();
+    }
+
+    /**
+     * {@link PackedOtp} value along with its owner and its place on the expiry wheel. Only
+     * the attempts left change, and only inside the map's atomic operations; the expiry never does.
+     * Identity equality is intended: the wheel must only remove the exact entry it scheduled.
+     */
+    private static final class OtpData {
+        private final String userId;
+        private long packedOtp;
+        private ExpiryWheel.Timer<OtpData> timer;
+
+        OtpData(String userId, long packedOtp) {
+            this.userId = userId;
+            this.packedOtp = packedOtp;
+        }
+
+        String userId() {
+            return userId;
+        }
+
+        int digits() {
+            return PackedOtp.digits(packedOtp);
+        }
+
+        long expiryTime() {
+            return PackedOtp.expiryTime(packedOtp);
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.example.mfacallbacks.store;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * {@link OtpStore} decorator that records every stored and consumed OTP in an append-only,
+ * memory-mapped journal so pending challenges survive a restart.
+ *
+ * <p>Request threads only enqueue journal records; a background writer drains the queue,
+ * appends the batch to the mapped segment and forces it to disk once per batch (group
+ * commit). A crash can therefore lose at most the last flush interval of records.
+ * Wrong codes are journaled too, so entries come back from a restart with the attempts they
+ * had left; entries that were locked out are journaled as removed.
+ *
+ * <p>The journal is a sequence of segment files. Because every OTP expires, a closed segment
+ * whose latest expiry has passed holds only dead records and is deleted during
+ * {@link #expire(long)}. On {@link #open} all segments are replayed, expired entries are
+ * skipped, and the live entries are compacted into a single fresh segment that serves as
+ * the snapshot for the next start. Entries that no longer fit into a store configured with
+ * a smaller capacity are dropped with a warning rather than failing the start. The snapshot
+ * is forced to disk before {@code open} returns and the replayed segments are deleted right
+ * after, so they never outlive a restart, even on a node that stays idle. The restored entries
+ * are kept for {@link #drainRecovered} until the service owning the keys has indexed them.
+ *
+ * <p>Segment files are created readable and writable by their owner only, as they hold the
+ * codes of pending challenges.
+ *
+ * <p>Record layout: {@code type (1) | packed OTP (8) | key length (2) | UTF-8 user ID}. The
+ * type byte is written last, so a torn record reads as the end of the segment.
+ */
+@Slf4j
+public class JournaledOtpStore implements OtpStore, AutoCloseable {
+
+    private static final byte END = 0;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte MISMATCH = 3;
+    private static final int HEADER_BYTES = 1 + 8 + 2;
+    private static final String SEGMENT_PREFIX = "otp-journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final OtpStore delegate;
+    private final Path directory;
+    private final int segmentBytes;
+    private final long flushIntervalNanos;
+
+    private final Queue<JournalRecord> pending = new ConcurrentLinkedQueue<>();
+    /** Closed segments, oldest first; guarded by itself */
+    private final Deque<Segment> closedSegments = new ArrayDeque<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /** Entries restored on startup, until {@link #drainRecovered} hands them over */
+    private List<JournalRecord> recovered = List.of();
+
+    // Owned by the writer thread after construction
+    private long nextSequence;
+    private Path currentPath;
+    private FileChannel currentChannel;
+    private MappedByteBuffer currentBuffer;
+    private long currentMaxExpiry;
+
+    private JournaledOtpStore(OtpStore delegate, Path directory, int segmentBytes, long flushIntervalMillis) {
+        this.delegate = delegate;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.writer = Thread.ofPlatform().name("otp-journal-writer").daemon().unstarted(this::writeLoop);
+    }
+
+    /**
+     * Opens the journal in {@code directory}, restores the live entries into {@code delegate}
+     * and starts the background writer.
+     *
+     * @param delegate the store that serves requests
+     * @param directory the journal directory, created if missing
+     * @param segmentBytes the size of each mapped segment file
+     * @param flushIntervalMillis the maximum delay between a change and its group commit
+     * @param now current time in seconds since epoch, used to skip expired entries
+     * @return the journaled store
+     * @throws UncheckedIOException if the journal cannot be read or written
+     */
+    public static JournaledOtpStore open(OtpStore delegate, Path directory, int segmentBytes,
+                                         long flushIntervalMillis, long now) {
+        JournaledOtpStore store = new JournaledOtpStore(delegate, directory, segmentBytes, flushIntervalMillis);
+        try {
+            store.recover(now);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to recover OTP journal in " + directory, e);
+        }
+        store.writer.start();
+        return store;
+    }
+
+    @Override
+    public void put(String userId, long packedOtp) {
+        delegate.put(userId, packedOtp);
+        enqueue(new JournalRecord(PUT, userId, packedOtp));
+    }
+
+    @Override
+    public OtpConsumeResult consume(String userId, int digits, long now) {
+        OtpConsumeResult result = delegate.consume(userId, digits, now);
+        if (result == OtpConsumeResult.CONSUMED || result == OtpConsumeResult.LOCKED_OUT) {
+            // Expired entries need no record: replay skips them anyway. A locked entry is
+            // dropped on replay, which rejects its codes just the same
+            enqueue(new JournalRecord(REMOVE, userId, 0L));
+        } else if (result == OtpConsumeResult.MISMATCH) {
+            // Replayed by taking an attempt off the entry, so a restart does not refill its budget
+            enqueue(new JournalRecord(MISMATCH, userId, 0L));
+        }
+        return result;
+    }
+
+    @Override
+    public int expire(long now) {
+        deleteDeadSegments(now);
+        return delegate.expire(now);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Evictions are not journaled, so an evicted entry that has not yet expired is
+     * restored after a restart.
+     */
+    @Override
+    public int evict(int count, Consumer<String> onEvicted) {
+        return delegate.evict(count, onEvicted);
+    }
+
+    @Override
+    public void setEvictionListener(Consumer<String> listener) {
+        delegate.setEvictionListener(listener);
+    }
+
+    @Override
+    public synchronized void drainRecovered(ObjLongConsumer<String> action) {
+        List<JournalRecord> records = recovered;
+        recovered = List.of();
+        for (JournalRecord record : records) {
+            action.accept(record.userId(), record.packedOtp());
+        }
+    }
+
+    @Override
+    public long size() {
+        return delegate.size();
+    }
+
+    @Override
+    public OtpStoreStats stats() {
+        return delegate.stats();
+    }
+
+    @Override
+    public List<OtpShardStats> shardStats() {
+        return delegate.shardStats();
+    }
+
+    /**
+     * Stops the writer after flushing all pending records.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (delegate instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.warn("Failed to close OTP store: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void enqueue(JournalRecord record) {
+        // Once the writer has stopped, nothing would drain the queue
+        if (running) {
+            pending.add(record);
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (running) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+                flush();
+            }
+            flush();
+            closeCurrentSegment();
+        } catch (IOException | RuntimeException e) {
+            running = false;
+            pending.clear();
+            log.error("OTP journal writer failed; pending OTPs are no longer durable", e);
+        }
+    }
+
+    private void flush() throws IOException {
+        JournalRecord record = pending.poll();
+        if (record == null) {
+            return;
+        }
+        while (record != null) {
+            append(record);
+            record = pending.poll();
+        }
+        // Group commit: one force for the whole batch
+        currentBuffer.force();
+    }
+
+    private void append(JournalRecord record) throws IOException {
+        byte[] key = record.userId().getBytes(StandardCharsets.UTF_8);
+        if (key.length > 0xFFFF) {
+            log.warn("User ID too long for the OTP journal; entry is not durable");
+            return;
+        }
+        int length = HEADER_BYTES + key.length;
+        // Keep one byte free for the END marker of a full segment
+        if (currentBuffer.remaining() < length + 1) {
+            rotate();
+        }
+        int start = currentBuffer.position();
+        currentBuffer.position(start + 1);
+        currentBuffer.putLong(record.packedOtp());
+        currentBuffer.putShort((short) key.length);
+        currentBuffer.put(key);
+        currentBuffer.put(start, record.type());
+        if (record.type() == PUT) {
+            currentMaxExpiry = Math.max(currentMaxExpiry, PackedOtp.expiryTime(record.packedOtp()));
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeCurrentSegment();
+        openNewSegment();
+    }
+
+    private void openNewSegment() throws IOException {
+        currentPath = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, nextSequence++, SEGMENT_SUFFIX));
+        Set<StandardOpenOption> options = EnumSet.of(
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Segments hold live OTPs, so only the owner may read them
+            currentChannel = FileChannel.open(currentPath, options,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system, keep the default permissions
+            currentChannel = FileChannel.open(currentPath, options);
+        }
+        currentBuffer = currentChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        currentMaxExpiry = 0;
+    }
+
+    private void closeCurrentSegment() throws IOException {
+        if (currentChannel == null) {
+            return;
+        }
+        currentBuffer.force();
+        currentChannel.close();
+        synchronized (closedSegments) {
+            closedSegments.addLast(new Segment(currentPath, currentMaxExpiry));
+        }
+        currentChannel = null;
+    }
+
+    private void deleteDeadSegments(long now) {
+        while (true) {
+            Segment oldest;
+            synchronized (closedSegments) {
+                oldest = closedSegments.peekFirst();
+                if (oldest == null || oldest.maxExpiry() > now) {
+                    return;
+                }
+                closedSegments.removeFirst();
+            }
+            try {
+                Files.deleteIfExists(oldest.path());
+                log.debug("Deleted expired OTP journal segment {}", oldest.path().getFileName());
+            } catch (IOException e) {
+                log.warn("Failed to delete OTP journal segment {}: {}", oldest.path(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Replays all segments, writes the live entries into a fresh segment and removes the old ones.
+     */
+    private void recover(long now) throws IOException {
+        Files.createDirectories(directory);
+        long started = System.nanoTime();
+
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().forEach(segments::add);
+        }
+
+        // Insertion order is creation order, which drainRecovered hands on. The map grows with
+        // the live set: the journal size says little about it, as most records cancel out
+        Map<String, Long> live = new LinkedHashMap<>();
+        for (Path segment : segments) {
+            replay(segment, live);
+            String name = segment.getFileName().toString();
+            long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            nextSequence = Math.max(nextSequence, sequence + 1);
+        }
+
+        // Compact: the new segment starts with one PUT per live entry and acts as the snapshot.
+        // The writer is not started yet, so this thread still owns the segment
+        openNewSegment();
+        List<JournalRecord> restored = new ArrayList<>(live.size());
+        int dropped = 0;
+        for (Map.Entry<String, Long> entry : live.entrySet()) {
+            long packedOtp = entry.getValue();
+            if (PackedOtp.expiryTime(packedOtp) <= now) {
+                continue;
+            }
+            try {
+                delegate.put(entry.getKey(), packedOtp);
+            } catch (CapacityExceededException e) {
+                // The store was shrunk since the journal was written; the surplus is not kept
+                dropped++;
+                continue;
+            }
+            JournalRecord record = new JournalRecord(PUT, entry.getKey(), packedOtp);
+            append(record);
+            restored.add(record);
+        }
+        currentBuffer.force();
+        // The snapshot is durable, so the replayed segments can go
+        for (Path segment : segments) {
+            Files.deleteIfExists(segment);
+        }
+        recovered = restored;
+
+        if (dropped > 0) {
+            log.warn("Dropped {} recovered OTPs that did not fit into the OTP store; their challenges must be "
+                    + "requested again", dropped);
+        }
+
+        log.info("Recovered {} pending OTPs from {} journal segment(s) in {} ms", restored.size(), segments.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private static void replay(Path segment, Map<String, Long> live) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] key = new byte[256];
+            while (buffer.remaining() >= HEADER_BYTES) {
+                byte type = buffer.get();
+                if (type == END) {
+                    break;
+                }
+                long packedOtp = buffer.getLong();
+                int length = buffer.getShort() & 0xFFFF;
+                if (buffer.remaining() < length) {
+                    break;
+                }
+                if (key.length < length) {
+                    key = new byte[length];
+                }
+                buffer.get(key, 0, length);
+                String userId = new String(key, 0, length, StandardCharsets.UTF_8);
+                if (type == PUT) {
+                    live.put(userId, packedOtp);
+                } else if (type == REMOVE) {
+                    live.remove(userId);
+                } else if (type == MISMATCH) {
+                    live.computeIfPresent(userId, (user, packed) -> PackedOtp.afterMismatch(packed));
+                }
+            }
+        }
+    }
+
+    private record JournalRecord(byte type, String userId, long packedOtp) {
+    }
+
+    private record Segment(Path path, long maxExpiry) {
+    }
+}
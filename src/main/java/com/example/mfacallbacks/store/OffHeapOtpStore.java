@@ -0,0 +1,167 @@
+package com.example.mfacallbacks.store;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link OtpStore} that keeps all entries outside the Java heap.
+ *
+ * <p>Entries live in fixed-size {@link ProbingTable open-addressing tables} (linear probing
+ * with backward-shift deletion) allocated as direct buffers. A slot is 24 bytes: the 128-bit {@link SubjectKey}
+ * of the user ID followed by the {@link PackedOtp} value. No object is allocated per entry,
+ * so heap usage and GC tracing work do not grow with the number of pending challenges.
+ *
+ * <p>The table is split into independently locked segments selected by the key hash.
+ * Expired entries are rejected on access and swept incrementally, a few segments per
+ * {@link #expire(long)} call.
+ */
+public class OffHeapOtpStore implements OtpStore {
+
+    /** Store type name used in {@code app.otp.store.type} */
+    public static final String TYPE = "off-heap";
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int SLOT_BYTES = 24;
+    private static final double MAX_LOAD = 0.75;
+
+    /** Number of expire calls needed to sweep every segment once */
+    private static final int SWEEP_ROUNDS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final AtomicInteger sweepCursor = new AtomicInteger();
+
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder consumed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param capacity the maximum number of pending OTPs; memory for it is reserved up front
+     */
+    public OffHeapOtpStore(long capacity) {
+        int slots = ProbingTable.slotsFor(capacity, SEGMENTS, MAX_LOAD, Integer.MAX_VALUE / SLOT_BYTES);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(slots);
+        }
+    }
+
+    @Override
+    public void put(String userId, long packedOtp) {
+        SubjectKey key = SubjectKey.of(userId);
+        if (!segmentFor(key).put(key.hi(), key.lo(), packedOtp)) {
+            rejected.increment();
+            throw new CapacityExceededException("Too many pending OTP challenges, please retry later");
+        }
+        puts.increment();
+    }
+
+    @Override
+    public OtpConsumeResult consume(String userId, int digits, long now) {
+        SubjectKey key = SubjectKey.of(userId);
+        OtpConsumeResult result = segmentFor(key).consume(key.hi(), key.lo(), digits, now);
+        if (result == OtpConsumeResult.CONSUMED) {
+            consumed.increment();
+        } else if (result == OtpConsumeResult.EXPIRED) {
+            expired.increment();
+        }
+        return result;
+    }
+
+    @Override
+    public int expire(long now) {
+        int removed = 0;
+        int batch = SEGMENTS / SWEEP_ROUNDS;
+        int start = sweepCursor.getAndAdd(batch);
+        for (int i = 0; i < batch; i++) {
+            removed += segments[(start + i) & (SEGMENTS - 1)].sweep(now);
+        }
+        expired.add(removed);
+        return removed;
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public OtpStoreStats stats() {
+        return new OtpStoreStats(TYPE, size(), puts.sum(), consumed.sum(), expired.sum(), 0, rejected.sum());
+    }
+
+    /**
+     * @param bytes a budget of direct memory
+     * @return the largest capacity whose table, rounded up to powers of two, fits in {@code bytes}
+     */
+    public static long maxEntriesWithin(long bytes) {
+        return ProbingTable.maxEntriesWithin(bytes, SEGMENTS, SLOT_BYTES, MAX_LOAD);
+    }
+
+    /**
+     * @return the number of off-heap bytes reserved for the table
+     */
+    public long reservedBytes() {
+        return (long) SEGMENTS * segments[0].capacity() * SLOT_BYTES;
+    }
+
+    private Segment segmentFor(SubjectKey key) {
+        return segments[(int) (key.hi() >>> (64 - SEGMENT_BITS))];
+    }
+
+    /**
+     * One table, its slots in a direct buffer.
+     */
+    private static final class Segment extends ProbingTable {
+        private final ByteBuffer table;
+
+        Segment(int slots) {
+            this.table = ByteBuffer.allocateDirect(slots * SLOT_BYTES).order(ByteOrder.nativeOrder());
+            resize(slots, MAX_LOAD);
+        }
+
+        @Override
+        protected long hi(int slot) {
+            return table.getLong(offset(slot));
+        }
+
+        @Override
+        protected long lo(int slot) {
+            return table.getLong(offset(slot) + 8);
+        }
+
+        @Override
+        protected long value(int slot) {
+            return table.getLong(offset(slot) + 16);
+        }
+
+        @Override
+        protected void write(int slot, long hi, long lo, long value) {
+            table.putLong(offset(slot), hi);
+            table.putLong(offset(slot) + 8, lo);
+            table.putLong(offset(slot) + 16, value);
+        }
+
+        @Override
+        protected void writeValue(int slot, long value) {
+            table.putLong(offset(slot) + 16, value);
+        }
+
+        @Override
+        protected void copy(int from, int to) {
+            write(to, hi(from), lo(from), value(from));
+        }
+
+        private static int offset(int slot) {
+            return slot * SLOT_BYTES;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.mfacallbacks.store;
+
+/**
+ * Outcome of {@link OtpStore#consume(String, int, long)}.
+ */
+public enum OtpConsumeResult {
+    /** The OTP matched and has been removed (one-time use) */
+    CONSUMED,
+    /** The OTP did not match; the pending entry is kept */
+    MISMATCH,
+    /** The OTP did not match and that was the last attempt; the entry is now locked */
+    LOCKED_OUT,
+    /** The entry was locked by earlier wrong codes; the OTP was not compared */
+    LOCKED,
+    /** The pending OTP had expired and has been removed */
+    EXPIRED,
+    /** No OTP is pending for the user */
+    NOT_FOUND
+}
@@ -0,0 +1,15 @@
+package com.example.mfacallbacks.store;
+
+/**
+ * Point-in-time counters of one shard of a {@link ShardedOtpStore}.
+ *
+ * @param shard the shard index
+ * @param size number of pending entries in the shard
+ * @param operations total number of put and consume calls routed to the shard
+ * @param operationNanos total time spent in those calls
+ * @param expired total number of entries expired by the shard's cleanup
+ * @param expireNanos total time spent in the shard's cleanup
+ */
+public record OtpShardStats(int shard, long size, long operations, long operationNanos,
+                            long expired, long expireNanos) {
+}
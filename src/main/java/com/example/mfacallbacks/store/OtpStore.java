@@ -0,0 +1,103 @@
+package com.example.mfacallbacks.store;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Storage SPI for pending OTP challenges.
+ *
+ * <p>Implementations hold at most one pending OTP per key (the JWT subject combined with a
+ * challenge ID by {@link com.example.mfacallbacks.service.OtpService}) and must be
+ * safe for concurrent use from request threads and the scheduled cleanup job.
+ * Time is always passed in by the caller as epoch seconds so that stores never read
+ * the clock themselves. OTPs are exchanged in their {@link PackedOtp} form so that no
+ * per-request strings are needed on the storage path.
+ *
+ * <p>The implementation used by {@link com.example.mfacallbacks.service.OtpService} is
+ * selected with the {@code app.otp.store.type} property.
+ */
+public interface OtpStore {
+
+    /**
+     * Stores an OTP for the given user, replacing any pending one.
+     *
+     * @param userId the unique identifier for the user
+     * @param packedOtp the OTP digits and expiry time packed with {@link PackedOtp#pack(int, long, int)}
+     */
+    void put(String userId, long packedOtp);
+
+    /**
+     * Checks the given OTP against the pending one and removes it if it matches and
+     * has not expired. Expired entries are removed as a side effect; on a mismatch the
+     * pending entry is kept with one attempt less (see {@link PackedOtp#afterMismatch(long)}),
+     * and once it is locked every further code is rejected without being compared.
+     *
+     * <p>The check and removal must happen as one atomic operation with a single lookup:
+     * when several threads present the same valid code concurrently, exactly one of them
+     * may observe {@link OtpConsumeResult#CONSUMED}.
+     *
+     * @param userId the user ID to validate the OTP for
+     * @param digits the OTP supplied by the user, encoded with {@link PackedOtp#encodeDigits(CharSequence)}
+     * @param now current time in seconds since epoch
+     * @return the outcome of the check
+     */
+    OtpConsumeResult consume(String userId, int digits, long now);
+
+    /**
+     * Removes all entries whose expiry time is at or before {@code now}.
+     *
+     * @param now current time in seconds since epoch
+     * @return the number of entries removed
+     */
+    int expire(long now);
+
+    /**
+     * Removes up to {@code count} entries, preferring the ones closest to expiry, to make
+     * room for new challenges. Stores that cannot pick such entries cheaply evict nothing.
+     *
+     * @param count the maximum number of entries to remove
+     * @param onEvicted receives the key of every removed entry
+     * @return the number of entries removed
+     */
+    default int evict(int count, Consumer<String> onEvicted) {
+        return 0;
+    }
+
+    /**
+     * Registers the callback told the key of every entry the store evicts on its own to make
+     * room, so that indexes kept outside the store can drop it too. Stores that never evict on
+     * their own ignore it.
+     *
+     * @param listener receives the key of every evicted entry
+     */
+    default void setEvictionListener(Consumer<String> listener) {
+    }
+
+    /**
+     * Hands the entries restored from durable storage at startup to {@code action}, once and in
+     * the order they were stored, so that indexes kept outside the store can be rebuilt. Stores that keep nothing across
+     * restarts have nothing to hand over.
+     *
+     * @param action receives the key and packed OTP of every restored entry
+     */
+    default void drainRecovered(ObjLongConsumer<String> action) {
+    }
+
+    /**
+     * @return the number of pending entries, including expired ones not yet removed
+     */
+    long size();
+
+    /**
+     * @return a point-in-time snapshot of the store counters
+     */
+    OtpStoreStats stats();
+
+    /**
+     * @return per-shard counters, or an empty list if the store is not partitioned
+     */
+    default List<OtpShardStats> shardStats() {
+        return List.of();
+    }
+}
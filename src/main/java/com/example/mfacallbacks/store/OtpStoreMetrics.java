@@ -0,0 +1,64 @@
+package com.example.mfacallbacks.store;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Publishes {@link OtpStore} counters as Micrometer meters under the {@code otp.store} prefix.
+ *
+ * <p>Partitioned stores additionally get per-shard meters tagged with {@code shard}.
+ */
+public class OtpStoreMetrics implements MeterBinder {
+
+    private final OtpStore store;
+
+    public OtpStoreMetrics(OtpStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("otp.store.size", store, OtpStore::size)
+                .description("Pending OTP challenges")
+                .register(registry);
+        counter(registry, "otp.store.puts", "OTPs stored", stats -> stats.puts());
+        counter(registry, "otp.store.consumed", "OTPs successfully consumed", stats -> stats.consumed());
+        counter(registry, "otp.store.expired", "OTPs removed after expiry", stats -> stats.expired());
+        counter(registry, "otp.store.evicted", "OTPs evicted to stay within the capacity budget",
+                stats -> stats.evicted());
+        counter(registry, "otp.store.rejected", "OTP challenges rejected because the store was full",
+                stats -> stats.rejected());
+
+        List<OtpShardStats> shards = store.shardStats();
+        for (OtpShardStats shard : shards) {
+            int index = shard.shard();
+            String tag = Integer.toString(index);
+            Gauge.builder("otp.store.shard.size", store, s -> s.shardStats().get(index).size())
+                    .tag("shard", tag)
+                    .register(registry);
+            FunctionTimer.builder("otp.store.shard.operations", store,
+                            s -> s.shardStats().get(index).operations(),
+                            s -> s.shardStats().get(index).operationNanos(), TimeUnit.NANOSECONDS)
+                    .description("Put and consume calls routed to the shard")
+                    .tag("shard", tag)
+                    .register(registry);
+            FunctionCounter.builder("otp.store.shard.expired", store, s -> s.shardStats().get(index).expired())
+                    .tag("shard", tag)
+                    .register(registry);
+        }
+    }
+
+    private void counter(MeterRegistry registry, String name, String description,
+                         ToLongFunction<OtpStoreStats> value) {
+        FunctionCounter.builder(name, store, s -> value.applyAsLong(s.stats()))
+                .description(description)
+                .register(registry);
+    }
+}
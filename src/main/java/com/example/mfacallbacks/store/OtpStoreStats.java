@@ -0,0 +1,16 @@
+package com.example.mfacallbacks.store;
+
+/**
+ * Point-in-time counters of an {@link OtpStore}.
+ *
+ * @param type the store type as configured in {@code app.otp.store.type}
+ * @param size number of pending entries
+ * @param puts total number of stored OTPs
+ * @param consumed total number of successfully consumed OTPs
+ * @param expired total number of entries removed because they expired
+ * @param evicted total number of entries removed early to stay within the capacity budget
+ * @param rejected total number of puts rejected because the store was full
+ */
+public record OtpStoreStats(String type, long size, long puts, long consumed, long expired,
+                            long evicted, long rejected) {
+}
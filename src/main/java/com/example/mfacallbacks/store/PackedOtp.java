@@ -0,0 +1,180 @@
+package com.example.mfacallbacks.store;
+
+/**
+ * Packs an OTP and its expiry time into a single {@code long}.
+ *
+ * <p>Layout: the upper 32 bits hold the expiry time in seconds since epoch (unsigned, valid
+ * until 2106), the next 4 bits the verification attempts left and the lower 28 bits the OTP
+ * digits. Digits are encoded as the numeric value plus {@code 10^length}, i.e. with a leading
+ * sentinel {@code 1}, so that codes with leading zeros stay distinct from shorter codes
+ * ({@code "0123"} becomes {@code 10123}). A packed value is therefore never {@code 0}, which
+ * stores use to mark empty slots.
+ *
+ * <p>Attempts count down on every wrong code, see {@link #afterMismatch(long)}; {@code 0}
+ * means the entry is not limited. When the last attempt is used up, the digits are cleared:
+ * the entry is then locked, and stores reject any further code for it without comparing.
+ */
+public final class PackedOtp {
+
+    /** Longest OTP whose encoded digits still fit in the 28 digit bits */
+    public static final int MAX_DIGITS = 8;
+
+    /** Largest attempt limit that fits in the 4 attempt bits */
+    public static final int MAX_ATTEMPTS = 15;
+
+    /** Returned by {@link #encodeDigits(CharSequence)} for input that is not a valid OTP */
+    public static final int INVALID = -1;
+
+    private static final int[] POWERS_OF_TEN = {
+        1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000
+    };
+
+    private static final int ATTEMPTS_SHIFT = 28;
+    private static final long DIGITS_MASK = (1L << ATTEMPTS_SHIFT) - 1;
+    private static final long ONE_ATTEMPT = 1L << ATTEMPTS_SHIFT;
+
+    private PackedOtp() {
+    }
+
+    /**
+     * Encodes a string of decimal digits.
+     *
+     * @param otp the OTP digits
+     * @return the encoded digits, or {@link #INVALID} if the input is empty, too long or not numeric
+     */
+    public static int encodeDigits(CharSequence otp) {
+        int length = otp.length();
+        if (length == 0 || length > MAX_DIGITS) {
+            return INVALID;
+        }
+        int value = 1;
+        for (int i = 0; i < length; i++) {
+            char c = otp.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Encodes a numeric code of the given length.
+     *
+     * @param code the code, between 0 (inclusive) and {@code 10^length} (exclusive)
+     * @param length the number of digits, at most {@link #MAX_DIGITS}
+     * @return the encoded digits
+     */
+    public static int encodeCode(int code, int length) {
+        return POWERS_OF_TEN[length] + code;
+    }
+
+    /**
+     * Returns {@code 10^length}, the exclusive upper bound of a code with that many digits.
+     *
+     * @param length the number of digits, at most {@link #MAX_DIGITS}
+     * @return the power of ten
+     */
+    public static int bound(int length) {
+        return POWERS_OF_TEN[length];
+    }
+
+    /**
+     * Renders encoded digits back to the OTP string, keeping leading zeros.
+     *
+     * @param digits encoded OTP digits
+     * @return the OTP string
+     */
+    public static String toString(int digits) {
+        int length = 0;
+        while (length < MAX_DIGITS && POWERS_OF_TEN[length + 1] <= digits) {
+            length++;
+        }
+        char[] chars = new char[length];
+        int value = digits;
+        for (int i = length - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Compares two encoded OTPs without a data-dependent branch.
+     *
+     * @param expected the stored digits
+     * @param actual the supplied digits
+     * @return true if both are equal
+     */
+    public static boolean matches(int expected, int actual) {
+        return (expected ^ actual) == 0;
+    }
+
+    /**
+     * @param digits encoded OTP digits
+     * @param expiryTime expiry time in seconds since epoch
+     * @return the packed value, with no attempt limit
+     */
+    public static long pack(int digits, long expiryTime) {
+        return pack(digits, expiryTime, 0);
+    }
+
+    /**
+     * @param digits encoded OTP digits
+     * @param expiryTime expiry time in seconds since epoch
+     * @param attempts wrong codes allowed before the entry locks, at most {@link #MAX_ATTEMPTS},
+     *        or 0 for no limit
+     * @return the packed value
+     */
+    public static long pack(int digits, long expiryTime, int attempts) {
+        return (expiryTime << 32) | ((long) attempts << ATTEMPTS_SHIFT) | (digits & DIGITS_MASK);
+    }
+
+    /**
+     * @param packed a packed value
+     * @return the encoded OTP digits, or 0 if the entry is locked
+     */
+    public static int digits(long packed) {
+        return (int) (packed & DIGITS_MASK);
+    }
+
+    /**
+     * @param packed a packed value
+     * @return the wrong codes still allowed, or 0 if the entry is not limited or locked
+     */
+    public static int attemptsLeft(long packed) {
+        return (int) (packed >>> ATTEMPTS_SHIFT) & MAX_ATTEMPTS;
+    }
+
+    /**
+     * @param packed a packed value
+     * @return true if the entry used up its attempts and must not be compared any more
+     */
+    public static boolean isLocked(long packed) {
+        return digits(packed) == 0;
+    }
+
+    /**
+     * Records a wrong code against an entry.
+     *
+     * @param packed a packed value that is not locked
+     * @return the value with one attempt less, locked if that was the last one, or unchanged
+     *         if the entry is not limited
+     */
+    public static long afterMismatch(long packed) {
+        return switch (attemptsLeft(packed)) {
+            case 0 -> packed;
+            // Keep only the expiry, so the entry still expires and its slot is never 0
+            case 1 -> packed & ~0xFFFFFFFFL;
+            default -> packed - ONE_ATTEMPT;
+        };
+    }
+
+    /**
+     * @param packed a packed value
+     * @return the expiry time in seconds since epoch
+     */
+    public static long expiryTime(long packed) {
+        return packed >>> 32;
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.mfacallbacks.store;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link OtpStore} that keeps all entries on the heap in primitive arrays.
+ *
+ * <p>Same {@link ProbingTable} as {@link OffHeapOtpStore} (linear probing with backward-shift
+ * deletion over 24-byte slots holding the 128-bit {@link SubjectKey} and the {@link PackedOtp} value), but
+ * backed by {@code long[]} tables that grow on demand. There is no object per entry, so the
+ * garbage collector traces a few large arrays instead of millions of nodes, while the store
+ * needs no up-front capacity or direct memory budget. Given a {@code maxBytes} budget, a
+ * segment stops doubling once its table would exceed its share, and new entries it cannot
+ * hold are rejected like in the off-heap store.
+ *
+ * <p>The table is split into independently locked segments selected by the key hash.
+ * Expired entries are rejected on access and swept incrementally, a few segments per
+ * {@link #expire(long)} call.
+ */
+public class PrimitiveOtpStore implements OtpStore {
+
+    /** Store type name used in {@code app.otp.store.type} */
+    public static final String TYPE = "primitive";
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int SLOT_LONGS = 3;
+    private static final double MAX_LOAD = 0.75;
+
+    /** Number of expire calls needed to sweep every segment once */
+    private static final int SWEEP_ROUNDS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final AtomicInteger sweepCursor = new AtomicInteger();
+
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder consumed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public PrimitiveOtpStore() {
+        this(SEGMENTS * 16);
+    }
+
+    /**
+     * @param initialCapacity the number of pending OTPs to size the tables for; they grow beyond it
+     */
+    public PrimitiveOtpStore(long initialCapacity) {
+        this(initialCapacity, 0);
+    }
+
+    /**
+     * @param initialCapacity the number of pending OTPs to size the tables for; they grow beyond it
+     * @param maxBytes the most heap bytes the tables may take, 0 for no limit
+     */
+    public PrimitiveOtpStore(long initialCapacity, long maxBytes) {
+        int maxSlots = Integer.highestOneBit(maxBytes > 0
+                ? (int) Math.max(2, Math.min(maxBytes / SEGMENTS / (SLOT_LONGS * Long.BYTES), Integer.MAX_VALUE))
+                : Integer.MAX_VALUE / SLOT_LONGS);
+        int slots = ProbingTable.slotsFor(initialCapacity, SEGMENTS, MAX_LOAD, maxSlots);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.min(Math.max(slots, 16), maxSlots), maxSlots);
+        }
+    }
+
+    @Override
+    public void put(String userId, long packedOtp) {
+        SubjectKey key = SubjectKey.of(userId);
+        // A segment grows instead of refusing the entry, up to its share of maxBytes
+        if (!segmentFor(key).put(key.hi(), key.lo(), packedOtp)) {
+            rejected.increment();
+            throw new CapacityExceededException("Too many pending OTP challenges, please retry later");
+        }
+        puts.increment();
+    }
+
+    @Override
+    public OtpConsumeResult consume(String userId, int digits, long now) {
+        SubjectKey key = SubjectKey.of(userId);
+        OtpConsumeResult result = segmentFor(key).consume(key.hi(), key.lo(), digits, now);
+        if (result == OtpConsumeResult.CONSUMED) {
+            consumed.increment();
+        } else if (result == OtpConsumeResult.EXPIRED) {
+            expired.increment();
+        }
+        return result;
+    }
+
+    @Override
+    public int expire(long now) {
+        int removed = 0;
+        int batch = SEGMENTS / SWEEP_ROUNDS;
+        int start = sweepCursor.getAndAdd(batch);
+        for (int i = 0; i < batch; i++) {
+            removed += segments[(start + i) & (SEGMENTS - 1)].sweep(now);
+        }
+        expired.add(removed);
+        return removed;
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public OtpStoreStats stats() {
+        return new OtpStoreStats(TYPE, size(), puts.sum(), consumed.sum(), expired.sum(), 0, rejected.sum());
+    }
+
+    /**
+     * @param bytes a budget of heap memory for the tables
+     * @return the most entries the tables, doubled in size as they fill, hold within {@code bytes},
+     *         excluding the transient copy while a segment grows; pass {@code bytes} as
+     *         {@code maxBytes} so that no segment grows past its share
+     */
+    public static long maxEntriesWithin(long bytes) {
+        return ProbingTable.maxEntriesWithin(bytes, SEGMENTS, SLOT_LONGS * Long.BYTES, MAX_LOAD);
+    }
+
+    /**
+     * @return the number of heap bytes currently taken by the tables
+     */
+    public long tableBytes() {
+        long slots = 0;
+        for (Segment segment : segments) {
+            slots += segment.capacity();
+        }
+        return slots * SLOT_LONGS * Long.BYTES;
+    }
+
+    private Segment segmentFor(SubjectKey key) {
+        return segments[(int) (key.hi() >>> (64 - SEGMENT_BITS))];
+    }
+
+    /**
+     * One table, its slots in a {@code long[]} as {@code [hi, lo, value]}, doubled when full
+     * up to {@code maxSlots}.
+     */
+    private static final class Segment extends ProbingTable {
+        private final int maxSlots;
+        private long[] table;
+
+        Segment(int slots, int maxSlots) {
+            this.maxSlots = maxSlots;
+            this.table = new long[slots * SLOT_LONGS];
+            resize(slots, MAX_LOAD);
+        }
+
+        @Override
+        protected boolean makeRoom() {
+            if (capacity() >= maxSlots) {
+                return false;
+            }
+            long[] old = table;
+            int slots = capacity() << 1;
+            table = new long[slots * SLOT_LONGS];
+            resize(slots, MAX_LOAD);
+            for (int i = 0; i < old.length; i += SLOT_LONGS) {
+                if (old[i + 2] != 0L) {
+                    int slot = find(old[i], old[i + 1]);
+                    System.arraycopy(old, i, table, slot * SLOT_LONGS, SLOT_LONGS);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        protected long hi(int slot) {
+            return table[slot * SLOT_LONGS];
+        }
+
+        @Override
+        protected long lo(int slot) {
+            return table[slot * SLOT_LONGS + 1];
+        }
+
+        @Override
+        protected long value(int slot) {
+            return table[slot * SLOT_LONGS + 2];
+        }
+
+        @Override
+        protected void write(int slot, long hi, long lo, long value) {
+            table[slot * SLOT_LONGS] = hi;
+            table[slot * SLOT_LONGS + 1] = lo;
+            table[slot * SLOT_LONGS + 2] = value;
+        }
+
+        @Override
+        protected void writeValue(int slot, long value) {
+            table[slot * SLOT_LONGS + 2] = value;
+        }
+
+        @Override
+        protected void copy(int from, int to) {
+            System.arraycopy(table, from * SLOT_LONGS, table, to * SLOT_LONGS, SLOT_LONGS);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.mfacallbacks.store;
+
+/**
+ * Open-addressing table of {@code (hi, lo, value)} slots keyed by a 128-bit {@link SubjectKey},
+ * shared by the segments of {@link OffHeapOtpStore} and {@link PrimitiveOtpStore}.
+ *
+ * <p>Probing is linear from {@code lo & mask} and deletion shifts the following entries back
+ * instead of leaving tombstones, so lookups never scan past the end of a run. A zero value
+ * marks a slot empty, which {@link PackedOtp} values never are. Subclasses only provide the
+ * storage of the slots; all access is guarded by the table monitor.
+ */
+abstract class ProbingTable {
+
+    private int mask;
+    private int maxSize;
+    private int size;
+
+    /**
+     * @param capacity the number of entries to hold across all segments
+     * @param segments the number of segments
+     * @param maxLoad the fraction of slots that may be occupied
+     * @param maxSlots the largest number of slots a segment may have
+     * @return the slots per segment: the smallest power of two holding its share of {@code capacity}
+     */
+    static int slotsFor(long capacity, int segments, double maxLoad, int maxSlots) {
+        long perSegment = (long) Math.ceil(Math.max(capacity, segments) / (double) segments / maxLoad);
+        return Integer.highestOneBit((int) Math.min(perSegment, maxSlots) - 1) << 1;
+    }
+
+    /**
+     * Inverse of {@link #slotsFor}: since segments are rounded up to powers of two, a budget
+     * slightly short of the next power of two holds about half as many entries as it could.
+     *
+     * @param bytes the memory budget for all segments
+     * @param segments the number of segments
+     * @param slotBytes the bytes per slot
+     * @param maxLoad the fraction of slots that may be occupied
+     * @return the most entries whose power-of-two segments fit in {@code bytes}, 0 if none do
+     */
+    static long maxEntriesWithin(long bytes, int segments, int slotBytes, double maxLoad) {
+        long slots = Long.highestOneBit(bytes / segments / slotBytes);
+        return segments * (long) (slots * maxLoad);
+    }
+
+    /**
+     * @param slots the number of slots, a power of two
+     * @param maxLoad the fraction of slots that may be occupied
+     */
+    protected final void resize(int slots, double maxLoad) {
+        this.mask = slots - 1;
+        this.maxSize = (int) (slots * maxLoad);
+    }
+
+    /**
+     * @return false if the key is new and the table is full
+     */
+    synchronized boolean put(long hi, long lo, long value) {
+        int slot = find(hi, lo);
+        if (isEmpty(slot)) {
+            if (size >= maxSize) {
+                if (!makeRoom()) {
+                    return false;
+                }
+                slot = find(hi, lo);
+            }
+            size++;
+            write(slot, hi, lo, value);
+        } else {
+            writeValue(slot, value);
+        }
+        return true;
+    }
+
+    synchronized OtpConsumeResult consume(long hi, long lo, int digits, long now) {
+        int slot = find(hi, lo);
+        if (isEmpty(slot)) {
+            return OtpConsumeResult.NOT_FOUND;
+        }
+        long value = value(slot);
+        if (PackedOtp.expiryTime(value) <= now) {
+            remove(slot);
+            return OtpConsumeResult.EXPIRED;
+        }
+        if (PackedOtp.isLocked(value)) {
+            return OtpConsumeResult.LOCKED;
+        }
+        if (!PackedOtp.matches(PackedOtp.digits(value), digits)) {
+            long updated = PackedOtp.afterMismatch(value);
+            writeValue(slot, updated);
+            return PackedOtp.isLocked(updated) ? OtpConsumeResult.LOCKED_OUT : OtpConsumeResult.MISMATCH;
+        }
+        remove(slot);
+        return OtpConsumeResult.CONSUMED;
+    }
+
+    synchronized int sweep(long now) {
+        int removed = 0;
+        int slot = 0;
+        while (slot <= mask) {
+            if (!isEmpty(slot) && PackedOtp.expiryTime(value(slot)) <= now) {
+                // Backward shift may move another entry into this slot, so check it again
+                remove(slot);
+                removed++;
+            } else {
+                slot++;
+            }
+        }
+        return removed;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Called by {@link #put} when a new key does not fit. Implementations that can grow
+     * re-{@link #resize} the table, re-insert the entries with {@link #find} and return true.
+     *
+     * @return true if there is now room for one more entry
+     */
+    protected boolean makeRoom() {
+        return false;
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot where it would be inserted
+     */
+    protected final int find(long hi, long lo) {
+        int slot = (int) lo & mask;
+        while (!isEmpty(slot)) {
+            if (hi(slot) == hi && lo(slot) == lo) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void remove(int slot) {
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (isEmpty(next)) {
+                break;
+            }
+            int home = (int) lo(next) & mask;
+            // Move the entry into the hole unless its home lies cyclically in (hole, next]
+            boolean stays = hole <= next
+                    ? hole < home && home <= next
+                    : hole < home || home <= next;
+            if (!stays) {
+                copy(next, hole);
+                hole = next;
+            }
+        }
+        writeValue(hole, 0L);
+        size--;
+    }
+
+    private boolean isEmpty(int slot) {
+        return value(slot) == 0L;
+    }
+
+    protected abstract long hi(int slot);
+
+    protected abstract long lo(int slot);
+
+    protected abstract long value(int slot);
+
+    protected abstract void write(int slot, long hi, long lo, long value);
+
+    protected abstract void writeValue(int slot, long value);
+
+    protected abstract void copy(int from, int to);
+}
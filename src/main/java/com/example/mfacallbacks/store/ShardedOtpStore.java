@@ -0,0 +1,182 @@
+package com.example.mfacallbacks.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * {@link OtpStore} that partitions entries over independent shards by user ID hash.
+ *
+ * <p>Each shard is a complete store with its own locks and expiry schedule, so a request
+ * only ever touches the shard owning its user and never waits on another shard. Cleanup
+ * runs the shards' {@link OtpStore#expire(long)} in parallel on a dedicated pool of
+ * expiry workers.
+ */
+@Slf4j
+public class ShardedOtpStore implements OtpStore, AutoCloseable {
+
+    private final Shard[] shards;
+    private final ExecutorService expiryWorkers;
+    private final AtomicInteger evictCursor = new AtomicInteger();
+
+    /**
+     * @param shardCount the number of shards, at least 2
+     * @param factory creates the store for the shard with the given index
+     */
+    public ShardedOtpStore(int shardCount, IntFunction<OtpStore> factory) {
+        if (shardCount < 2) {
+            throw new IllegalArgumentException("Shard count must be at least 2");
+        }
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, factory.apply(i));
+        }
+        int workers = Math.min(shardCount, Runtime.getRuntime().availableProcessors());
+        this.expiryWorkers = Executors.newFixedThreadPool(workers,
+                Thread.ofPlatform().name("otp-expiry-", 0).daemon().factory());
+        log.debug("OTP store partitioned into {} shards with {} expiry workers", shardCount, workers);
+    }
+
+    @Override
+    public void put(String userId, long packedOtp) {
+        Shard shard = shardFor(userId);
+        long started = System.nanoTime();
+        shard.store.put(userId, packedOtp);
+        shard.record(started);
+    }
+
+    @Override
+    public OtpConsumeResult consume(String userId, int digits, long now) {
+        Shard shard = shardFor(userId);
+        long started = System.nanoTime();
+        OtpConsumeResult result = shard.store.consume(userId, digits, now);
+        shard.record(started);
+        return result;
+    }
+
+    @Override
+    public int expire(long now) {
+        List<Future<Integer>> results = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            results.add(expiryWorkers.submit(() -> shard.expire(now)));
+        }
+        int removed = 0;
+        for (Future<Integer> result : results) {
+            try {
+                removed += result.get();
+            } catch (ExecutionException e) {
+                log.error("OTP shard cleanup failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public int evict(int count, Consumer<String> onEvicted) {
+        int evicted = 0;
+        int start = Math.floorMod(evictCursor.getAndIncrement(), shards.length);
+        for (int i = 0; i < shards.length && evicted < count; i++) {
+            evicted += shards[(start + i) % shards.length].store.evict(count - evicted, onEvicted);
+        }
+        return evicted;
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Shard shard : shards) {
+            size += shard.store.size();
+        }
+        return size;
+    }
+
+    @Override
+    public OtpStoreStats stats() {
+        String type = null;
+        long size = 0;
+        long puts = 0;
+        long consumed = 0;
+        long expired = 0;
+        long evicted = 0;
+        long rejected = 0;
+        for (Shard shard : shards) {
+            OtpStoreStats stats = shard.store.stats();
+            type = stats.type();
+            size += stats.size();
+            puts += stats.puts();
+            consumed += stats.consumed();
+            expired += stats.expired();
+            evicted += stats.evicted();
+            rejected += stats.rejected();
+        }
+        return new OtpStoreStats(type, size, puts, consumed, expired, evicted, rejected);
+    }
+
+    @Override
+    public List<OtpShardStats> shardStats() {
+        List<OtpShardStats> stats = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            stats.add(new OtpShardStats(shard.index, shard.store.size(), shard.operations.sum(),
+                    shard.operationNanos.sum(), shard.expired.sum(), shard.expireNanos.sum()));
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() throws Exception {
+        expiryWorkers.shutdownNow();
+        for (Shard shard : shards) {
+            if (shard.store instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private Shard shardFor(String userId) {
+        int hash = userId.hashCode();
+        // Spread the hash so that user IDs differing only in their last characters separate
+        hash ^= (hash >>> 16);
+        hash *= 0x85ebca6b;
+        hash ^= (hash >>> 13);
+        return shards[Math.floorMod(hash, shards.length)];
+    }
+
+    private static final class Shard {
+        private final int index;
+        private final OtpStore store;
+        private final LongAdder operations = new LongAdder();
+        private final LongAdder operationNanos = new LongAdder();
+        private final LongAdder expired = new LongAdder();
+        private final LongAdder expireNanos = new LongAdder();
+
+        Shard(int index, OtpStore store) {
+            this.index = index;
+            this.store = store;
+        }
+
+        void record(long started) {
+            operations.increment();
+            operationNanos.add(System.nanoTime() - started);
+        }
+
+        int expire(long now) {
+            long started = System.nanoTime();
+            int removed = store.expire(now);
+            expired.add(removed);
+            expireNanos.add(System.nanoTime() - started);
+            return removed;
+        }
+    }
+}
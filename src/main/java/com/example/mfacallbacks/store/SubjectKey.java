@@ -0,0 +1,96 @@
+package com.example.mfacallbacks.store;
+
+/**
+ * 128-bit hash of a JWT subject used as a fixed-size key by the primitive OTP stores.
+ *
+ * <p>The hash is MurmurHash3 (x64, 128-bit) applied to the UTF-16 code units of the
+ * subject, which avoids encoding the string to bytes first. With 128 bits the chance of
+ * two live subjects colliding is negligible, so stores treat equal keys as equal subjects.
+ *
+ * @param hi the upper 64 bits
+ * @param lo the lower 64 bits
+ */
+public record SubjectKey(long hi, long lo) {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    /**
+     * Hashes the given subject.
+     *
+     * @param subject the JWT subject
+     * @return the 128-bit key
+     */
+    public static SubjectKey of(String subject) {
+        int length = subject.length();
+        long h1 = 0;
+        long h2 = 0;
+
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            long k1 = chars(subject, i);
+            long k2 = chars(subject, i + 4);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        long k1 = 0;
+        long k2 = 0;
+        int remaining = length - i;
+        for (int j = remaining - 1; j >= 4; j--) {
+            k2 = (k2 << 16) | subject.charAt(i + j);
+        }
+        for (int j = Math.min(remaining, 4) - 1; j >= 0; j--) {
+            k1 = (k1 << 16) | subject.charAt(i + j);
+        }
+        h2 ^= mixK2(k2);
+        h1 ^= mixK1(k1);
+
+        long bytes = length * 2L;
+        h1 ^= bytes;
+        h2 ^= bytes;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new SubjectKey(h1, h2);
+    }
+
+    private static long chars(String s, int offset) {
+        return s.charAt(offset)
+                | (long) s.charAt(offset + 1) << 16
+                | (long) s.charAt(offset + 2) << 32
+                | (long) s.charAt(offset + 3) << 48;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.mfacallbacks.totp;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * {@link TotpSecretProvider} that derives each enrolled user's secret from a master key as
+ * {@code HMAC-SHA256(master, userId)} truncated to 160 bits.
+ *
+ * <p>Every replica configured with the same master key derives the same secrets, so only the
+ * list of enrolled users has to be shared. The derived secret is what gets provisioned into
+ * the user's authenticator app at enrollment. Users missing from the {@link TotpEnrollments}
+ * get no secret, so no code is accepted for them. From generation 1 on, the generation is
+ * appended to the HMAC input after a {@code 0xFF} byte, which never occurs in UTF-8, so each
+ * rotation yields an unrelated secret that no other user's input can produce.
+ */
+public class DerivedTotpSecretProvider implements TotpSecretProvider {
+
+    private static final String DERIVATION_ALGORITHM = "HmacSHA256";
+    private static final int SECRET_BYTES = 20;
+
+    private final SecretKeySpec masterKey;
+    private final String totpAlgorithm;
+    private final TotpEnrollments enrollments;
+
+    /**
+     * @param masterSecret the master key, at least 32 bytes
+     * @param totpAlgorithm the HMAC algorithm the derived secrets are used with, e.g. HmacSHA1
+     * @param enrollments the users that provisioned an authenticator app
+     */
+    public DerivedTotpSecretProvider(byte[] masterSecret, String totpAlgorithm, TotpEnrollments enrollments) {
+        if (masterSecret.length < 32) {
+            throw new IllegalArgumentException("TOTP master secret must be at least 32 bytes");
+        }
+        this.masterKey = new SecretKeySpec(masterSecret, DERIVATION_ALGORITHM);
+        this.totpAlgorithm = totpAlgorithm;
+        this.enrollments = enrollments;
+    }
+
+    @Override
+    public SecretKeySpec secretFor(String userId) {
+        long generation = enrollments.generation(userId);
+        if (generation == TotpEnrollments.NOT_ENROLLED) {
+            return null;
+        }
+        try {
+            Mac mac = Mac.getInstance(DERIVATION_ALGORITHM);
+            mac.init(masterKey);
+            mac.update(userId.getBytes(StandardCharsets.UTF_8));
+            if (generation > 0) {
+                // Generation 0 keeps the secrets provisioned before rotation was supported
+                mac.update((byte) 0xFF);
+                mac.update(ByteBuffer.allocate(Long.BYTES).putLong(generation).array());
+            }
+            byte[] derived = mac.doFinal();
+            return new SecretKeySpec(Arrays.copyOf(derived, SECRET_BYTES), totpAlgorithm);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to derive TOTP secret", e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.mfacallbacks.totp;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TotpEnrollments} read from a text file written by the enrollment process, one
+ * {@code <userId> <generation>} pair per line; blank lines and lines starting with {@code #}
+ * are ignored.
+ *
+ * <p>The file is read whole into memory. Its modification time is checked at most once per
+ * {@code refreshMillis}, and the file is read again when it changed, so revocations and
+ * rotations apply without a restart. A file that fails to parse on reload is logged and the
+ * previous enrollments are kept.
+ */
+@Slf4j
+public class FileTotpEnrollments implements TotpEnrollments {
+
+    private final Path file;
+    private final long refreshNanos;
+
+    private volatile Map<String, Long> generations;
+    private volatile FileTime loadedModified;
+    private volatile long nextCheck;
+
+    /**
+     * @param file the enrollment file
+     * @param refreshMillis minimum interval between checks for changes
+     * @throws UncheckedIOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is malformed
+     */
+    public FileTotpEnrollments(Path file, long refreshMillis) {
+        this.file = file;
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshMillis);
+        try {
+            this.loadedModified = Files.getLastModifiedTime(file);
+            this.generations = parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read TOTP enrollments from " + file, e);
+        }
+        this.nextCheck = System.nanoTime() + refreshNanos;
+        log.info("Loaded {} TOTP enrollments from {}", generations.size(), file);
+    }
+
+    @Override
+    public long generation(String userId) {
+        if (System.nanoTime() - nextCheck >= 0) {
+            refresh();
+        }
+        return generations.getOrDefault(userId, NOT_ENROLLED);
+    }
+
+    /**
+     * @return the number of enrolled users
+     */
+    public int size() {
+        return generations.size();
+    }
+
+    private synchronized void refresh() {
+        if (System.nanoTime() - nextCheck < 0) {
+            return;
+        }
+        nextCheck = System.nanoTime() + refreshNanos;
+        try {
+            FileTime modified = Files.getLastModifiedTime(file);
+            if (modified.equals(loadedModified)) {
+                return;
+            }
+            generations = parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+            loadedModified = modified;
+            log.info("Reloaded {} TOTP enrollments from {}", generations.size(), file);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Failed to reload TOTP enrollments from {}, keeping the previous ones: {}", file, e.getMessage());
+        }
+    }
+
+    private static Map<String, Long> parse(List<String> lines) {
+        Map<String, Long> generations = new HashMap<>(Math.max(16, lines.size() * 4 / 3 + 1));
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            long generation;
+            try {
+                generation = fields.length == 2 ? Long.parseLong(fields[1]) : -1;
+            } catch (NumberFormatException e) {
+                generation = -1;
+            }
+            if (generation < 0) {
+                throw new IllegalArgumentException("Malformed TOTP enrollment on line " + (i + 1));
+            }
+            generations.put(fields[0], generation);
+        }
+        return generations;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.mfacallbacks.totp;
+
+/**
+ * Tells which users have provisioned an authenticator app, and which generation of their
+ * secret it holds.
+ *
+ * <p>Removing a user revokes their enrollment; bumping their generation rotates their
+ * secret, so a code from the previously provisioned app no longer verifies.
+ */
+public interface TotpEnrollments {
+
+    /** Generation of users that are not enrolled */
+    long NOT_ENROLLED = -1;
+
+    /**
+     * @param userId the JWT subject
+     * @return the generation of the user's secret, at least 0, or {@link #NOT_ENROLLED}
+     */
+    long generation(String userId);
+}
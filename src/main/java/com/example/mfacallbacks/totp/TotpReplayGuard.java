@@ -0,0 +1,121 @@
+package com.example.mfacallbacks.totp;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded record of the last accepted TOTP time step per user, used to reject a code that
+ * has already been used.
+ *
+ * <p>An entry only matters while its step is inside the verification window. Like
+ * {@link com.example.mfacallbacks.challenge.RotatingBloomFilter}, steps are recorded in a
+ * current generation and looked up in it and the previous one; once every step of the
+ * previous generation has left the window, it is dropped whole and the current one takes its
+ * place. Pruning is thus a reference swap, never a scan of the entries. When both generations
+ * together hold {@code maxEntries} users, the verification is rejected instead of dropping
+ * live entries, which would re-open replay.
+ */
+public class TotpReplayGuard {
+
+    /** Stands in for a dropped generation; never written to */
+    private static final Generation EMPTY = new Generation();
+
+    private final int maxEntries;
+
+    private volatile Generation current = new Generation();
+    private volatile Generation previous = EMPTY;
+
+    /**
+     * @param maxEntries the maximum number of users tracked at once
+     */
+    public TotpReplayGuard(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param userId the user ID
+     * @return the last accepted step, or {@link TotpVerifier#NO_MATCH}
+     */
+    public long lastUsedStep(String userId) {
+        Generation older = previous;
+        return Math.max(current.lastUsedStep(userId), older.lastUsedStep(userId));
+    }
+
+    /**
+     * Atomically records {@code step} as used unless an equal or later step was recorded.
+     *
+     * @param userId the user ID
+     * @param step the accepted step
+     * @param oldestLiveStep the oldest step still inside the verification window
+     * @return true if the step was recorded, false if it is a replay
+     * @throws CapacityExceededException if too many users have used codes within the window
+     */
+    public boolean markUsed(String userId, long step, long oldestLiveStep) {
+        rotateIfDue(oldestLiveStep);
+        Generation older = previous;
+        Generation generation = current;
+        long earlier = older.lastUsedStep(userId);
+        if (earlier >= step) {
+            return false;
+        }
+        // A user already tracked may move to the current generation, at most once per rotation
+        if (earlier == TotpVerifier.NO_MATCH && generation.steps.size() + older.steps.size() >= maxEntries
+                && !generation.steps.containsKey(userId)) {
+            throw new CapacityExceededException("Too many TOTP verifications, please retry later");
+        }
+        boolean[] recorded = {false};
+        generation.steps.compute(userId, (key, used) -> {
+            if (used != null && used >= step) {
+                return used;
+            }
+            recorded[0] = true;
+            return step;
+        });
+        if (recorded[0]) {
+            generation.maxStep.accumulateAndGet(step, Math::max);
+        }
+        return recorded[0];
+    }
+
+    /**
+     * @return the number of tracked users, counted once per generation they appear in
+     */
+    public int size() {
+        Generation older = previous;
+        return current.steps.size() + older.steps.size();
+    }
+
+    private void rotateIfDue(long oldestLiveStep) {
+        while (previous.maxStep.get() < oldestLiveStep && (previous != EMPTY || current.isWritten())) {
+            synchronized (this) {
+                if (previous.maxStep.get() >= oldestLiveStep) {
+                    return;
+                }
+                // Every step of the previous generation left the window: drop it whole
+                if (!current.isWritten()) {
+                    previous = EMPTY;
+                    return;
+                }
+                previous = current;
+                current = new Generation();
+            }
+        }
+    }
+
+    private static final class Generation {
+        final ConcurrentMap<String, Long> steps = new ConcurrentHashMap<>();
+        /** Latest step recorded here, {@link Long#MIN_VALUE} while empty */
+        final AtomicLong maxStep = new AtomicLong(Long.MIN_VALUE);
+
+        long lastUsedStep(String userId) {
+            return steps.getOrDefault(userId, TotpVerifier.NO_MATCH);
+        }
+
+        boolean isWritten() {
+            return maxStep.get() != Long.MIN_VALUE;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.mfacallbacks.totp;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of user TOTP secrets that evicts the least recently used one when full.
+ *
+ * <p>Entries are spread over up to 16 segments by user ID, each an access-ordered
+ * {@link LinkedHashMap} guarded by its own lock, so eviction is least recently used within a
+ * segment. An entry is only served for {@code ttlSeconds} after it was loaded, after which
+ * the provider is consulted again, so revoking or rotating a user's secret takes effect
+ * within that time.
+ */
+public class TotpSecretCache {
+
+    private static final int MAX_SEGMENTS = 16;
+    /** Smallest segment worth splitting for, so small caches stay exactly LRU */
+    private static final int MIN_SEGMENT_ENTRIES = 64;
+
+    private final Segment[] segments;
+    private final long ttlSeconds;
+
+    /**
+     * @param maxEntries the maximum number of cached secrets
+     * @param ttlSeconds how long a cached secret is served after it was loaded
+     */
+    public TotpSecretCache(int maxEntries, long ttlSeconds) {
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maxEntries / MIN_SEGMENT_ENTRIES)));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(Math.max(1, (maxEntries + count - 1) / count));
+        }
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    /**
+     * @param userId the user ID
+     * @param now current time in seconds since epoch
+     * @return the cached secret, or {@code null} if absent or loaded too long ago
+     */
+    public SecretKeySpec get(String userId, long now) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            Cached cached = segment.get(userId);
+            if (cached == null) {
+                return null;
+            }
+            if (now - cached.loadedAt() >= ttlSeconds) {
+                segment.remove(userId);
+                return null;
+            }
+            return cached.secret();
+        }
+    }
+
+    /**
+     * Caches a secret, evicting the least recently used one of its segment if full.
+     *
+     * @param userId the user ID
+     * @param secret the user's secret
+     * @param now current time in seconds since epoch
+     */
+    public void put(String userId, SecretKeySpec secret, long now) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            segment.put(userId, new Cached(secret, now));
+        }
+    }
+
+    /**
+     * @return the number of cached secrets, expired ones included
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(String userId) {
+        int h = userId.hashCode();
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    private record Cached(SecretKeySpec secret, long loadedAt) {
+    }
+
+    private static final class Segment extends LinkedHashMap<String, Cached> {
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.mfacallbacks.totp;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Supplies the shared TOTP secret of a user enrolled with an authenticator app.
+ *
+ * <p>Implementations may be backed by an enrollment database; secrets are cached by
+ * {@link com.example.mfacallbacks.service.TotpService} for {@code app.otp.totp.secret-cache-seconds},
+ * so lookups need not be cheap. Users without a secret are rejected and not cached.
+ */
+public interface TotpSecretProvider {
+
+    /**
+     * @param userId the JWT subject
+     * @return the user's HMAC key, or {@code null} if the user is not enrolled
+     */
+    SecretKeySpec secretFor(String userId);
+}
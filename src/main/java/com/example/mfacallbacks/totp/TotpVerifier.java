@@ -0,0 +1,114 @@
+package com.example.mfacallbacks.totp;
+
+import javax.crypto.Mac;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Stateless RFC 6238 TOTP (and RFC 4226 HOTP) code computation and verification.
+ *
+ * <p>A code is accepted if it matches any time step within {@code window} steps of the
+ * current one. All candidate steps are computed on every call so the running time does not
+ * reveal which step matched. {@link Mac} instances are not thread-safe and are kept per thread.
+ */
+public class TotpVerifier {
+
+    /** Returned by {@link #verify} when no step in the window matches */
+    public static final long NO_MATCH = -1;
+
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000};
+
+    private final int digits;
+    private final long stepSeconds;
+    private final int window;
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * @param algorithm the HMAC algorithm, e.g. HmacSHA1 (the authenticator app default)
+     * @param digits the code length, 6 to 8
+     * @param stepSeconds the time step length, usually 30
+     * @param window the number of steps accepted before and after the current one
+     */
+    public TotpVerifier(String algorithm, int digits, long stepSeconds, int window) {
+        if (digits < 6 || digits > 8) {
+            throw new IllegalArgumentException("TOTP codes must have 6 to 8 digits");
+        }
+        try {
+            Mac.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported TOTP algorithm: " + algorithm, e);
+        }
+        this.digits = digits;
+        this.stepSeconds = stepSeconds;
+        this.window = window;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                return Mac.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * Verifies a code against every step in the window that is newer than {@code lastUsedStep}.
+     *
+     * @param key the user's secret
+     * @param code the code supplied by the user
+     * @param now current time in seconds since epoch
+     * @param lastUsedStep the last step accepted for this user, or {@link #NO_MATCH}
+     * @return the matching time step, or {@link #NO_MATCH}
+     */
+    public long verify(Key key, int code, long now, long lastUsedStep) {
+        long current = now / stepSeconds;
+        long matched = NO_MATCH;
+        for (long step = current - window; step <= current + window; step++) {
+            boolean matches = (hotp(key, step) ^ code) == 0;
+            if (matches && step > lastUsedStep && matched == NO_MATCH) {
+                matched = step;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Computes the RFC 4226 HOTP value for a counter; TOTP uses the time step as counter.
+     *
+     * @param key the user's secret
+     * @param counter the moving factor
+     * @return the code as a number with {@code digits} digits
+     */
+    public int hotp(Key key, long counter) {
+        Mac mac = macs.get();
+        try {
+            mac.init(key);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Invalid TOTP key", e);
+        }
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            mac.update((byte) (counter >>> shift));
+        }
+        byte[] hash = mac.doFinal();
+        int offset = hash[hash.length - 1] & 0x0F;
+        int binary = ((hash[offset] & 0x7F) << 24)
+                | ((hash[offset + 1] & 0xFF) << 16)
+                | ((hash[offset + 2] & 0xFF) << 8)
+                | (hash[offset + 3] & 0xFF);
+        return binary % POWERS_OF_TEN[digits];
+    }
+
+    /**
+     * @return the length of a time step in seconds
+     */
+    public long stepSeconds() {
+        return stepSeconds;
+    }
+
+    /**
+     * @return the number of steps accepted on either side of the current one
+     */
+    public int window() {
+        return window;
+    }
+}
@@ -1,7 +1,10 @@
 package com.example.mfacallbacks;
 
+import com.example.mfacallbacks.random.StripedSecureRandomCodeSource;
+import com.example.mfacallbacks.service.ManualOtpClock;
 import com.example.mfacallbacks.service.OtpService;
 import com.example.mfacallbacks.service.SmsService;
+import com.example.mfacallbacks.store.InMemoryOtpStore;
 import org.mockito.Mockito;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
@@ -15,7 +18,9 @@ public class TestConfig {
     @Bean
     @Primary
     public OtpService otpService() {
-        return new OtpService();
+        return new OtpService(new InMemoryOtpStore(),
+                new StripedSecureRandomCodeSource(StripedSecureRandomCodeSource.DEFAULT_ALGORITHM, 1, 0),
+                new ManualOtpClock(System.currentTimeMillis() / 1000));
     }
 
     @Bean
@@ -23,7 +28,8 @@ public class TestConfig {
     public SmsService smsService() {
         SmsService smsService = mock(SmsService.class);
         // Configure mock behavior here if needed
-        Mockito.doNothing().when(smsService).sendOtp(Mockito.anyString(), Mockito.anyString());
+        Mockito.doNothing().when(smsService)
+                .sendOtp(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.nullable(String.class));
         return smsService;
     }
 }
@@ -0,0 +1,97 @@
+package com.example.mfacallbacks.benchmark;
+
+import com.example.mfacallbacks.store.GenerationalOtpStore;
+import com.example.mfacallbacks.store.InMemoryOtpStore;
+import com.example.mfacallbacks.store.OtpConsumeResult;
+import com.example.mfacallbacks.store.OtpStore;
+import com.example.mfacallbacks.store.PackedOtp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request latency while the store is being cleaned up: the per-entry timing wheel behind
+ * {@code clearExpiredOtps} against dropping whole generations.
+ *
+ * <p>One thread plays the cleanup job, advancing virtual time by a second per call, expiring
+ * what became due and issuing a second's worth of new OTPs so the store stays at
+ * {@code entries}. The other threads verify codes meanwhile. Sample mode reports the p99 of
+ * both; add {@code -prof gc} to compare allocation and GC time per cleanup:
+ * <pre>
+ * java -cp "..." org.openjdk.jmh.Main OtpCleanupLatencyBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class OtpCleanupLatencyBenchmark {
+
+    private static final int TTL_SECONDS = 300;
+    private static final int DIGITS = PackedOtp.encodeDigits("123456");
+    private static final int WRONG_DIGITS = PackedOtp.encodeDigits("654321");
+
+    @Param({InMemoryOtpStore.TYPE, GenerationalOtpStore.TYPE})
+    private String store;
+
+    @Param({"1000000"})
+    private int entries;
+
+    private OtpStore otpStore;
+    private String[] userIds;
+    private volatile long now;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        otpStore = switch (store) {
+            case InMemoryOtpStore.TYPE -> new InMemoryOtpStore(TTL_SECONDS + 1);
+            case GenerationalOtpStore.TYPE -> new GenerationalOtpStore(TTL_SECONDS, TTL_SECONDS);
+            default -> throw new IllegalArgumentException(store);
+        };
+        userIds = new String[entries];
+        now = 1_700_000_000L;
+        for (int i = 0; i < entries; i++) {
+            userIds[i] = "user-" + i;
+            otpStore.put(userIds[i], PackedOtp.pack(DIGITS, now + 1 + (long) i * TTL_SECONDS / entries));
+        }
+    }
+
+    @Benchmark
+    @Group("cleanup")
+    @GroupThreads(1)
+    public int clearExpired() {
+        long currentTime = ++now;
+        int removed = otpStore.expire(currentTime);
+        // Steady arrivals: one second's worth of new challenges per virtual second
+        for (int i = 0; i < entries / TTL_SECONDS; i++) {
+            otpStore.put(userIds[cursor], PackedOtp.pack(DIGITS, currentTime + TTL_SECONDS));
+            cursor = (cursor + 1) % entries;
+        }
+        return removed;
+    }
+
+    @Benchmark
+    @Group("cleanup")
+    @GroupThreads(3)
+    public OtpConsumeResult verify() {
+        String userId = userIds[ThreadLocalRandom.current().nextInt(entries)];
+        return otpStore.consume(userId, WRONG_DIGITS, now);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.mfacallbacks.benchmark;
+
+import com.example.mfacallbacks.store.InMemoryOtpStore;
+import com.example.mfacallbacks.store.PackedOtp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares one cleanup pass of the timing-wheel {@link InMemoryOtpStore} with the former
+ * full-map {@code removeIf} sweep.
+ *
+ * <p>The store is filled with {@code entries} OTPs whose deadlines are spread evenly over the
+ * TTL. Each invocation advances time by one second, expires what became due and re-issues
+ * the same number of OTPs, so the store stays in steady state.
+ *
+ * <p>Run with:
+ * <pre>
+ * mvn test-compile
+ * java -Xmx16g -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *     org.openjdk.jmh.Main OtpExpiryBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+public class OtpExpiryBenchmark {
+
+    private static final int TTL_SECONDS = 300;
+    private static final int DIGITS = PackedOtp.encodeDigits("123456");
+
+    @Param({"1000000", "10000000"})
+    private int entries;
+
+    private InMemoryOtpStore wheelStore;
+    private Map<String, Long> sweepStore;
+    private String[] userIds;
+    private long now;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        userIds = new String[entries];
+        wheelStore = new InMemoryOtpStore(TTL_SECONDS + 1);
+        sweepStore = new ConcurrentHashMap<>(entries * 2);
+        now = 1_700_000_000L;
+        for (int i = 0; i < entries; i++) {
+            userIds[i] = "user-" + i;
+            long expiry = now + 1 + (long) i * TTL_SECONDS / entries;
+            wheelStore.put(userIds[i], PackedOtp.pack(DIGITS, expiry));
+            sweepStore.put(userIds[i], expiry);
+        }
+        wheelStore.expire(now);
+    }
+
+    @Benchmark
+    public int timingWheel() {
+        now++;
+        int removed = wheelStore.expire(now);
+        for (int i = 0; i < removed; i++) {
+            wheelStore.put(nextUserId(), PackedOtp.pack(DIGITS, now + TTL_SECONDS));
+        }
+        return removed;
+    }
+
+    @Benchmark
+    public int fullSweep() {
+        now++;
+        long currentTime = now;
+        int before = sweepStore.size();
+        sweepStore.entrySet().removeIf(entry -> entry.getValue() <= currentTime);
+        int removed = before - sweepStore.size();
+        for (int i = 0; i < removed; i++) {
+            sweepStore.put(nextUserId(), now + TTL_SECONDS);
+        }
+        return removed;
+    }
+
+    private String nextUserId() {
+        String userId = userIds[cursor];
+        cursor = (cursor + 1) % userIds.length;
+        return userId;
+    }
+}
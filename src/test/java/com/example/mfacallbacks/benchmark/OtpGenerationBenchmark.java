@@ -0,0 +1,82 @@
+package com.example.mfacallbacks.benchmark;
+
+import com.example.mfacallbacks.random.StripedSecureRandomCodeSource;
+import com.example.mfacallbacks.service.ManualOtpClock;
+import com.example.mfacallbacks.service.OtpService;
+import com.example.mfacallbacks.store.InMemoryOtpStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generate-then-validate round trip through {@link OtpService}, compared with the former
+ * {@code StringBuilder} / {@code String.equals} implementation kept here as a baseline.
+ *
+ * <p>Run with {@code -prof gc} to see bytes allocated per operation:
+ * <pre>
+ * java -cp "..." org.openjdk.jmh.Main OtpGenerationBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OtpGenerationBenchmark {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final String userId = "auth0|benchmark-user";
+
+    private OtpService otpService;
+    private Map<String, LegacyOtpData> legacyStore;
+
+    @Setup
+    public void setUp() {
+        otpService = new OtpService(new InMemoryOtpStore(),
+                new StripedSecureRandomCodeSource(StripedSecureRandomCodeSource.DEFAULT_ALGORITHM, 1, 0),
+                new ManualOtpClock(1_700_000_000L));
+        otpService.init();
+        legacyStore = new ConcurrentHashMap<>();
+    }
+
+    @Benchmark
+    public boolean packed() {
+        String otp = otpService.generateOtp(userId);
+        return otpService.validateOtp(userId, otp);
+    }
+
+    @Benchmark
+    public boolean legacy() {
+        StringBuilder otp = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            otp.append(RANDOM.nextInt(10));
+        }
+        String otpString = otp.toString();
+        legacyStore.put(userId, new LegacyOtpData(otpString, Instant.now().plusSeconds(300).getEpochSecond()));
+
+        LegacyOtpData otpData = legacyStore.get(userId);
+        boolean valid = otpString.equals(otpData.otp) && otpData.expiryTime > Instant.now().getEpochSecond();
+        if (valid) {
+            legacyStore.remove(userId);
+        }
+        return valid;
+    }
+
+    private record LegacyOtpData(String otp, long expiryTime) {
+    }
+}
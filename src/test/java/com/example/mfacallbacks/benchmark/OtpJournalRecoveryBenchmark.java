@@ -0,0 +1,92 @@
+package com.example.mfacallbacks.benchmark;
+
+import com.example.mfacallbacks.store.InMemoryOtpStore;
+import com.example.mfacallbacks.store.JournaledOtpStore;
+import com.example.mfacallbacks.store.PackedOtp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures how long {@link JournaledOtpStore#open} takes to restore {@code entries} pending
+ * OTPs after a restart: replaying the segments, loading the delegate store and queueing the
+ * compacted snapshot.
+ *
+ * <p>The journal is written once per trial. Every invocation opens and closes it, which
+ * rewrites it as a single snapshot segment holding the same entries, so each invocation
+ * replays the same amount of data.
+ *
+ * <p>Run with:
+ * <pre>
+ * mvn test-compile
+ * java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *     org.openjdk.jmh.Main OtpJournalRecoveryBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class OtpJournalRecoveryBenchmark {
+
+    private static final int SEGMENT_BYTES = 64 << 20;
+    private static final int DIGITS = PackedOtp.encodeDigits("123456");
+
+    @Param({"100000", "1000000"})
+    private int entries;
+
+    private Path directory;
+    private long now;
+    private JournaledOtpStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("otp-journal-bench");
+        now = System.currentTimeMillis() / 1000;
+        JournaledOtpStore writer = JournaledOtpStore.open(new InMemoryOtpStore(), directory, SEGMENT_BYTES, 10, now);
+        for (int i = 0; i < entries; i++) {
+            writer.put("user-" + i, PackedOtp.pack(DIGITS, now + 3_600));
+        }
+        writer.close();
+    }
+
+    @Benchmark
+    public long recover() {
+        store = JournaledOtpStore.open(new InMemoryOtpStore(), directory, SEGMENT_BYTES, 10, now);
+        return store.size();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeStore() {
+        // Closing flushes the snapshot and deletes the replayed segments
+        store.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
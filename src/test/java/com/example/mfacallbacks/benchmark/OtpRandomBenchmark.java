@@ -0,0 +1,73 @@
+package com.example.mfacallbacks.benchmark;
+
+import com.example.mfacallbacks.random.OtpCodeSource;
+import com.example.mfacallbacks.random.PooledOtpCodeSource;
+import com.example.mfacallbacks.random.StripedSecureRandomCodeSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OTP code generation throughput for a single shared {@link SecureRandom} (the former
+ * implementation), striped generators and the pre-generated pool.
+ *
+ * <p>Thread count is set on the command line; run once per count to get the scaling curve:
+ * <pre>
+ * for t in 1 2 4 8 16 32 64; do
+ *   java -cp "..." org.openjdk.jmh.Main OtpRandomBenchmark -t $t
+ * done
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OtpRandomBenchmark {
+
+    private static final int BOUND = 1_000_000;
+
+    @Param({"shared", "striped", "pooled"})
+    private String source;
+
+    private OtpCodeSource codeSource;
+
+    @Setup
+    public void setUp() {
+        codeSource = switch (source) {
+            case "shared" -> {
+                SecureRandom shared = new SecureRandom();
+                yield shared::nextInt;
+            }
+            case "striped" -> new StripedSecureRandomCodeSource(StripedSecureRandomCodeSource.DEFAULT_ALGORITHM, 0, 0);
+            case "pooled" -> new PooledOtpCodeSource(
+                    new StripedSecureRandomCodeSource(StripedSecureRandomCodeSource.DEFAULT_ALGORITHM, 0, 0), 1 << 16);
+            default -> throw new IllegalArgumentException(source);
+        };
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (codeSource instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Benchmark
+    public int nextCode() {
+        return codeSource.nextCode(BOUND);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.mfacallbacks.benchmark;
+
+import com.example.mfacallbacks.store.GenerationalOtpStore;
+import com.example.mfacallbacks.store.InMemoryOtpStore;
+import com.example.mfacallbacks.store.OffHeapOtpStore;
+import com.example.mfacallbacks.store.OtpStore;
+import com.example.mfacallbacks.store.PackedOtp;
+import com.example.mfacallbacks.store.PrimitiveOtpStore;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.function.LongFunction;
+
+/**
+ * Measures the memory footprint of each {@link OtpStore} implementation.
+ *
+ * <p>For every store and size the harness fills a fresh store, then reports retained heap
+ * bytes per entry (from heap usage and from a JOL walk of the object graph), reserved direct
+ * memory and the time of a full collection with the store alive. This is a plain {@code main} rather than a JMH benchmark because the quantities of
+ * interest are retained sizes, not operation throughput.
+ *
+ * <p>Run with:
+ * <pre>
+ * java -Xmx16g -Djdk.attach.allowAttachSelf -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *     com.example.mfacallbacks.benchmark.OtpStoreFootprint 100000 1000000 10000000
+ * </pre>
+ */
+public class OtpStoreFootprint {
+
+    public static void main(String[] args) {
+        long[] sizes = args.length == 0
+                ? new long[]{100_000, 1_000_000}
+                : java.util.Arrays.stream(args).mapToLong(Long::parseLong).toArray();
+        for (long size : sizes) {
+            measure(InMemoryOtpStore.TYPE, size, capacity -> new InMemoryOtpStore());
+            measure(GenerationalOtpStore.TYPE, size, capacity -> new GenerationalOtpStore(300, 300));
+            measure(PrimitiveOtpStore.TYPE, size, capacity -> new PrimitiveOtpStore());
+            measure(OffHeapOtpStore.TYPE, size, OffHeapOtpStore::new);
+        }
+    }
+
+    private static void measure(String type, long entries, LongFunction<OtpStore> factory) {
+        long heapBefore = usedHeapAfterGc();
+        long directBefore = directMemory();
+
+        OtpStore store = factory.apply(entries);
+        long expiry = System.currentTimeMillis() / 1000 + 3600;
+        for (long i = 0; i < entries; i++) {
+            store.put("auth0|user-" + i, PackedOtp.pack(PackedOtp.encodeCode((int) (i % 1_000_000), 6), expiry));
+        }
+
+        long heapAfter = usedHeapAfterGc();
+        long gcStart = totalGcMillis();
+        long wallStart = System.nanoTime();
+        System.gc();
+        long fullGcMillis = (System.nanoTime() - wallStart) / 1_000_000;
+        long directAfter = directMemory();
+        // Exact retained size of the store's object graph, independent of collector slack
+        long graphBytes = GraphLayout.parseInstance(store).totalSize();
+
+        System.out.printf("%-12s entries=%,12d heap/entry=%6.1f B jol/entry=%6.1f B direct=%,14d B full-gc=%5d ms (collector %d ms) size=%d%n",
+                type, entries, (heapAfter - heapBefore) / (double) entries, graphBytes / (double) entries,
+                directAfter - directBefore, fullGcMillis, totalGcMillis() - gcStart, store.size());
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long directMemory() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> "direct".equals(pool.getName()))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+    }
+
+    private static long totalGcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .sum();
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.mfacallbacks.benchmark;
+
+import com.example.mfacallbacks.store.InMemoryOtpStore;
+import com.example.mfacallbacks.store.OffHeapOtpStore;
+import com.example.mfacallbacks.store.OtpConsumeResult;
+import com.example.mfacallbacks.store.OtpStore;
+import com.example.mfacallbacks.store.PackedOtp;
+import com.example.mfacallbacks.store.PrimitiveOtpStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Put and verify throughput of the map-based store against the primitive open-addressing
+ * stores, with {@code entries} challenges pending so lookups miss the CPU caches as they would
+ * under load. Bytes per entry for the same sizes come from {@link OtpStoreFootprint}.
+ *
+ * <pre>
+ * java -cp "..." org.openjdk.jmh.Main OtpStoreThroughputBenchmark -t 4
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+public class OtpStoreThroughputBenchmark {
+
+    private static final long EXPIRY = 4_000_000_000L;
+    private static final long NOW = 1_700_000_000L;
+    private static final int DIGITS = PackedOtp.encodeDigits("123456");
+    private static final int WRONG_DIGITS = PackedOtp.encodeDigits("654321");
+
+    @Param({InMemoryOtpStore.TYPE, PrimitiveOtpStore.TYPE, OffHeapOtpStore.TYPE})
+    private String store;
+
+    @Param({"100000", "1000000", "10000000"})
+    private int entries;
+
+    private OtpStore otpStore;
+    private String[] userIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        otpStore = switch (store) {
+            case InMemoryOtpStore.TYPE -> new InMemoryOtpStore();
+            case PrimitiveOtpStore.TYPE -> new PrimitiveOtpStore();
+            case OffHeapOtpStore.TYPE -> new OffHeapOtpStore(entries * 2L);
+            default -> throw new IllegalArgumentException(store);
+        };
+        userIds = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            userIds[i] = "auth0|user-" + i;
+            otpStore.put(userIds[i], PackedOtp.pack(DIGITS, EXPIRY));
+        }
+    }
+
+    @Benchmark
+    public void put() {
+        otpStore.put(randomUserId(), PackedOtp.pack(DIGITS, EXPIRY));
+    }
+
+    @Benchmark
+    public OtpConsumeResult verifyMismatch() {
+        return otpStore.consume(randomUserId(), WRONG_DIGITS, NOW);
+    }
+
+    private String randomUserId() {
+        return userIds[ThreadLocalRandom.current().nextInt(entries)];
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.mfacallbacks.benchmark;
+
+import com.example.mfacallbacks.sms.NullSmsGateway;
+import com.example.mfacallbacks.sms.SmsDispatchExecutor;
+import com.example.mfacallbacks.sms.SmsGateway;
+import com.example.mfacallbacks.sms.SmsMessage;
+import com.example.mfacallbacks.sms.StubSmsGateway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end SMS dispatch throughput without network: batches of sends through the
+ * {@link SmsDispatchExecutor} into the null sink, which measures the dispatch overhead alone,
+ * or into the stub provider with 20 ms latency, where throughput is bounded by
+ * {@code maxConcurrency / latency} as it would be against a real provider.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SmsDispatchBenchmark {
+
+    private static final int BATCH = 1_000;
+    private static final SmsMessage MESSAGE =
+            new SmsMessage("+15550000001", "+15550000000", "Your verification code is: 123456. Valid for 5 minutes.");
+
+    @Param({NullSmsGateway.TYPE, StubSmsGateway.TYPE})
+    private String gatewayType;
+
+    @Param({"32", "256"})
+    private int maxConcurrency;
+
+    private SmsGateway gateway;
+    private SmsDispatchExecutor executor;
+
+    @Setup
+    public void setUp() {
+        gateway = NullSmsGateway.TYPE.equals(gatewayType) ? new NullSmsGateway() : new StubSmsGateway(20, 0, 0);
+        executor = new SmsDispatchExecutor(maxConcurrency, BATCH, 10_000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void dispatchBatch() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            executor.execute(() -> {
+                try {
+                    gateway.send(MESSAGE);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.mfacallbacks.benchmark;
+
+import com.example.mfacallbacks.sms.HedgedSmsGateway;
+import com.example.mfacallbacks.sms.SmsGateway;
+import com.example.mfacallbacks.sms.SmsMessage;
+import com.example.mfacallbacks.sms.StubSmsGateway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Send latency percentiles with and without hedging, against an in-process primary that
+ * accepts in 20 ms except for 2% of sends stalling for a second, like an occasionally slow
+ * provider, and a secondary accepting in 30 ms. Hedged, the p99 should drop from about a
+ * second to the hedge delay plus 30 ms, with about 2% of sends hedged.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(16)
+@Fork(1)
+public class SmsHedgeBenchmark {
+
+    private static final SmsMessage MESSAGE =
+            new SmsMessage("+15550000001", "+15550000000", "Your verification code is: 123456. Valid for 5 minutes.");
+
+    @Param({"false", "true"})
+    private boolean hedged;
+
+    private SmsGateway gateway;
+
+    @Setup
+    public void setUp() {
+        SmsGateway fast = new StubSmsGateway(20, 0, 0);
+        SmsGateway stalled = new StubSmsGateway(1_000, 0, 0);
+        SmsGateway primary = message -> ThreadLocalRandom.current().nextInt(100) < 2 ? stalled.send(message) : fast.send(message);
+        gateway = hedged ? new HedgedSmsGateway(primary, new StubSmsGateway(30, 0, 0), 95, 25, 1_000, 5) : primary;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (gateway instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Benchmark
+    public String send() {
+        return gateway.send(MESSAGE);
+    }
+}
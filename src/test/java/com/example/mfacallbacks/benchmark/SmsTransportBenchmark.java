@@ -0,0 +1,103 @@
+package com.example.mfacallbacks.benchmark;
+
+import com.example.mfacallbacks.sms.HttpSmsGateway;
+import com.example.mfacallbacks.sms.SmsMessage;
+import com.example.mfacallbacks.sms.StubSmsServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link HttpSmsGateway} against a local {@link StubSmsServer} answering after
+ * 20 ms, with {@code inFlight} sends outstanding at any time.
+ *
+ * <p>{@code async} completes a future per message on the gateway's two callback threads;
+ * {@code blocking} waits for each answer on a platform thread, one per send in flight, as
+ * the Twilio SDK does. On loopback both end up bounded by the stub server; the point of
+ * comparison is that the blocking variant needs {@code inFlight} threads to get there.
+ *
+ * <p>The JDK stub server only speaks HTTP/1.1, so this measures the client's connection pool
+ * rather than HTTP/2 multiplexing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SmsTransportBenchmark {
+
+    private static final int BATCH = 2_000;
+    private static final SmsMessage MESSAGE =
+            new SmsMessage("+15550000001", "+15550000000", "Your verification code is: 123456. Valid for 5 minutes.");
+
+    @Param({"async", "blocking"})
+    private String transport;
+
+    @Param({"64", "1024"})
+    private int inFlight;
+
+    private StubSmsServer server;
+    private HttpSmsGateway gateway;
+    private ExecutorService blockingThreads;
+    private Semaphore slots;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new StubSmsServer(20, 0);
+        gateway = new HttpSmsGateway(server.baseUri(), "AC0000", "token",
+                Duration.ofSeconds(2), Duration.ofSeconds(30), 2);
+        blockingThreads = Executors.newFixedThreadPool(inFlight);
+        slots = new Semaphore(inFlight);
+    }
+
+    @TearDown
+    public void tearDown() {
+        blockingThreads.shutdownNow();
+        gateway.close();
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void sendBatch() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            slots.acquire();
+            if ("async".equals(transport)) {
+                gateway.sendAsync(MESSAGE).whenComplete((messageId, failure) -> {
+                    slots.release();
+                    done.countDown();
+                });
+            } else {
+                blockingThreads.execute(() -> {
+                    try {
+                        gateway.send(MESSAGE);
+                    } finally {
+                        slots.release();
+                        done.countDown();
+                    }
+                });
+            }
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.mfacallbacks.benchmark;
+
+import com.example.mfacallbacks.totp.DerivedTotpSecretProvider;
+import com.example.mfacallbacks.totp.TotpVerifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TOTP verification throughput: one HMAC per step in the window, so the cost grows with
+ * {@code window} while no per-challenge state is touched. {@code derive} adds the per-user
+ * secret derivation that the secret cache normally avoids.
+ *
+ * <p>Run with {@code -t} to see how HMAC throughput scales across cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TotpVerificationBenchmark {
+
+    @Param({"HmacSHA1", "HmacSHA256"})
+    private String algorithm;
+
+    @Param({"0", "1", "2"})
+    private int window;
+
+    private TotpVerifier verifier;
+    private DerivedTotpSecretProvider secretProvider;
+    private SecretKeySpec secret;
+    private long now;
+    private int code;
+
+    @Setup
+    public void setUp() {
+        verifier = new TotpVerifier(algorithm, 6, 30, window);
+        secretProvider = new DerivedTotpSecretProvider(new byte[32], algorithm, userId -> 0);
+        secret = secretProvider.secretFor("benchmark-user");
+        now = 1_700_000_000L;
+        code = verifier.hotp(secret, now / 30);
+    }
+
+    @Benchmark
+    public long verify() {
+        return verifier.verify(secret, code, now, TotpVerifier.NO_MATCH);
+    }
+
+    @Benchmark
+    public long deriveAndVerify() {
+        return verifier.verify(secretProvider.secretFor("benchmark-user"), code, now, TotpVerifier.NO_MATCH);
+    }
+}
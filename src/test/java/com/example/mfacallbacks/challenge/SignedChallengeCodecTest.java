@@ -0,0 +1,59 @@
+package com.example.mfacallbacks.challenge;
+
+import com.example.mfacallbacks.store.PackedOtp;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignedChallengeCodecTest {
+
+    private final SignedChallengeCodec codec = new SignedChallengeCodec(new byte[32]);
+
+    @Test
+    void verify_WithMatchingUserAndCode_ShouldReturnChallenge() {
+        int digits = PackedOtp.encodeDigits("012345");
+        String token = codec.issue("user", digits, 4_000_000_000L);
+
+        SignedChallengeCodec.SignedChallenge challenge = codec.verify(token, "user", digits);
+
+        assertNotNull(challenge);
+        assertEquals(4_000_000_000L, challenge.expiryTime());
+    }
+
+    @Test
+    void verify_WithWrongCodeUserOrTamperedToken_ShouldReturnNull() {
+        int digits = PackedOtp.encodeDigits("012345");
+        String token = codec.issue("user", digits, 1_000L);
+        char[] tampered = token.toCharArray();
+        tampered[5] = tampered[5] == 'A' ? 'B' : 'A';
+
+        assertNull(codec.verify(token, "user", PackedOtp.encodeDigits("12345")));
+        assertNull(codec.verify(token, "other", digits));
+        assertNull(codec.verify(new String(tampered), "user", digits));
+        assertNull(codec.verify("not a token", "user", digits));
+    }
+
+    @Test
+    void rotatingBloomFilter_ShouldRejectRepeatsUntilTwoRotationsPass() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1_000, 1e-6, 300, 0);
+
+        assertTrue(filter.add(1, 2, 0));
+        assertFalse(filter.add(1, 2, 299));
+        assertFalse(filter.add(1, 2, 300));
+        assertTrue(filter.add(3, 4, 300));
+        assertTrue(filter.add(1, 2, 600));
+    }
+
+    @Test
+    void rotatingAttemptCounter_ShouldKeepCountsOfOneIdApartPerUser() {
+        RotatingAttemptCounter counter = new RotatingAttemptCounter(1 << 20, 300, 0);
+
+        for (int i = 0; i < 5; i++) {
+            counter.recordFailure("attacker", 42, 0);
+        }
+
+        assertEquals(5, counter.failures("attacker", 42, 0));
+        assertEquals(0, counter.failures("victim", 42, 0));
+        assertEquals(5, counter.failures("attacker", 42, 299));
+    }
+}
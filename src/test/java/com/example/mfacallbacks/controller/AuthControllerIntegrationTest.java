@@ -1,10 +1,15 @@
 package com.example.mfacallbacks.controller;
 
+import com.example.mfacallbacks.config.OtpConfig;
 import com.example.mfacallbacks.config.TestSecurityConfig;
 import com.example.mfacallbacks.dto.AuthRequest;
 import com.example.mfacallbacks.dto.OtpVerificationRequest;
+import com.example.mfacallbacks.exception.CapacityExceededException;
+import com.example.mfacallbacks.exception.SmsUnavailableException;
 import com.example.mfacallbacks.service.OtpService;
+import com.example.mfacallbacks.service.SignedOtpService;
 import com.example.mfacallbacks.service.SmsService;
+import com.example.mfacallbacks.service.TotpService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,7 +21,10 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import static org.hamcrest.Matchers.containsString;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.*;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -24,7 +32,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 @WebMvcTest(AuthController.class)
 @ActiveProfiles("test")
-@Import(TestSecurityConfig.class)
+@Import({TestSecurityConfig.class, OtpConfig.class})
 class AuthControllerIntegrationTest {
 
     @Autowired
@@ -39,6 +47,12 @@ class AuthControllerIntegrationTest {
     @SpyBean
     private SmsService smsService;
 
+    @SpyBean
+    private TotpService totpService;
+
+    @SpyBean
+    private SignedOtpService signedOtpService;
+
     @BeforeEach
     void setUp() {
         // Reset mocks before each test
@@ -51,8 +65,9 @@ class AuthControllerIntegrationTest {
         AuthRequest request = new AuthRequest();
         request.setPhoneNumber("+1234567890");
         
-        when(otpService.generateOtp(anyString())).thenReturn("123456");
-        doNothing().when(smsService).sendOtp(anyString(), anyString());
+        when(otpService.createChallenge(anyString()))
+                .thenReturn(new OtpService.OtpChallenge("00000000000000ab", "123456"));
+        doNothing().when(smsService).sendOtp(anyString(), anyString(), anyString(), nullable(String.class));
 
         // Act & Assert
         mockMvc.perform(post("/api/v1/auth/initiate-mfa")
@@ -60,11 +75,12 @@ class AuthControllerIntegrationTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(request)))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.message").value("Operation successful"));
+                .andExpect(jsonPath("$.message").value("Operation successful"))
+                .andExpect(jsonPath("$.data.challenge").value("00000000000000ab"));
 
         // Verify
-        verify(otpService).generateOtp(anyString());
-        verify(smsService).sendOtp(anyString(), anyString());
+        verify(otpService).createChallenge(anyString());
+        verify(smsService).sendOtp(anyString(), anyString(), anyString(), nullable(String.class));
     }
 
     @Test
@@ -73,8 +89,9 @@ class AuthControllerIntegrationTest {
         AuthRequest request = new AuthRequest();
         request.setPhoneNumber("invalid");
 
-        when(otpService.generateOtp(anyString())).thenReturn("123456");
-        doNothing().when(smsService).sendOtp(anyString(), anyString());
+        when(otpService.createChallenge(anyString()))
+                .thenReturn(new OtpService.OtpChallenge("00000000000000ab", "123456"));
+        doNothing().when(smsService).sendOtp(anyString(), anyString(), anyString(), nullable(String.class));
 
         // Act & Assert
         mockMvc.perform(post("/api/v1/auth/initiate-mfa")
@@ -84,8 +101,56 @@ class AuthControllerIntegrationTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.message").value("Operation successful"));
 
-        verify(otpService).generateOtp(anyString());
-        verify(smsService).sendOtp(anyString(), anyString());
+        verify(otpService).createChallenge(anyString());
+        verify(smsService).sendOtp(anyString(), anyString(), anyString(), nullable(String.class));
+    }
+
+    @Test
+    void initiateMfa_WhenSmsUnavailable_ShouldFailFastWithoutCreatingOtp() throws Exception {
+        // Arrange
+        AuthRequest request = new AuthRequest();
+        request.setPhoneNumber("+1234567890");
+
+        doThrow(new SmsUnavailableException("SMS delivery is temporarily unavailable, please retry later", 30))
+                .when(smsService).checkAvailable();
+
+        // Act & Assert
+        mockMvc.perform(post("/api/v1/auth/initiate-mfa")
+                .with(jwt())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "30"));
+
+        verify(otpService, never()).createChallenge(anyString());
+        verify(smsService, never()).sendOtp(anyString(), anyString(), anyString(), nullable(String.class));
+    }
+
+    @Test
+    void initiateMfa_WhenDispatchQueueIsFull_ShouldWithdrawTheChallenge() throws Exception {
+        // Arrange - more rejected attempts than the user's 5 pending challenges
+        AuthRequest request = new AuthRequest();
+        request.setPhoneNumber("+1234567890");
+        doThrow(new CapacityExceededException("SMS dispatch queue is full, please retry later"))
+                .when(smsService).sendOtp(anyString(), anyString(), anyString(), nullable(String.class));
+
+        // Act & Assert
+        for (int i = 0; i < 6; i++) {
+            mockMvc.perform(post("/api/v1/auth/initiate-mfa")
+                    .with(jwt().jwt(jwt -> jwt.subject("burst-user")))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isTooManyRequests());
+        }
+        verify(otpService, times(6)).cancelChallenge(eq("burst-user"), any());
+
+        // Once the queue drains, the user is not locked out
+        doNothing().when(smsService).sendOtp(anyString(), anyString(), anyString(), nullable(String.class));
+        mockMvc.perform(post("/api/v1/auth/initiate-mfa")
+                .with(jwt().jwt(jwt -> jwt.subject("burst-user")))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk());
     }
 
     @Test
@@ -136,6 +201,44 @@ class AuthControllerIntegrationTest {
         verify(otpService).validateOtp(userId, otp);
     }
 
+    @Test
+    void verifyOtp_WithChallenge_ShouldValidateThatChallenge() throws Exception {
+        // Arrange
+        String userId = "test-user";
+        OtpVerificationRequest request = new OtpVerificationRequest();
+        request.setOtp("123456");
+        request.setUserId(userId);
+        request.setChallenge("00000000000000ab");
+
+        when(otpService.validateOtp(userId, "00000000000000ab", "123456")).thenReturn(true);
+
+        // Act & Assert
+        mockMvc.perform(post("/api/v1/auth/verify-otp")
+                .with(jwt().jwt(jwt -> jwt.subject(userId)))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data").value("OTP verified successfully"));
+
+        verify(otpService).validateOtp(userId, "00000000000000ab", "123456");
+    }
+
+    @Test
+    void verifyTotp_WhenNotEnabled_ShouldReturnBadRequest() throws Exception {
+        // Arrange - no master secret is configured in tests, so TOTP is disabled
+        OtpVerificationRequest request = new OtpVerificationRequest();
+        request.setOtp("123456");
+        request.setUserId("test-user");
+
+        // Act & Assert
+        mockMvc.perform(post("/api/v1/auth/verify-totp")
+                .with(jwt().jwt(jwt -> jwt.subject("test-user")))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("TOTP verification is not enabled"));
+    }
+
     @Test
     void initiateMfa_WithoutAuthentication_ShouldReturnUnauthorized() throws Exception {
         // Arrange
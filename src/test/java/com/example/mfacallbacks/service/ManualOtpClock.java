@@ -0,0 +1,32 @@
+package com.example.mfacallbacks.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Virtual {@link OtpClock} for tests and benchmarks: time only moves when advanced, so
+ * hours of expiry behavior can be simulated without waiting.
+ */
+public class ManualOtpClock implements OtpClock {
+
+    private final AtomicLong epochSecond;
+
+    /**
+     * @param epochSecond the initial time in seconds since epoch
+     */
+    public ManualOtpClock(long epochSecond) {
+        this.epochSecond = new AtomicLong(epochSecond);
+    }
+
+    @Override
+    public long epochSecond() {
+        return epochSecond.get();
+    }
+
+    /**
+     * @param seconds the number of seconds to move forward
+     * @return the new time in seconds since epoch
+     */
+    public long advance(long seconds) {
+        return epochSecond.addAndGet(seconds);
+    }
+}
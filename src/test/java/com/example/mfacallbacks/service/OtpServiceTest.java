@@ -1,21 +1,44 @@
 package com.example.mfacallbacks.service;
 
+import com.example.mfacallbacks.exception.CapacityExceededException;
+import com.example.mfacallbacks.random.OtpCodeSource;
+import com.example.mfacallbacks.random.StripedSecureRandomCodeSource;
+import com.example.mfacallbacks.store.BoundedOtpStore;
+import com.example.mfacallbacks.store.InMemoryOtpStore;
+import com.example.mfacallbacks.store.JournaledOtpStore;
+import com.example.mfacallbacks.store.OtpStore;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.file.Path;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(MockitoExtension.class)
 class OtpServiceTest {
 
+    @Spy
+    private OtpStore otpStore = new InMemoryOtpStore();
+
+    @Spy
+    private OtpCodeSource codeSource = new StripedSecureRandomCodeSource("DRBG", 1, 0);
+
+    @Spy
+    private ManualOtpClock clock = new ManualOtpClock(1_700_000_000L);
+
     @InjectMocks
     private OtpService otpService;
 
     private final String testUserId = "test-user-123";
 
+    @TempDir
+    private Path journal;
+
     @Test
     void generateOtp_ShouldGenerateOtpOfSpecifiedLength() {
         // Act
@@ -52,13 +75,10 @@ class OtpServiceTest {
     }
 
     @Test
-    void validateOtp_WithExpiredOtp_ShouldReturnFalse() throws InterruptedException {
-        // Arrange - Set a very short expiry time for testing
-        otpService = new OtpService();
-        otpService.setOtpExpirySeconds(1); // 1 second expiry
-        
+    void validateOtp_WithExpiredOtp_ShouldReturnFalse() {
+        // Arrange - Move the virtual clock past the default 5 minute expiry
         String otp = otpService.generateOtp(testUserId);
-        Thread.sleep(2000); // Wait for OTP to expire
+        clock.advance(301);
         
         // Act
         boolean isValid = otpService.validateOtp(testUserId, otp);
@@ -67,6 +87,16 @@ class OtpServiceTest {
         assertFalse(isValid);
     }
 
+    @Test
+    void validateOtp_JustBeforeExpiry_ShouldReturnTrue() {
+        // Arrange
+        String otp = otpService.generateOtp(testUserId);
+        clock.advance(299);
+
+        // Act & Assert
+        assertTrue(otpService.validateOtp(testUserId, otp));
+    }
+
     @Test
     void validateOtp_AfterValidation_ShouldRemoveOtp() {
         // Arrange
@@ -81,4 +111,154 @@ class OtpServiceTest {
         assertTrue(firstAttempt);
         assertFalse(secondAttempt);
     }
+
+    @Test
+    void validateOtp_WithParallelChallenges_ShouldKeepBothValid() {
+        // Arrange - e.g. a web and a mobile login started at the same time
+        OtpService.OtpChallenge web = otpService.createChallenge(testUserId);
+        OtpService.OtpChallenge mobile = otpService.createChallenge(testUserId);
+
+        // Act & Assert
+        assertTrue(otpService.validateOtp(testUserId, web.challengeId(), web.otp()));
+        assertTrue(otpService.validateOtp(testUserId, mobile.challengeId(), mobile.otp()));
+        assertFalse(otpService.validateOtp(testUserId, mobile.challengeId(), mobile.otp()));
+    }
+
+    @Test
+    void createChallenge_BeyondPerUserCap_ShouldRejectUntilOneExpires() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            otpService.createChallenge(testUserId);
+        }
+
+        // Act & Assert
+        assertThrows(CapacityExceededException.class, () -> otpService.createChallenge(testUserId));
+        assertNotNull(otpService.createChallenge("other-user"));
+        clock.advance(301);
+        assertNotNull(otpService.createChallenge(testUserId));
+    }
+
+    @Test
+    void validateOtp_AfterTooManyWrongCodes_ShouldRejectEvenTheRightOne() {
+        // Arrange - the default limit is 5 wrong codes
+        OtpService.OtpChallenge challenge = otpService.createChallenge(testUserId);
+        String wrong = challenge.otp().equals("000000") ? "111111" : "000000";
+        for (int i = 0; i < 5; i++) {
+            assertFalse(otpService.validateOtp(testUserId, challenge.challengeId(), wrong));
+        }
+
+        // Act
+        boolean isValid = otpService.validateOtp(testUserId, challenge.challengeId(), challenge.otp());
+
+        // Assert
+        assertFalse(isValid);
+        assertFalse(otpService.validateOtp(testUserId, challenge.otp()));
+        assertEquals(1, otpService.lockouts());
+        assertEquals(2, otpService.lockedRejections());
+    }
+
+    @Test
+    void cancelChallenge_ShouldFreeTheUsersSlotAndRejectItsCode() {
+        // Arrange
+        OtpService.OtpChallenge cancelled = otpService.createChallenge(testUserId);
+        for (int i = 0; i < 4; i++) {
+            otpService.createChallenge(testUserId);
+        }
+
+        // Act
+        otpService.cancelChallenge(testUserId, cancelled);
+
+        // Assert
+        assertFalse(otpService.validateOtp(testUserId, cancelled.challengeId(), cancelled.otp()));
+        assertNotNull(otpService.createChallenge(testUserId));
+        assertEquals(0, otpService.lockouts());
+    }
+
+    @Test
+    void reissueChallenge_ShouldReplaceTheCodeOfPendingChallengesOnly() {
+        // Arrange
+        OtpService.OtpChallenge pending = otpService.createChallenge(testUserId);
+        OtpService.OtpChallenge consumed = otpService.createChallenge(testUserId);
+        OtpService.OtpChallenge expiring = otpService.createChallenge(testUserId);
+        assertTrue(otpService.validateOtp(testUserId, consumed.challengeId(), consumed.otp()));
+
+        // Act
+        String reissued = otpService.reissueChallenge(testUserId, pending.challengeId());
+
+        // Assert
+        assertNotNull(reissued);
+        assertNull(otpService.reissueChallenge(testUserId, consumed.challengeId()));
+        assertNull(otpService.reissueChallenge(testUserId, "not-a-challenge"));
+        if (!reissued.equals(pending.otp())) {
+            assertFalse(otpService.validateOtp(testUserId, pending.challengeId(), pending.otp()));
+        }
+        assertTrue(otpService.validateOtp(testUserId, pending.challengeId(), reissued));
+        // The challenge keeps its expiry
+        assertNotNull(otpService.reissueChallenge(testUserId, expiring.challengeId()));
+        clock.advance(300);
+        assertNull(otpService.reissueChallenge(testUserId, expiring.challengeId()));
+    }
+
+    @Test
+    void createChallenge_WhenStoreIsFull_ShouldNotKeepChallengePending() {
+        // Arrange - a store with room for a single challenge, taken by another user
+        OtpService service = new OtpService(new BoundedOtpStore(new InMemoryOtpStore(), 1,
+                BoundedOtpStore.OverflowPolicy.REJECT), codeSource, clock);
+        OtpService.OtpChallenge other = service.createChallenge("other-user");
+        for (int i = 0; i < 10; i++) {
+            assertThrows(CapacityExceededException.class, () -> service.createChallenge(testUserId));
+        }
+        assertTrue(service.validateOtp("other-user", other.challengeId(), other.otp()));
+
+        // Act - neither the per-user cap nor the latest challenge hold the rejected ones
+        String otp = service.generateOtp(testUserId);
+
+        // Assert
+        assertTrue(service.validateOtp(testUserId, otp));
+    }
+
+    @Test
+    void createChallenge_AfterEviction_ShouldNotCountEvictedChallenges() {
+        // Arrange - a store with room for one user's full set of challenges, evicting when full
+        OtpService service = new OtpService(new BoundedOtpStore(new InMemoryOtpStore(), 5,
+                BoundedOtpStore.OverflowPolicy.EVICT), codeSource, clock);
+        service.init();
+        service.clearExpiredOtps();
+        OtpService.OtpChallenge evicted = service.createChallenge(testUserId);
+        for (int i = 0; i < 4; i++) {
+            service.createChallenge(testUserId);
+        }
+
+        // Act - another user's challenge evicts the oldest one
+        OtpService.OtpChallenge other = service.createChallenge("other-user");
+
+        // Assert - the user is below the cap again, and the latest challenge is a live one
+        OtpService.OtpChallenge latest = service.createChallenge(testUserId);
+        assertTrue(service.validateOtp(testUserId, latest.otp()));
+        assertFalse(service.validateOtp(testUserId, evicted.challengeId(), evicted.otp()));
+        assertTrue(service.validateOtp("other-user", other.challengeId(), other.otp()));
+    }
+
+    @Test
+    void init_AfterRestart_ShouldIndexRecoveredChallenges() {
+        // Arrange - a full set of pending challenges, journaled before the restart
+        JournaledOtpStore store = JournaledOtpStore.open(new InMemoryOtpStore(), journal, 1 << 20, 1, clock.epochSecond());
+        OtpService service = new OtpService(store, codeSource, clock);
+        service.init();
+        String otp = null;
+        for (int i = 0; i < 5; i++) {
+            otp = service.generateOtp(testUserId);
+        }
+        store.close();
+
+        // Act
+        JournaledOtpStore restarted = JournaledOtpStore.open(new InMemoryOtpStore(), journal, 1 << 20, 1, clock.epochSecond());
+        OtpService recovered = new OtpService(restarted, codeSource, clock);
+        recovered.init();
+
+        // Assert - the cap still holds, and the latest challenge answers a verification without an ID
+        assertThrows(CapacityExceededException.class, () -> recovered.createChallenge(testUserId));
+        assertTrue(recovered.validateOtp(testUserId, otp));
+        restarted.close();
+    }
 }
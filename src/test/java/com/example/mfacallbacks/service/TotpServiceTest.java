@@ -0,0 +1,122 @@
+package com.example.mfacallbacks.service;
+
+import com.example.mfacallbacks.totp.DerivedTotpSecretProvider;
+import com.example.mfacallbacks.totp.TotpEnrollments;
+import com.example.mfacallbacks.totp.TotpSecretProvider;
+import com.example.mfacallbacks.totp.TotpVerifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TotpServiceTest {
+
+    private final Map<String, Long> enrollments = new ConcurrentHashMap<>(Map.of("user-1", 0L, "user-2", 0L));
+
+    private final TotpSecretProvider secretProvider = new DerivedTotpSecretProvider(new byte[32], "HmacSHA1",
+            userId -> enrollments.getOrDefault(userId, TotpEnrollments.NOT_ENROLLED));
+
+    private final ManualOtpClock clock = new ManualOtpClock(1_700_000_000L);
+
+    private final TotpVerifier verifier = new TotpVerifier("HmacSHA1", 6, 30, 1);
+
+    private TotpService totpService;
+
+    @BeforeEach
+    void setUp() {
+        totpService = new TotpService(providerOf(secretProvider), clock);
+        totpService.init();
+    }
+
+    @Test
+    void validateTotp_WithCurrentCode_ShouldAcceptItOnce() {
+        String code = currentCode("user-1");
+
+        assertTrue(totpService.validateTotp("user-1", code));
+        assertFalse(totpService.validateTotp("user-1", code));
+    }
+
+    @Test
+    void validateTotp_WhenNotEnrolled_ShouldRejectEveryCode() {
+        assertNull(secretProvider.secretFor("stranger"));
+
+        for (int code = 0; code < 10; code++) {
+            assertFalse(totpService.validateTotp("stranger", String.format("%06d", code)));
+        }
+    }
+
+    @Test
+    void validateTotp_AfterRevocationOrRotation_ShouldRejectOldSecretOnceCacheExpires() {
+        String code = currentCode("user-1");
+        assertTrue(totpService.validateTotp("user-1", code));
+
+        enrollments.put("user-2", 1L);
+        String oldCode = String.format("%06d", verifier.hotp(
+                new DerivedTotpSecretProvider(new byte[32], "HmacSHA1", userId -> 0).secretFor("user-2"),
+                clock.epochSecond() / 30));
+        assertNotEquals(oldCode, currentCode("user-2"));
+        enrollments.remove("user-1");
+
+        clock.advance(60);
+        assertFalse(totpService.validateTotp("user-1", currentCode("user-1")));
+        assertFalse(totpService.validateTotp("user-2", oldCode));
+        assertTrue(totpService.validateTotp("user-2", currentCode("user-2")));
+    }
+
+    @Test
+    void validateTotp_AfterTooManyWrongCodes_ShouldRejectTheCorrectCode() {
+        String code = currentCode("user-1");
+        String wrong = code.equals("000000") ? "000001" : "000000";
+        for (int i = 0; i < 5; i++) {
+            assertFalse(totpService.validateTotp("user-1", wrong));
+        }
+
+        assertFalse(totpService.validateTotp("user-1", code));
+        assertEquals(1, totpService.lockouts());
+        assertEquals(1, totpService.lockedRejections());
+        // Other users are not affected
+        assertTrue(totpService.validateTotp("user-2", currentCode("user-2")));
+
+        // The lock ends once the generation holding the wrong codes has rotated out
+        clock.advance(300);
+        assertFalse(totpService.validateTotp("user-1", currentCode("user-1")));
+        clock.advance(300);
+        assertTrue(totpService.validateTotp("user-1", currentCode("user-1")));
+    }
+
+    private String currentCode(String userId) {
+        SecretKeySpec secret = new DerivedTotpSecretProvider(new byte[32], "HmacSHA1",
+                user -> enrollments.getOrDefault(user, 0L)).secretFor(userId);
+        int code = verifier.hotp(secret, clock.epochSecond() / 30);
+        return String.format("%06d", code);
+    }
+
+    private static <T> ObjectProvider<T> providerOf(T bean) {
+        return new ObjectProvider<>() {
+            @Override
+            public T getObject() {
+                return bean;
+            }
+
+            @Override
+            public T getObject(Object... args) {
+                return bean;
+            }
+
+            @Override
+            public T getIfAvailable() {
+                return bean;
+            }
+
+            @Override
+            public T getIfUnique() {
+                return bean;
+            }
+        };
+    }
+}
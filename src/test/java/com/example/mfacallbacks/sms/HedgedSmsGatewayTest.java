@@ -0,0 +1,164 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.SmsException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgedSmsGatewayTest {
+
+    private static final String SECONDARY_NUMBER = "+15550000009";
+    private static final SmsMessage MESSAGE = new SmsMessage("+15551230000", "+15550000001", "Your code is 123456");
+
+    @Test
+    void sendAsync_WithSlowPrimary_ShouldTakeSecondaryAcceptance() throws Exception {
+        StubSmsGateway primary = new StubSmsGateway(2_000, 0, 0);
+        StubSmsGateway secondary = new StubSmsGateway(10, 0, 0);
+
+        try (HedgedSmsGateway gateway = new HedgedSmsGateway(primary, secondary, 95, 20, 50, 5)) {
+            long started = System.nanoTime();
+            String messageId = gateway.sendAsync(MESSAGE).get(1, TimeUnit.SECONDS);
+
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 1_000);
+            assertEquals("stub-1", messageId);
+            assertEquals(1, secondary.sentCount());
+            assertEquals(1, gateway.hedgeCount());
+            assertEquals(1, gateway.secondaryWinCount());
+        }
+    }
+
+    @Test
+    void sendAsync_WithFastPrimary_ShouldNotHedge() throws Exception {
+        StubSmsGateway primary = new StubSmsGateway(0, 0, 0);
+        StubSmsGateway secondary = new StubSmsGateway(0, 0, 0);
+
+        try (HedgedSmsGateway gateway = new HedgedSmsGateway(primary, secondary, 95, 200, 500, 5)) {
+            for (int i = 0; i < 50; i++) {
+                gateway.sendAsync(MESSAGE).get(1, TimeUnit.SECONDS);
+            }
+
+            assertEquals(50, primary.sentCount());
+            assertEquals(0, secondary.sentCount());
+            assertEquals(0, gateway.hedgeCount());
+        }
+    }
+
+    @Test
+    void sendAsync_BeyondBudget_ShouldStopHedging() throws Exception {
+        StubSmsGateway primary = new StubSmsGateway(300, 0, 0);
+        StubSmsGateway secondary = new StubSmsGateway(0, 0, 0);
+
+        try (HedgedSmsGateway gateway = new HedgedSmsGateway(primary, secondary, 95, 10, 10, 0)) {
+            List<CompletableFuture<String>> sends = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                sends.add(gateway.sendAsync(MESSAGE));
+            }
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+            // Only the initial reserve of ten hedges, as sends earn no budget
+            assertEquals(10, gateway.hedgeCount());
+            assertEquals(10, gateway.budgetExhaustedCount());
+        }
+    }
+
+    @Test
+    void sendAsync_WhenPrimaryFails_ShouldHedgeAtOnce() throws Exception {
+        StubSmsGateway primary = new StubSmsGateway(0, 0, 1);
+        StubSmsGateway secondary = new StubSmsGateway(0, 0, 0);
+
+        try (HedgedSmsGateway gateway = new HedgedSmsGateway(primary, secondary, 95, 5_000, 5_000, 5)) {
+            assertEquals("stub-1", gateway.sendAsync(MESSAGE).get(1, TimeUnit.SECONDS));
+            assertEquals(1, gateway.secondaryWinCount());
+        }
+    }
+
+    @Test
+    void send_WhenBothFail_ShouldThrowPrimaryFailure() throws Exception {
+        StubSmsGateway primary = new StubSmsGateway(0, 0, 1);
+        SmsGateway secondary = message -> {
+            throw new SmsException("SMS provider answered 400", 400);
+        };
+
+        try (HedgedSmsGateway gateway = new HedgedSmsGateway(primary, secondary, 95, 5_000, 5_000, 5)) {
+            SmsException failure = assertThrows(SmsException.class, () -> gateway.send(MESSAGE));
+            assertEquals(503, failure.getStatusCode());
+        }
+    }
+
+    @Test
+    void sendAsync_WithFailingSecondaryBehindItsBreaker_ShouldStopCallingIt() throws Exception {
+        StubSmsGateway primary = new StubSmsGateway(0, 0, 1);
+        SmsCircuitBreaker breaker = new SmsCircuitBreaker(50, 4, 4, 60_000, 1);
+        SmsGateway secondary = new CircuitBreakerSmsGateway(new StubSmsGateway(0, 0, 1), breaker);
+
+        try (HedgedSmsGateway gateway = new HedgedSmsGateway(primary, secondary, 95, 5_000, 5_000, 100)) {
+            for (int i = 0; i < 8; i++) {
+                SmsException failure = assertThrows(SmsException.class, () -> gateway.send(MESSAGE));
+                assertEquals(503, failure.getStatusCode());
+            }
+
+            assertEquals(SmsCircuitBreaker.State.OPEN, breaker.state());
+            assertEquals(4, breaker.failureCount());
+            assertEquals(4, breaker.rejectedCount());
+        }
+    }
+
+    @Test
+    void sendAsync_WithSecondarySenders_ShouldHedgeFromSecondaryNumber() throws Exception {
+        StubSmsGateway primary = new StubSmsGateway(2_000, 0, 0);
+        List<String> senders = new CopyOnWriteArrayList<>();
+        SmsGateway secondary = message -> {
+            senders.add(message.from());
+            return "secondary-1";
+        };
+        SenderPool secondarySenders = new SenderPool(List.of(SECONDARY_NUMBER), Map.of(), false,
+                new SenderRateLimiter(1, 1, 30_000, Map.of()));
+
+        try (HedgedSmsGateway gateway = new HedgedSmsGateway(primary, secondary, secondarySenders, 95, 20, 50, 5)) {
+            assertEquals("secondary-1", gateway.sendAsync(MESSAGE).get(1, TimeUnit.SECONDS));
+            assertEquals(List.of(SECONDARY_NUMBER), senders);
+        }
+    }
+
+    @Test
+    void sendAsync_WhenSecondaryNumberIsOverItsRate_ShouldSkipHedge() throws Exception {
+        StubSmsGateway primary = new StubSmsGateway(300, 0, 0);
+        StubSmsGateway secondary = new StubSmsGateway(0, 0, 0);
+        SenderRateLimiter limiter = new SenderRateLimiter(1, 1, 30_000, Map.of());
+        limiter.reserve(SECONDARY_NUMBER, System.nanoTime());
+        SenderPool secondarySenders = new SenderPool(List.of(SECONDARY_NUMBER), Map.of(), false, limiter);
+
+        try (HedgedSmsGateway gateway = new HedgedSmsGateway(primary, secondary, secondarySenders, 95, 10, 10, 5)) {
+            assertEquals("stub-1", gateway.sendAsync(MESSAGE).get(1, TimeUnit.SECONDS));
+
+            assertEquals(0, secondary.sentCount());
+            assertEquals(0, gateway.hedgeCount());
+            assertEquals(1, gateway.sendersBusyCount());
+            // The skipped hedge gave its token back
+            assertEquals(1, limiter.reservedCount());
+        }
+    }
+
+    @Test
+    void delayNanos_ShouldFollowPrimaryLatency() throws Exception {
+        StubSmsGateway primary = new StubSmsGateway(10, 0, 0);
+        StubSmsGateway secondary = new StubSmsGateway(0, 0, 0);
+
+        try (HedgedSmsGateway gateway = new HedgedSmsGateway(primary, secondary, 95, 1, 1_000, 5)) {
+            assertEquals(TimeUnit.SECONDS.toNanos(1), gateway.delayNanos());
+            for (int i = 0; i < 32; i++) {
+                gateway.sendAsync(MESSAGE).get(1, TimeUnit.SECONDS);
+            }
+
+            long delayMillis = TimeUnit.NANOSECONDS.toMillis(gateway.delayNanos());
+            assertTrue(delayMillis >= 10 && delayMillis < 200, "delay " + delayMillis);
+        }
+    }
+}
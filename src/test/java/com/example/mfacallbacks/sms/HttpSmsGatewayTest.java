@@ -0,0 +1,48 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.SmsException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpSmsGatewayTest {
+
+    private static final SmsMessage MESSAGE =
+            new SmsMessage("+15550000001", "+15550000000", "Your verification code is: 123456");
+
+    @Test
+    void sendAsync_ShouldCompleteEveryMessageWithItsSid() throws Exception {
+        try (StubSmsServer server = new StubSmsServer(50, 0);
+             HttpSmsGateway gateway = gateway(server)) {
+            List<CompletableFuture<String>> sends = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                sends.add(gateway.sendAsync(MESSAGE));
+            }
+
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).join();
+            assertTrue(sends.stream().allMatch(send -> send.join().startsWith("SM")));
+            assertEquals(200, server.receivedCount());
+        }
+    }
+
+    @Test
+    void send_WithProviderError_ShouldThrowSmsException() throws Exception {
+        try (StubSmsServer server = new StubSmsServer(0, 1.0);
+             HttpSmsGateway gateway = gateway(server)) {
+            assertThrows(SmsException.class, () -> gateway.send(MESSAGE));
+            CompletionException failure = assertThrows(CompletionException.class, () -> gateway.sendAsync(MESSAGE).join());
+            assertInstanceOf(SmsException.class, failure.getCause());
+        }
+    }
+
+    private static HttpSmsGateway gateway(StubSmsServer server) {
+        return new HttpSmsGateway(server.baseUri(), "AC0000", "token",
+                Duration.ofSeconds(2), Duration.ofSeconds(10), 2);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SenderPoolTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    private static final List<String> US_NUMBERS = List.of("+15550000001", "+15550000002", "+15550000003");
+    private static final String UK_NUMBER = "+447700900001";
+
+    @Test
+    void reserve_ShouldSpreadBurstOverIdleNumbers() {
+        SenderPool pool = new SenderPool(US_NUMBERS, Map.of(), false, new SenderRateLimiter(1, 1, 30_000, Map.of()));
+
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            SenderPool.Reservation reservation = pool.reserve("+15551230000", 0);
+            assertEquals(0, reservation.notBefore());
+            used.add(reservation.sender());
+        }
+
+        assertEquals(Set.copyOf(US_NUMBERS), used);
+        assertEquals(SECOND, pool.reserve("+15551230000", 0).notBefore());
+    }
+
+    @Test
+    void reserve_ShouldPreferNumberWithMostTokens() {
+        SenderRateLimiter limiter = new SenderRateLimiter(1, 5, 30_000, Map.of());
+        SenderPool pool = new SenderPool(US_NUMBERS.subList(0, 2), Map.of(), false, limiter);
+        limiter.reserve(US_NUMBERS.get(0), 0);
+        limiter.reserve(US_NUMBERS.get(0), 0);
+
+        assertEquals(US_NUMBERS.get(1), pool.reserve("+15551230000", 0).sender());
+        assertEquals(US_NUMBERS.get(1), pool.reserve("+15551230000", 0).sender());
+    }
+
+    @Test
+    void release_ShouldReturnTheTokenToTheReservedNumber() {
+        SenderRateLimiter limiter = new SenderRateLimiter(1, 1, 30_000, Map.of());
+        SenderPool pool = new SenderPool(US_NUMBERS.subList(0, 1), Map.of(), false, limiter);
+        pool.reserve("+15551230000", 0);
+
+        pool.release(pool.reserve("+15551230000", 0), 0);
+
+        assertEquals(SECOND, pool.reserve("+15551230000", 0).notBefore());
+        assertEquals(2, limiter.reservedCount(US_NUMBERS.get(0)));
+    }
+
+    @Test
+    void reserve_ShouldUseLongestMatchingCountryGroup() {
+        SenderPool pool = new SenderPool(US_NUMBERS, Map.of("+44", List.of(UK_NUMBER), "+4", List.of("+41000000000")),
+                false, new SenderRateLimiter(0, 1, 30_000, Map.of()));
+
+        assertEquals(UK_NUMBER, pool.reserve("+447911123456", 0).sender());
+        assertEquals("+41000000000", pool.reserve("+41791234567", 0).sender());
+        assertTrue(US_NUMBERS.contains(pool.reserve("+15551230000", 0).sender()));
+        assertEquals(List.of("+15550000001", "+15550000002", "+15550000003", UK_NUMBER, "+41000000000"),
+                List.copyOf(pool.numbers()));
+    }
+
+    @Test
+    void reserve_WhenSticky_ShouldKeepNumberUntilItsBacklogIsFull() {
+        SenderRateLimiter limiter = new SenderRateLimiter(1, 1, 1_000, Map.of());
+        SenderPool pool = new SenderPool(US_NUMBERS, Map.of(), true, limiter);
+
+        String assigned = pool.reserve("+15551230000", 0).sender();
+        assertEquals(assigned, pool.reserve("+15551230000", 0).sender());
+
+        SenderPool.Reservation fallback = pool.reserve("+15551230000", 0);
+        assertNotEquals(assigned, fallback.sender());
+        assertEquals(0, fallback.notBefore());
+        assertEquals(0, limiter.rejectedCount());
+    }
+
+    @Test
+    void reserve_WhenEveryNumberIsBacklogged_ShouldReject() {
+        SenderPool pool = new SenderPool(US_NUMBERS.subList(0, 1), Map.of(), false,
+                new SenderRateLimiter(1, 1, 0, Map.of()));
+
+        pool.reserve("+15551230000", 0);
+
+        assertThrows(CapacityExceededException.class, () -> pool.reserve("+15551230000", 0));
+    }
+
+    @Test
+    void constructor_WithoutNumbers_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new SenderPool(List.of(), Map.of(), false, new SenderRateLimiter(1, 1, 0, Map.of())));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SenderRateLimiterTest {
+
+    private static final long MS = 1_000_000L;
+    private static final String LONG_CODE = "+15005550006";
+    private static final String SHORT_CODE = "12345";
+
+    @Test
+    void reserve_ShouldAllowBurstThenPaceAtRate() {
+        SenderRateLimiter limiter = new SenderRateLimiter(10, 2, 30_000, Map.of());
+
+        assertEquals(0, limiter.reserve(LONG_CODE, 0));
+        assertEquals(0, limiter.reserve(LONG_CODE, 0));
+        assertEquals(100 * MS, limiter.reserve(LONG_CODE, 0));
+        assertEquals(200 * MS, limiter.reserve(LONG_CODE, 0));
+        assertEquals(300 * MS, limiter.backlogNanos());
+    }
+
+    @Test
+    void reserve_AfterIdling_ShouldStartAtOnce() {
+        SenderRateLimiter limiter = new SenderRateLimiter(1, 1, 30_000, Map.of());
+
+        assertEquals(0, limiter.reserve(LONG_CODE, 0));
+        assertEquals(1_000 * MS, limiter.reserve(LONG_CODE, 0));
+        assertEquals(10_000 * MS, limiter.reserve(LONG_CODE, 10_000 * MS));
+    }
+
+    @Test
+    void reserve_BeyondMaxBacklog_ShouldReject() {
+        SenderRateLimiter limiter = new SenderRateLimiter(1, 1, 2_000, Map.of());
+
+        limiter.reserve(LONG_CODE, 0);
+        limiter.reserve(LONG_CODE, 0);
+        limiter.reserve(LONG_CODE, 0);
+
+        assertThrows(CapacityExceededException.class, () -> limiter.reserve(LONG_CODE, 0));
+        assertEquals(3, limiter.reservedCount());
+        assertEquals(1, limiter.rejectedCount());
+        assertEquals(3_000 * MS, limiter.longestBacklogNanos(0));
+        // The rejected send took no token
+        assertEquals(1_000 * MS, limiter.longestBacklogNanos(2_000 * MS));
+    }
+
+    @Test
+    void release_ShouldGiveTheTokenToTheNextSend() {
+        SenderRateLimiter limiter = new SenderRateLimiter(1, 1, 30_000, Map.of());
+        limiter.reserve(LONG_CODE, 0);
+        long rejectedStart = limiter.reserve(LONG_CODE, 0);
+
+        limiter.release(LONG_CODE, rejectedStart);
+
+        assertEquals(1_000 * MS, limiter.reserve(LONG_CODE, 0));
+        assertEquals(2, limiter.reservedCount());
+        assertEquals(1_000 * MS, limiter.backlogNanos());
+    }
+
+    @Test
+    void reserve_ShouldKeepSendersIndependent() {
+        SenderRateLimiter limiter = new SenderRateLimiter(1, 1, 30_000, Map.of(SHORT_CODE, 100.0));
+
+        limiter.reserve(LONG_CODE, 0);
+        limiter.reserve(SHORT_CODE, 0);
+
+        assertEquals(1_000 * MS, limiter.reserve(LONG_CODE, 0));
+        assertEquals(10 * MS, limiter.reserve(SHORT_CODE, 0));
+    }
+
+    @Test
+    void reserve_WithoutLimit_ShouldNeverDelay() {
+        SenderRateLimiter limiter = new SenderRateLimiter(0, 1, 0, Map.of());
+
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(5, limiter.reserve(LONG_CODE, 5));
+        }
+        assertEquals(0, limiter.longestBacklogNanos(5));
+    }
+}
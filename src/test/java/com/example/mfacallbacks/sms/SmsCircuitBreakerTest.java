@@ -0,0 +1,114 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.SmsException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmsCircuitBreakerTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final SmsCircuitBreaker breaker = new SmsCircuitBreaker(50, 10, 4, 1_000, 2);
+
+    @Test
+    void onFailure_BelowMinimumCalls_ShouldStayClosed() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(0);
+        }
+
+        assertEquals(SmsCircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.tryAcquire(0));
+    }
+
+    @Test
+    void onFailure_AtFailureRate_ShouldOpenAndRejectCalls() {
+        for (int i = 0; i < 5; i++) {
+            breaker.onSuccess(0);
+        }
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(0);
+        }
+        assertEquals(SmsCircuitBreaker.State.CLOSED, breaker.state());
+
+        breaker.onFailure(0);
+
+        assertEquals(SmsCircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire(500 * MS));
+        assertEquals(500 * MS, breaker.retryAfterNanos(500 * MS));
+        assertEquals(1, breaker.rejectedCount());
+    }
+
+    @Test
+    void onFailure_ShouldOnlyCountRecentCalls() {
+        SmsCircuitBreaker windowed = new SmsCircuitBreaker(50, 4, 4, 1_000, 1);
+        windowed.onSuccess(0);
+        windowed.onSuccess(0);
+        windowed.onSuccess(0);
+        windowed.onFailure(0);
+        windowed.onSuccess(0);
+        assertEquals(25.0, windowed.failureRatePercent(), 0.001);
+
+        // 2 failures in 6 calls overall, but 2 in the last 4
+        windowed.onFailure(0);
+
+        assertEquals(SmsCircuitBreaker.State.OPEN, windowed.state());
+    }
+
+    @Test
+    void tryAcquire_AfterOpenPeriod_ShouldLetProbesThroughAndCloseOnSuccess() {
+        open();
+
+        assertTrue(breaker.tryAcquire(1_000 * MS));
+        assertTrue(breaker.tryAcquire(1_000 * MS));
+        assertFalse(breaker.tryAcquire(1_000 * MS));
+        assertEquals(SmsCircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertEquals(0, breaker.retryAfterNanos(1_000 * MS));
+
+        breaker.onSuccess(1_100 * MS);
+        assertEquals(SmsCircuitBreaker.State.HALF_OPEN, breaker.state());
+        breaker.onSuccess(1_200 * MS);
+
+        assertEquals(SmsCircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0.0, breaker.failureRatePercent(), 0.001);
+    }
+
+    @Test
+    void onFailure_WhileProbing_ShouldReopen() {
+        open();
+        assertTrue(breaker.tryAcquire(1_000 * MS));
+
+        breaker.onFailure(1_100 * MS);
+
+        assertEquals(SmsCircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(1_000 * MS, breaker.retryAfterNanos(1_100 * MS));
+        assertEquals(2, breaker.openedCount());
+    }
+
+    @Test
+    void gateway_ShouldOpenOnProviderErrorsAndFailFast() {
+        StubSmsGateway failing = new StubSmsGateway(0, 0, 1);
+        SmsCircuitBreaker gatewayBreaker = new SmsCircuitBreaker(50, 10, 4, 60_000, 1);
+        CircuitBreakerSmsGateway gateway = new CircuitBreakerSmsGateway(failing, gatewayBreaker);
+        SmsMessage message = new SmsMessage("+15551230000", "+15550000001", "code");
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(CompletionException.class, () -> gateway.sendAsync(message).join());
+        }
+        assertEquals(SmsCircuitBreaker.State.OPEN, gatewayBreaker.state());
+
+        SmsException rejected = assertThrows(SmsException.class, () -> gateway.send(message));
+        assertTrue(rejected.isRetryable());
+        assertEquals(4, gatewayBreaker.failureCount());
+        assertEquals(1, gatewayBreaker.rejectedCount());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(0);
+        }
+        assertEquals(SmsCircuitBreaker.State.OPEN, breaker.state());
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.SmsCircuitOpenException;
+import com.example.mfacallbacks.exception.SmsException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmsConcurrencyLimiterTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    void gradient_WithSteadyRoundTrips_ShouldGrowWhileSaturated() throws Exception {
+        SmsConcurrencyLimiter limiter = new SmsConcurrencyLimiter(SmsConcurrencyLimiter.Algorithm.GRADIENT, 10, 1, 100, 1.5, 0.9);
+
+        saturate(limiter, 200, RTT);
+
+        assertTrue(limiter.limit() > 20, "limit " + limiter.limit());
+        assertTrue(limiter.limit() <= 100);
+        assertEquals(200, limiter.sampleCount());
+    }
+
+    @Test
+    void gradient_WhenRoundTripsRise_ShouldShrink() throws Exception {
+        SmsConcurrencyLimiter limiter = new SmsConcurrencyLimiter(SmsConcurrencyLimiter.Algorithm.GRADIENT, 50, 1, 50, 1.5, 0.9);
+        saturate(limiter, 100, RTT);
+        assertEquals(50, limiter.limit());
+
+        // The provider queues: round trips four times the usual
+        saturate(limiter, 100, 4 * RTT);
+
+        assertTrue(limiter.limit() < 40, "limit " + limiter.limit());
+    }
+
+    @Test
+    void gradient_WhenBarelyUsed_ShouldNotGrow() throws Exception {
+        SmsConcurrencyLimiter limiter = new SmsConcurrencyLimiter(SmsConcurrencyLimiter.Algorithm.GRADIENT, 10, 1, 100, 1.5, 0.9);
+
+        for (int i = 0; i < 200; i++) {
+            limiter.acquire();
+            limiter.release(RTT, null);
+        }
+
+        assertEquals(10, limiter.limit());
+    }
+
+    @Test
+    void aimd_ShouldGrowByAboutOnePerLimitOfSends() throws Exception {
+        SmsConcurrencyLimiter limiter = new SmsConcurrencyLimiter(SmsConcurrencyLimiter.Algorithm.AIMD, 10, 1, 100, 1.5, 0.9);
+
+        saturate(limiter, 12, RTT);
+
+        assertEquals(11, limiter.limit());
+    }
+
+    @Test
+    void release_OnDrop_ShouldBackOffAndIgnoreOtherFailures() throws Exception {
+        SmsConcurrencyLimiter limiter = new SmsConcurrencyLimiter(SmsConcurrencyLimiter.Algorithm.AIMD, 100, 1, 100, 1.5, 0.9);
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire();
+        }
+
+        limiter.release(RTT, new SmsException("Provider answered 400", 400));
+        limiter.release(0, new SmsCircuitOpenException("SMS provider circuit is open"));
+        limiter.release(0, new IllegalStateException("Bug in the send"));
+        assertEquals(100, limiter.limit());
+        assertEquals(0, limiter.dropCount());
+
+        limiter.release(RTT, new SmsException("Provider answered 503", 503));
+
+        assertEquals(90, limiter.limit());
+        assertEquals(1, limiter.dropCount());
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void release_OnDropsWithinOneRoundTrip_ShouldBackOffOnce() throws Exception {
+        SmsConcurrencyLimiter limiter = new SmsConcurrencyLimiter(SmsConcurrencyLimiter.Algorithm.AIMD, 100, 1, 200, 1.5, 0.9);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+        }
+        for (int i = 0; i < 10; i++) {
+            limiter.release(TimeUnit.SECONDS.toNanos(1), null);
+        }
+        assertEquals(100, limiter.limit());
+
+        limiter.release(TimeUnit.SECONDS.toNanos(1), new SmsException("Provider answered 429", 429));
+        limiter.release(TimeUnit.SECONDS.toNanos(1), new SmsException("Provider did not answer"));
+
+        assertEquals(90, limiter.limit());
+        assertEquals(2, limiter.dropCount());
+    }
+
+    @Test
+    void fixed_ShouldKeepItsLimit() throws Exception {
+        SmsConcurrencyLimiter limiter = new SmsConcurrencyLimiter(SmsConcurrencyLimiter.Algorithm.FIXED, 8, 1, 100, 1.5, 0.9);
+
+        saturate(limiter, 100, RTT);
+        limiter.acquire();
+        limiter.release(RTT, new SmsException("Provider answered 503", 503));
+
+        assertEquals(8, limiter.limit());
+    }
+
+    @Test
+    void acquire_AtTheLimit_ShouldWaitForARelease() throws Exception {
+        SmsConcurrencyLimiter limiter = new SmsConcurrencyLimiter(SmsConcurrencyLimiter.Algorithm.FIXED, 1, 1, 1, 1.5, 0.9);
+        limiter.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+
+        Thread waiter = Thread.ofVirtual().start(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        limiter.release(RTT, null);
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        assertEquals(1, limiter.inFlight());
+        waiter.join();
+    }
+
+    /**
+     * Keeps every slot of the limiter taken while sends finish one at a time.
+     */
+    private static void saturate(SmsConcurrencyLimiter limiter, int sends, long rttNanos) throws InterruptedException {
+        for (int i = 0; i < sends; i++) {
+            while (limiter.inFlight() < limiter.limit()) {
+                limiter.acquire();
+            }
+            limiter.release(rttNanos, null);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.mfacallbacks.sms;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmsDeadLetterQueueTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T12:00:00Z");
+
+    private Path dir;
+    private Path file;
+    private SmsDeadLetterQueue queue;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("sms-dead-letter");
+        file = dir.resolve("dead-letter.log");
+        queue = new SmsDeadLetterQueue(file);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        queue.close();
+        try (var files = Files.list(dir)) {
+            for (Path path : files.toList()) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    void constructor_ShouldNotCreateFileBeforeFirstFailure() {
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void replay_ShouldRestoreEntriesExactly() throws IOException {
+        SmsMessage message = new SmsMessage("+15551230000", "+15550000001", "Code:\t******\nback\\slash");
+        SmsDeadLetterQueue.DeadLetter deadLetter = new SmsDeadLetterQueue.DeadLetter(NOW, 4, 503, true,
+                NOW.plusSeconds(300), "user\t1", "0123456789abcdef", message, "SMS provider answered 503");
+        queue.append(deadLetter);
+
+        List<SmsDeadLetterQueue.DeadLetter> replayed = new ArrayList<>();
+        assertEquals(1, queue.replay(entry -> true, replayed::add));
+
+        assertEquals(List.of(deadLetter), replayed);
+        assertEquals(1, queue.appendedCount());
+    }
+
+    @Test
+    void replay_ShouldSkipLinesOfAnOlderFormat() throws IOException {
+        Files.writeString(file, NOW + "\t4\t503\ttrue\t+15551230000\t+15550000001\tCode: 123456\ttimeout\n");
+
+        List<SmsMessage> replayed = new ArrayList<>();
+        assertEquals(0, queue.replay(deadLetter -> true, resent -> replayed.add(resent.message())));
+        assertTrue(replayed.isEmpty());
+    }
+
+    @Test
+    void replay_ShouldOnlyResendSelectedEntriesOnce() throws IOException {
+        SmsMessage retryable = new SmsMessage("+15551230000", "+15550000001", "retryable");
+        SmsMessage permanent = new SmsMessage("+15551230001", "+15550000001", "permanent");
+        queue.append(deadLetter(NOW, 4, 503, true, retryable, "SMS provider answered 503"));
+        queue.append(deadLetter(NOW, 1, 400, false, permanent, "SMS provider answered 400"));
+
+        List<SmsMessage> replayed = new ArrayList<>();
+        assertEquals(1, queue.replay(SmsDeadLetterQueue.DeadLetter::retryable, resent -> replayed.add(resent.message())));
+        assertEquals(List.of(retryable), replayed);
+
+        assertEquals(0, queue.replay(deadLetter -> true, resent -> replayed.add(resent.message())));
+        assertTrue(Files.exists(dir.resolve("dead-letter.log.replayed")));
+    }
+
+    @Test
+    void replay_ShouldKeepFailuresAppendedWhileReplaying() throws IOException {
+        SmsMessage message = new SmsMessage("+15551230000", "+15550000001", "again");
+        queue.append(deadLetter(NOW, 4, 0, true, message, "timeout"));
+
+        queue.replay(deadLetter -> true, resent -> {
+            try {
+                queue.append(deadLetter(NOW, 1, 0, true, resent.message(), "timeout"));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+
+        List<SmsMessage> replayed = new ArrayList<>();
+        assertEquals(1, queue.replay(deadLetter -> true, resent -> replayed.add(resent.message())));
+        assertEquals(List.of(message), replayed);
+    }
+
+    private static SmsDeadLetterQueue.DeadLetter deadLetter(Instant failedAt, int attempts, int statusCode,
+                                                            boolean retryable, SmsMessage message, String reason) {
+        return new SmsDeadLetterQueue.DeadLetter(failedAt, attempts, statusCode, retryable, failedAt.plusSeconds(300),
+                "user-1", "0123456789abcdef", message, reason);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmsDispatchExecutorTest {
+
+    @Test
+    void execute_ShouldNeverExceedMaxConcurrency() throws Exception {
+        int tasks = 200;
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(tasks);
+
+        try (SmsDispatchExecutor executor = new SmsDispatchExecutor(4, tasks, 1_000)) {
+            for (int i = 0; i < tasks; i++) {
+                executor.execute(() -> {
+                    peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    inFlight.decrementAndGet();
+                    done.countDown();
+                });
+            }
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue(peak.get() <= 4, "peak " + peak.get());
+            assertEquals(tasks, executor.waitCount());
+        }
+    }
+
+    @Test
+    void execute_WithFullQueue_ShouldReject() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        try (SmsDispatchExecutor executor = new SmsDispatchExecutor(1, 2, 1_000)) {
+            executor.execute(() -> {
+                started.countDown();
+                awaitQuietly(release);
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            executor.execute(() -> awaitQuietly(release));
+            executor.execute(() -> awaitQuietly(release));
+
+            assertThrows(CapacityExceededException.class, () -> executor.execute(() -> { }));
+            assertEquals(2, executor.queueDepth());
+            assertEquals(1, executor.activeCount());
+            assertEquals(1, executor.rejectedCount());
+            release.countDown();
+        }
+    }
+
+    @Test
+    void submit_ShouldHoldSendUntilItsStartTime() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        long notBefore = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+        AtomicLong started = new AtomicLong();
+
+        try (SmsDispatchExecutor executor = new SmsDispatchExecutor(4, 10, 1_000)) {
+            executor.submit(notBefore, () -> {
+                started.set(System.nanoTime());
+                done.countDown();
+                return CompletableFuture.completedFuture(null);
+            });
+            assertEquals(1, executor.queueDepth());
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue(started.get() >= notBefore);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.SmsException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmsRetryPolicyTest {
+
+    private final SmsRetryPolicy policy = new SmsRetryPolicy(4, 100, 1_000);
+
+    @Test
+    void shouldRetry_ShouldOnlyRetryTransientFailures() {
+        assertTrue(policy.shouldRetry(new SmsException("SMS provider answered 503", 503), 1));
+        assertTrue(policy.shouldRetry(new SmsException("SMS provider answered 429", 429), 1));
+        assertTrue(policy.shouldRetry(new SmsException("Failed to reach the SMS provider", new RuntimeException()), 1));
+        assertFalse(policy.shouldRetry(new SmsException("SMS provider answered 400", 400), 1));
+        assertFalse(policy.shouldRetry(new SmsException("SMS provider answer has no message SID", 201), 1));
+        assertFalse(policy.shouldRetry(new IllegalStateException("bug"), 1));
+    }
+
+    @Test
+    void shouldRetry_ShouldStopAfterMaxAttempts() {
+        SmsException failure = new SmsException("SMS provider answered 503", 503);
+
+        assertTrue(policy.shouldRetry(failure, 3));
+        assertFalse(policy.shouldRetry(failure, 4));
+    }
+
+    @Test
+    void backoffNanos_ShouldStayBelowDoublingCeiling() {
+        long[] ceilings = {100, 200, 400, 800, 1_000, 1_000};
+        for (int attempt = 1; attempt <= ceilings.length; attempt++) {
+            long ceiling = TimeUnit.MILLISECONDS.toNanos(ceilings[attempt - 1]);
+            long longest = 0;
+            for (int i = 0; i < 1_000; i++) {
+                long backoff = policy.backoffNanos(attempt);
+                assertTrue(backoff >= 0 && backoff <= ceiling, "attempt " + attempt + ": " + backoff);
+                longest = Math.max(longest, backoff);
+            }
+            // Jitter spreads retries over the whole range
+            assertTrue(longest > ceiling / 2, "attempt " + attempt + ": " + longest);
+        }
+    }
+}
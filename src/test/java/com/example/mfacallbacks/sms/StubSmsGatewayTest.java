@@ -0,0 +1,32 @@
+package com.example.mfacallbacks.sms;
+
+import com.example.mfacallbacks.exception.SmsException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StubSmsGatewayTest {
+
+    private static final SmsMessage MESSAGE = new SmsMessage("+15550000001", "+15550000000", "123456");
+
+    @Test
+    void send_ShouldTakeAtLeastTheConfiguredLatency() {
+        StubSmsGateway gateway = new StubSmsGateway(20, 10, 0);
+
+        long started = System.nanoTime();
+        String messageId = gateway.send(MESSAGE);
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        assertNotNull(messageId);
+        assertTrue(elapsedMillis >= 20, "elapsed " + elapsedMillis);
+        assertEquals(1, gateway.sentCount());
+    }
+
+    @Test
+    void send_WithFullErrorRate_ShouldFail() {
+        StubSmsGateway gateway = new StubSmsGateway(0, 0, 1.0);
+
+        assertThrows(SmsException.class, () -> gateway.send(MESSAGE));
+        assertEquals(0, gateway.sentCount());
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.mfacallbacks.sms;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local HTTP server answering like the Twilio Messages endpoint, with a fixed latency and
+ * error rate, for testing and benchmarking {@link HttpSmsGateway} without network.
+ *
+ * <p>Each exchange is handled on its own virtual thread, so the latency never limits how
+ * many requests the server accepts at once. The JDK server only speaks HTTP/1.1.
+ */
+public class StubSmsServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong received = new AtomicLong();
+    private final long latencyMillis;
+    private final double errorRate;
+
+    /**
+     * @param latencyMillis delay before each answer
+     * @param errorRate probability of answering 503 instead of 201
+     */
+    public StubSmsServer(long latencyMillis, double errorRate) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+        server.createContext("/2010-04-01/Accounts/", this::handle);
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+    /**
+     * @return the base URI to configure the gateway with
+     */
+    public URI baseUri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    /**
+     * @return the number of requests received so far
+     */
+    public long receivedCount() {
+        return received.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            body.readAllBytes();
+        }
+        long id = received.incrementAndGet();
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        boolean fail = errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+        byte[] answer = (fail ? "{\"code\":20503,\"status\":503}" : "{\"sid\":\"SM" + id + "\",\"status\":\"queued\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(fail ? 503 : 201, answer.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(answer);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.mfacallbacks.store;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedOtpStoreTest {
+
+    private static final long NOW = 1_700_000_000L;
+    private static final int DIGITS = PackedOtp.encodeDigits("123456");
+
+    @Test
+    void put_WhenFullWithRejectPolicy_ShouldThrowCapacityExceeded() {
+        // Arrange
+        BoundedOtpStore store = new BoundedOtpStore(new InMemoryOtpStore(), 2, BoundedOtpStore.OverflowPolicy.REJECT);
+        store.put("user-1", PackedOtp.pack(DIGITS, NOW + 100));
+        store.put("user-2", PackedOtp.pack(DIGITS, NOW + 200));
+
+        // Act & Assert
+        assertThrows(CapacityExceededException.class, () -> store.put("user-3", PackedOtp.pack(DIGITS, NOW + 300)));
+        assertEquals(2, store.size());
+        assertEquals(1, store.stats().rejected());
+    }
+
+    @Test
+    void put_WhenFullWithEvictPolicy_ShouldEvictChallengeClosestToExpiry() {
+        // Arrange
+        BoundedOtpStore store = new BoundedOtpStore(new InMemoryOtpStore(), 2, BoundedOtpStore.OverflowPolicy.EVICT);
+        store.expire(NOW);
+        store.put("user-1", PackedOtp.pack(DIGITS, NOW + 200));
+        store.put("user-2", PackedOtp.pack(DIGITS, NOW + 100));
+        List<String> evicted = new ArrayList<>();
+        store.setEvictionListener(evicted::add);
+
+        // Act
+        store.put("user-3", PackedOtp.pack(DIGITS, NOW + 300));
+
+        // Assert
+        assertEquals(List.of("user-2"), evicted);
+        assertEquals(2, store.size());
+        assertEquals(1, store.stats().evicted());
+        assertEquals(OtpConsumeResult.NOT_FOUND, store.consume("user-2", DIGITS, NOW));
+        assertEquals(OtpConsumeResult.CONSUMED, store.consume("user-1", DIGITS, NOW));
+    }
+
+    @Test
+    void put_ShouldCountEntriesWithoutAskingTheDelegate() {
+        // Arrange - a delegate whose size is only read by the cleanup pass
+        AtomicInteger sizeCalls = new AtomicInteger();
+        BoundedOtpStore store = new BoundedOtpStore(new InMemoryOtpStore() {
+            @Override
+            public long size() {
+                sizeCalls.incrementAndGet();
+                return super.size();
+            }
+        }, 2, BoundedOtpStore.OverflowPolicy.REJECT);
+        store.put("user-1", PackedOtp.pack(DIGITS, NOW + 100));
+        store.put("user-2", PackedOtp.pack(DIGITS, NOW + 200));
+
+        // Act - a consumed entry frees its place
+        assertEquals(OtpConsumeResult.CONSUMED, store.consume("user-1", DIGITS, NOW));
+        store.put("user-3", PackedOtp.pack(DIGITS, NOW + 300));
+
+        // Assert
+        assertThrows(CapacityExceededException.class, () -> store.put("user-4", PackedOtp.pack(DIGITS, NOW + 300)));
+        assertEquals(0, sizeCalls.get());
+    }
+
+    @Test
+    void expire_ShouldResynchronizeCountAfterReplacedEntries() {
+        // Arrange - replacing an entry counts it twice until the next cleanup pass
+        BoundedOtpStore store = new BoundedOtpStore(new InMemoryOtpStore(), 2, BoundedOtpStore.OverflowPolicy.REJECT);
+        store.put("user-1", PackedOtp.pack(DIGITS, NOW + 100));
+        store.put("user-1", PackedOtp.pack(DIGITS, NOW + 200));
+        assertThrows(CapacityExceededException.class, () -> store.put("user-2", PackedOtp.pack(DIGITS, NOW + 300)));
+
+        // Act
+        store.expire(NOW);
+
+        // Assert
+        store.put("user-2", PackedOtp.pack(DIGITS, NOW + 300));
+        assertEquals(2, store.size());
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.mfacallbacks.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpiryWheelTest {
+
+    private final ExpiryWheel<long[]> wheel = new ExpiryWheel<>(16, entry -> entry[0]);
+
+    @Test
+    void advance_ShouldOnlyReturnDueElements() {
+        // Arrange
+        wheel.advance(100, e -> fail("wheel should be empty"));
+        wheel.schedule(new long[]{101}, 101);
+        wheel.schedule(new long[]{105}, 105);
+
+        // Act
+        List<long[]> expired = new ArrayList<>();
+        wheel.advance(103, expired::add);
+
+        // Assert
+        assertEquals(1, expired.size());
+        assertEquals(101, expired.get(0)[0]);
+    }
+
+    @Test
+    void advance_WithDeadlineBeyondSpan_ShouldKeepElementForLaterRound() {
+        // Arrange
+        wheel.advance(100, e -> { });
+        wheel.schedule(new long[]{140}, 140);
+
+        // Act
+        List<long[]> early = new ArrayList<>();
+        wheel.advance(130, early::add);
+        List<long[]> late = new ArrayList<>();
+        wheel.advance(140, late::add);
+
+        // Assert
+        assertTrue(early.isEmpty());
+        assertEquals(1, late.size());
+    }
+
+    @Test
+    void schedule_WithDeadlineAlreadyProcessed_ShouldExpireOnNextAdvance() {
+        // Arrange
+        wheel.advance(100, e -> { });
+        wheel.schedule(new long[]{90}, 90);
+
+        // Act
+        List<long[]> expired = new ArrayList<>();
+        wheel.advance(101, expired::add);
+
+        // Assert
+        assertEquals(1, expired.size());
+    }
+
+    @Test
+    void cancel_ShouldUnlinkElementBeforeItsDeadline() {
+        // Arrange
+        wheel.advance(100, e -> { });
+        ExpiryWheel.Timer<long[]> cancelled = wheel.schedule(new long[]{105}, 105);
+        wheel.schedule(new long[]{105}, 105);
+        ExpiryWheel.Timer<long[]> last = wheel.schedule(new long[]{105}, 105);
+
+        // Act
+        wheel.cancel(cancelled);
+        wheel.cancel(last);
+        wheel.cancel(last);
+
+        // Assert
+        assertEquals(1, wheel.size());
+        List<long[]> expired = new ArrayList<>();
+        wheel.advance(105, expired::add);
+        assertEquals(1, expired.size());
+        assertEquals(0, wheel.size());
+        // Cancelling after expiry has no effect
+        wheel.cancel(cancelled);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void drainEarliest_ShouldEvictInDeadlineOrderAndDropRejectedElements() {
+        // Arrange
+        wheel.advance(100, e -> { });
+        wheel.schedule(new long[]{103}, 103);
+        wheel.schedule(new long[]{-102}, 102);
+        wheel.schedule(new long[]{101}, 101);
+
+        // Act - negative deadlines stand for elements that were already replaced
+        List<long[]> evicted = new ArrayList<>();
+        int count = wheel.drainEarliest(2, e -> e[0] > 0 && evicted.add(e));
+
+        // Assert
+        assertEquals(2, count);
+        assertEquals(101, evicted.get(0)[0]);
+        assertEquals(103, evicted.get(1)[0]);
+        assertEquals(0, wheel.size());
+    }
+}
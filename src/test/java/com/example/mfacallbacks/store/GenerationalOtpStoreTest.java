@@ -0,0 +1,62 @@
+package com.example.mfacallbacks.store;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GenerationalOtpStoreTest {
+
+    private static final long NOW = 1_700_000_000L;
+    private static final int DIGITS = PackedOtp.encodeDigits("123456");
+
+    @Test
+    void expire_ShouldDropWholeGenerationOnceAllDeadlinesPassed() {
+        GenerationalOtpStore store = new GenerationalOtpStore(300, 60);
+        long generationStart = NOW - NOW % 60;
+        store.put("early", PackedOtp.pack(DIGITS, generationStart));
+        store.put("late", PackedOtp.pack(DIGITS, generationStart + 59));
+        store.put("next", PackedOtp.pack(DIGITS, generationStart + 60));
+
+        assertEquals(0, store.expire(generationStart + 58));
+        assertEquals(2, store.expire(generationStart + 59));
+        assertEquals(1, store.size());
+        assertEquals(OtpConsumeResult.CONSUMED, store.consume("next", DIGITS, generationStart + 59));
+    }
+
+    @Test
+    void put_ShouldReplacePendingOtpInOtherGeneration() {
+        GenerationalOtpStore store = new GenerationalOtpStore(300, 60);
+        int newer = PackedOtp.encodeDigits("654321");
+        store.put("user", PackedOtp.pack(DIGITS, NOW + 100));
+        store.put("user", PackedOtp.pack(newer, NOW + 300));
+
+        // The put leaves the older generation alone; the newer OTP shadows the old one
+        assertEquals(2, store.size());
+        assertEquals(OtpConsumeResult.MISMATCH, store.consume("user", DIGITS, NOW));
+        assertEquals(OtpConsumeResult.CONSUMED, store.consume("user", newer, NOW));
+        assertEquals(OtpConsumeResult.NOT_FOUND, store.consume("user", DIGITS, NOW));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void consume_ShouldRejectExpiredEntryBeforeItsGenerationIsDropped() {
+        GenerationalOtpStore store = new GenerationalOtpStore(300, 300);
+        store.put("user", PackedOtp.pack(DIGITS, NOW));
+
+        assertEquals(OtpConsumeResult.EXPIRED, store.consume("user", DIGITS, NOW + 1));
+    }
+
+    @Test
+    void consume_ShouldFindEntriesInEveryLiveGeneration() {
+        GenerationalOtpStore store = new GenerationalOtpStore(300, 60);
+        for (int i = 0; i < 300; i += 10) {
+            store.put("user-" + i, PackedOtp.pack(DIGITS, NOW + i + 1));
+        }
+
+        for (int i = 0; i < 300; i += 10) {
+            assertEquals(OtpConsumeResult.CONSUMED, store.consume("user-" + i, DIGITS, NOW), "user-" + i);
+        }
+        assertEquals(0, store.size());
+        assertEquals(OtpConsumeResult.NOT_FOUND, store.consume("user-0", DIGITS, NOW));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.mfacallbacks.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryOtpStoreTest {
+
+    private static final long NOW = 1_700_000_000L;
+    private static final int DIGITS = PackedOtp.encodeDigits("123456");
+
+    private final InMemoryOtpStore store = new InMemoryOtpStore(301);
+
+    @Test
+    void consume_ShouldDropEntryFromExpiryWheel() {
+        // Arrange
+        for (int i = 0; i < 1_000; i++) {
+            store.put("user-" + i, PackedOtp.pack(DIGITS, NOW + 300));
+        }
+
+        // Act
+        for (int i = 0; i < 1_000; i += 2) {
+            assertEquals(OtpConsumeResult.CONSUMED, store.consume("user-" + i, DIGITS, NOW));
+        }
+
+        // Assert - the wheel no longer retains consumed entries until their deadline
+        assertEquals(500, store.size());
+        assertEquals(500, store.scheduled());
+    }
+
+    @Test
+    void put_ReplacingAnEntry_ShouldDropTheOldOneFromExpiryWheel() {
+        // Arrange
+        store.put("user-1", PackedOtp.pack(DIGITS, NOW + 300));
+
+        // Act
+        store.put("user-1", PackedOtp.pack(PackedOtp.encodeDigits("654321"), NOW + 60));
+
+        // Assert
+        assertEquals(1, store.scheduled());
+        assertEquals(1, store.expire(NOW + 60));
+        assertEquals(0, store.scheduled());
+        assertEquals(OtpConsumeResult.NOT_FOUND, store.consume("user-1", DIGITS, NOW + 60));
+    }
+
+    @Test
+    void consume_WhenExpired_ShouldDropEntryFromExpiryWheel() {
+        // Arrange
+        store.put("user-1", PackedOtp.pack(DIGITS, NOW + 10));
+
+        // Act & Assert
+        assertEquals(OtpConsumeResult.EXPIRED, store.consume("user-1", DIGITS, NOW + 10));
+        assertEquals(0, store.scheduled());
+        assertEquals(0, store.expire(NOW + 10));
+    }
+
+    @Test
+    void evict_ShouldRemoveEntriesClosestToExpiry() {
+        // Arrange
+        store.put("late", PackedOtp.pack(DIGITS, NOW + 300));
+        store.put("early", PackedOtp.pack(DIGITS, NOW + 10));
+        store.expire(NOW);
+
+        // Act
+        List<String> evicted = new ArrayList<>();
+        int count = store.evict(1, evicted::add);
+
+        // Assert
+        assertEquals(1, count);
+        assertEquals(List.of("early"), evicted);
+        assertEquals(OtpConsumeResult.NOT_FOUND, store.consume("early", DIGITS, NOW));
+        assertEquals(OtpConsumeResult.CONSUMED, store.consume("late", DIGITS, NOW));
+        assertEquals(0, store.scheduled());
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.mfacallbacks.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournaledOtpStoreTest {
+
+    private static final long NOW = 1_700_000_000L;
+    private static final int SEGMENT_BYTES = 1 << 20;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void open_AfterRestart_ShouldRestorePendingOtps() {
+        // Arrange
+        int digits = PackedOtp.encodeDigits("123456");
+        JournaledOtpStore store = JournaledOtpStore.open(new InMemoryOtpStore(), directory, SEGMENT_BYTES, 1, NOW);
+        store.put("pending", PackedOtp.pack(digits, NOW + 300));
+        store.put("consumed", PackedOtp.pack(digits, NOW + 300));
+        store.put("expiring", PackedOtp.pack(digits, NOW + 10));
+        assertEquals(OtpConsumeResult.CONSUMED, store.consume("consumed", digits, NOW));
+        store.close();
+
+        // Act
+        JournaledOtpStore restarted = JournaledOtpStore.open(new InMemoryOtpStore(), directory, SEGMENT_BYTES, 1, NOW + 20);
+
+        // Assert
+        assertEquals(1, restarted.size());
+        assertEquals(OtpConsumeResult.CONSUMED, restarted.consume("pending", digits, NOW + 20));
+        assertEquals(OtpConsumeResult.NOT_FOUND, restarted.consume("consumed", digits, NOW + 20));
+        assertEquals(OtpConsumeResult.NOT_FOUND, restarted.consume("expiring", digits, NOW + 20));
+        restarted.close();
+    }
+
+    @Test
+    void open_AfterWrongCodes_ShouldKeepTheAttemptsLeft() {
+        // Arrange - three attempts, two of them used before the restart
+        int digits = PackedOtp.encodeDigits("123456");
+        int wrong = PackedOtp.encodeDigits("654321");
+        JournaledOtpStore store = JournaledOtpStore.open(new InMemoryOtpStore(), directory, SEGMENT_BYTES, 1, NOW);
+        store.put("pending", PackedOtp.pack(digits, NOW + 300, 3));
+        assertEquals(OtpConsumeResult.MISMATCH, store.consume("pending", wrong, NOW));
+        assertEquals(OtpConsumeResult.MISMATCH, store.consume("pending", wrong, NOW));
+        store.close();
+
+        // Act
+        JournaledOtpStore restarted = JournaledOtpStore.open(new InMemoryOtpStore(), directory, SEGMENT_BYTES, 1, NOW);
+
+        // Assert
+        assertEquals(OtpConsumeResult.LOCKED_OUT, restarted.consume("pending", wrong, NOW));
+        assertEquals(OtpConsumeResult.LOCKED, restarted.consume("pending", digits, NOW));
+        restarted.close();
+    }
+
+    @Test
+    void open_ShouldCompactJournalIntoSingleSegment() throws IOException {
+        // Arrange
+        int digits = PackedOtp.encodeDigits("123456");
+        JournaledOtpStore store = JournaledOtpStore.open(new InMemoryOtpStore(), directory, 4096, 1, NOW);
+        for (int i = 0; i < 1_000; i++) {
+            store.put("user-" + i, PackedOtp.pack(digits, NOW + 300));
+        }
+        store.close();
+        assertTrue(segmentCount() > 1);
+
+        // Act
+        JournaledOtpStore restarted = JournaledOtpStore.open(new InMemoryOtpStore(), directory, SEGMENT_BYTES, 1, NOW);
+        restarted.close();
+
+        // Assert
+        assertEquals(1_000, restarted.size());
+        assertEquals(1, segmentCount());
+    }
+
+    @Test
+    void open_WithNothingLeftToRestore_ShouldDeleteReplayedSegmentsRightAway() throws IOException {
+        // Arrange - every entry has been consumed before the restart
+        int digits = PackedOtp.encodeDigits("123456");
+        JournaledOtpStore store = JournaledOtpStore.open(new InMemoryOtpStore(), directory, 4096, 1, NOW);
+        for (int i = 0; i < 500; i++) {
+            store.put("user-" + i, PackedOtp.pack(digits, NOW + 300));
+            store.consume("user-" + i, digits, NOW);
+        }
+        store.close();
+        assertTrue(segmentCount() > 1);
+
+        // Act - the restarted node stays idle, so its writer never has anything to flush
+        JournaledOtpStore restarted = JournaledOtpStore.open(new InMemoryOtpStore(), directory, SEGMENT_BYTES, 60_000, NOW);
+
+        // Assert
+        assertEquals(0, restarted.size());
+        assertEquals(1, segmentCount());
+        restarted.close();
+    }
+
+    @Test
+    void open_IntoSmallerStore_ShouldDropTheSurplus() {
+        // Arrange
+        int digits = PackedOtp.encodeDigits("123456");
+        JournaledOtpStore store = JournaledOtpStore.open(new InMemoryOtpStore(), directory, SEGMENT_BYTES, 1, NOW);
+        for (int i = 0; i < 5; i++) {
+            store.put("user-" + i, PackedOtp.pack(digits, NOW + 300));
+        }
+        store.close();
+
+        // Act
+        JournaledOtpStore restarted = JournaledOtpStore.open(new BoundedOtpStore(new InMemoryOtpStore(), 3,
+                BoundedOtpStore.OverflowPolicy.REJECT), directory, SEGMENT_BYTES, 1, NOW);
+
+        // Assert - the oldest entries are kept, and only they are journaled again
+        assertEquals(3, restarted.size());
+        assertEquals(OtpConsumeResult.CONSUMED, restarted.consume("user-2", digits, NOW));
+        assertEquals(OtpConsumeResult.NOT_FOUND, restarted.consume("user-3", digits, NOW));
+        restarted.close();
+        JournaledOtpStore reopened = JournaledOtpStore.open(new InMemoryOtpStore(), directory, SEGMENT_BYTES, 1, NOW);
+        assertEquals(2, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    void open_ShouldCreateSegmentsReadableByOwnerOnly() throws IOException {
+        // Arrange & Act
+        JournaledOtpStore store = JournaledOtpStore.open(new InMemoryOtpStore(), directory, SEGMENT_BYTES, 1, NOW);
+        store.close();
+
+        // Assert
+        assertEquals(1, segmentCount());
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path segment : files.toList()) {
+                assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(segment)));
+            }
+        }
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.mfacallbacks.store;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapOtpStoreTest {
+
+    private static final long NOW = 1_700_000_000L;
+    private static final int DIGITS = PackedOtp.encodeDigits("123456");
+
+    @Test
+    void maxEntriesWithin_ShouldReserveNoMoreThanTheBudget() {
+        for (long maxBytes = 1 << 16; maxBytes <= 1 << 26; maxBytes = maxBytes * 3 / 2) {
+            long capacity = OffHeapOtpStore.maxEntriesWithin(maxBytes);
+
+            OffHeapOtpStore store = new OffHeapOtpStore(capacity);
+
+            assertTrue(store.reservedBytes() <= maxBytes, maxBytes + " reserved " + store.reservedBytes());
+            // Tables are powers of two, so at least half of the budget is used
+            assertTrue(store.reservedBytes() > maxBytes / 2, maxBytes + " reserved " + store.reservedBytes());
+        }
+    }
+
+    @Test
+    void put_WhenSegmentIsFull_ShouldRejectNewKeysButUpdateExistingOnes() {
+        OffHeapOtpStore store = new OffHeapOtpStore(64);
+        int stored = 0;
+        for (int i = 0; i < 1_000; i++) {
+            try {
+                store.put("user-" + i, PackedOtp.pack(DIGITS, NOW + 300));
+                stored++;
+            } catch (CapacityExceededException e) {
+                // The segment of this key is full
+            }
+        }
+
+        assertEquals(stored, store.size());
+        assertEquals(1_000 - stored, store.stats().rejected());
+        store.put("user-0", PackedOtp.pack(PackedOtp.encodeDigits("654321"), NOW + 300));
+        assertEquals(OtpConsumeResult.CONSUMED, store.consume("user-0", PackedOtp.encodeDigits("654321"), NOW));
+    }
+}
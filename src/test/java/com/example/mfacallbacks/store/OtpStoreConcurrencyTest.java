@@ -0,0 +1,116 @@
+package com.example.mfacallbacks.store;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress test for {@link OtpStore#consume(String, int, long)}: many threads race to verify
+ * the same valid code and exactly one of them must win, or race with wrong codes and exactly
+ * the attempt limit must be used up, for every store implementation.
+ */
+class OtpStoreConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 2_000;
+    private static final long NOW = 1_700_000_000L;
+
+    static Stream<Arguments> stores() {
+        return Stream.of(
+            Arguments.of(InMemoryOtpStore.TYPE, (Supplier<OtpStore>) InMemoryOtpStore::new),
+            Arguments.of(OffHeapOtpStore.TYPE, (Supplier<OtpStore>) () -> new OffHeapOtpStore(10_000)),
+            Arguments.of(PrimitiveOtpStore.TYPE, (Supplier<OtpStore>) () -> new PrimitiveOtpStore(16)),
+            Arguments.of(GenerationalOtpStore.TYPE, (Supplier<OtpStore>) () -> new GenerationalOtpStore(300, 60)),
+            Arguments.of("sharded", (Supplier<OtpStore>) () -> new ShardedOtpStore(4, shard -> new InMemoryOtpStore()))
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("stores")
+    void consume_WithConcurrentVerifiers_ShouldConsumeExactlyOnce(String type, Supplier<OtpStore> factory)
+            throws Exception {
+        OtpStore store = factory.get();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        int digits = PackedOtp.encodeDigits("424242");
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                String userId = "user-" + round;
+                store.put(userId, PackedOtp.pack(digits, NOW + 300));
+
+                List<Future<OtpConsumeResult>> attempts = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    attempts.add(executor.submit(() -> {
+                        barrier.await();
+                        return store.consume(userId, digits, NOW);
+                    }));
+                }
+
+                int winners = 0;
+                for (Future<OtpConsumeResult> attempt : attempts) {
+                    OtpConsumeResult result = attempt.get(10, TimeUnit.SECONDS);
+                    if (result == OtpConsumeResult.CONSUMED) {
+                        winners++;
+                    } else {
+                        assertEquals(OtpConsumeResult.NOT_FOUND, result);
+                    }
+                }
+                assertEquals(1, winners, "round " + round);
+            }
+            assertEquals(0, store.size());
+            assertEquals(ROUNDS, store.stats().consumed());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("stores")
+    void consume_WithConcurrentWrongCodes_ShouldLockAfterLimit(String type, Supplier<OtpStore> factory)
+            throws Exception {
+        OtpStore store = factory.get();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        int digits = PackedOtp.encodeDigits("424242");
+        int wrong = PackedOtp.encodeDigits("000000");
+        int limit = 3;
+        try {
+            for (int round = 0; round < ROUNDS / 10; round++) {
+                String userId = "user-" + round;
+                store.put(userId, PackedOtp.pack(digits, NOW + 300, limit));
+
+                List<Future<OtpConsumeResult>> attempts = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    attempts.add(executor.submit(() -> {
+                        barrier.await();
+                        return store.consume(userId, wrong, NOW);
+                    }));
+                }
+
+                int[] counts = new int[OtpConsumeResult.values().length];
+                for (Future<OtpConsumeResult> attempt : attempts) {
+                    counts[attempt.get(10, TimeUnit.SECONDS).ordinal()]++;
+                }
+                assertEquals(limit - 1, counts[OtpConsumeResult.MISMATCH.ordinal()], "round " + round);
+                assertEquals(1, counts[OtpConsumeResult.LOCKED_OUT.ordinal()], "round " + round);
+                assertEquals(THREADS - limit, counts[OtpConsumeResult.LOCKED.ordinal()], "round " + round);
+                assertEquals(OtpConsumeResult.LOCKED, store.consume(userId, digits, NOW));
+            }
+            assertEquals(0, store.stats().consumed());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
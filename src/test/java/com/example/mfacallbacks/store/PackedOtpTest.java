@@ -0,0 +1,64 @@
+package com.example.mfacallbacks.store;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedOtpTest {
+
+    @Test
+    void encodeDigits_ShouldKeepLeadingZerosDistinct() {
+        assertNotEquals(PackedOtp.encodeDigits("0123"), PackedOtp.encodeDigits("123"));
+        assertEquals(PackedOtp.encodeCode(123, 4), PackedOtp.encodeDigits("0123"));
+    }
+
+    @Test
+    void encodeDigits_WithInvalidInput_ShouldReturnInvalid() {
+        assertEquals(PackedOtp.INVALID, PackedOtp.encodeDigits(""));
+        assertEquals(PackedOtp.INVALID, PackedOtp.encodeDigits("12a456"));
+        assertEquals(PackedOtp.INVALID, PackedOtp.encodeDigits("123456789"));
+    }
+
+    @Test
+    void toString_ShouldRoundTripEncodedDigits() {
+        assertEquals("000042", PackedOtp.toString(PackedOtp.encodeCode(42, 6)));
+        assertEquals("99999999", PackedOtp.toString(PackedOtp.encodeCode(99_999_999, 8)));
+    }
+
+    @Test
+    void pack_ShouldRoundTripDigitsAndExpiry() {
+        int digits = PackedOtp.encodeDigits("654321");
+        long expiryTime = 4_000_000_000L;
+
+        long packed = PackedOtp.pack(digits, expiryTime);
+
+        assertEquals(digits, PackedOtp.digits(packed));
+        assertEquals(expiryTime, PackedOtp.expiryTime(packed));
+        assertEquals(0, PackedOtp.attemptsLeft(packed));
+    }
+
+    @Test
+    void afterMismatch_ShouldCountDownAndThenLock() {
+        int digits = PackedOtp.encodeCode(99_999_999, 8);
+        long expiryTime = 4_000_000_000L;
+        long packed = PackedOtp.pack(digits, expiryTime, 2);
+
+        packed = PackedOtp.afterMismatch(packed);
+        assertEquals(1, PackedOtp.attemptsLeft(packed));
+        assertEquals(digits, PackedOtp.digits(packed));
+        assertFalse(PackedOtp.isLocked(packed));
+
+        packed = PackedOtp.afterMismatch(packed);
+        assertTrue(PackedOtp.isLocked(packed));
+        assertFalse(PackedOtp.matches(PackedOtp.digits(packed), digits));
+        assertEquals(expiryTime, PackedOtp.expiryTime(packed));
+        assertNotEquals(0L, packed);
+    }
+
+    @Test
+    void afterMismatch_WithoutLimit_ShouldKeepValue() {
+        long packed = PackedOtp.pack(PackedOtp.encodeDigits("123456"), 4_000_000_000L);
+
+        assertEquals(packed, PackedOtp.afterMismatch(packed));
+    }
+}
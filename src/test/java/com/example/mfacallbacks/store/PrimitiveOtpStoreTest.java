@@ -0,0 +1,66 @@
+package com.example.mfacallbacks.store;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrimitiveOtpStoreTest {
+
+    private static final long NOW = 1_700_000_000L;
+    private static final int DIGITS = PackedOtp.encodeDigits("123456");
+
+    @Test
+    void put_BeyondInitialCapacity_ShouldGrowAndKeepEntries() {
+        PrimitiveOtpStore store = new PrimitiveOtpStore(16);
+        for (int i = 0; i < 50_000; i++) {
+            store.put("user-" + i, PackedOtp.pack(DIGITS, NOW + 300));
+        }
+
+        assertEquals(50_000, store.size());
+        for (int i = 0; i < 50_000; i += 997) {
+            assertEquals(OtpConsumeResult.CONSUMED, store.consume("user-" + i, DIGITS, NOW));
+        }
+    }
+
+    @Test
+    void expire_AfterFullSweep_ShouldRemoveOnlyDueEntries() {
+        PrimitiveOtpStore store = new PrimitiveOtpStore(1_000);
+        for (int i = 0; i < 1_000; i++) {
+            store.put("user-" + i, PackedOtp.pack(DIGITS, NOW + (i % 2 == 0 ? 10 : 300)));
+        }
+
+        int removed = 0;
+        for (int round = 0; round < 16; round++) {
+            removed += store.expire(NOW + 10);
+        }
+
+        assertEquals(500, removed);
+        assertEquals(500, store.size());
+        assertEquals(OtpConsumeResult.NOT_FOUND, store.consume("user-0", DIGITS, NOW + 10));
+        assertEquals(OtpConsumeResult.CONSUMED, store.consume("user-1", DIGITS, NOW + 10));
+    }
+
+    @Test
+    void put_WithByteBudget_ShouldNotGrowTablesPastIt() {
+        // 1 MiB is 2/3 of the way to the next power of two: 64 segments of 512 slots, not 682
+        long maxBytes = 1 << 20;
+        long fits = PrimitiveOtpStore.maxEntriesWithin(maxBytes);
+        assertEquals(64 * 384, fits);
+        PrimitiveOtpStore store = new PrimitiveOtpStore(16, maxBytes);
+
+        int stored = 0;
+        for (int i = 0; i < 2 * fits; i++) {
+            try {
+                store.put("user-" + i, PackedOtp.pack(DIGITS, NOW + 300));
+                stored++;
+            } catch (CapacityExceededException e) {
+                // The segment of this key is full
+            }
+        }
+
+        assertTrue(store.tableBytes() <= maxBytes);
+        assertTrue(stored <= fits && stored > fits * 9 / 10, "stored " + stored);
+        assertEquals(2 * fits - stored, store.stats().rejected());
+    }
+}
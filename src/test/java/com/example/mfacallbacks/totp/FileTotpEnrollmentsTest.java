@@ -0,0 +1,58 @@
+package com.example.mfacallbacks.totp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileTotpEnrollmentsTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void generation_ShouldReadListedUsersOnly() throws Exception {
+        Path file = Files.writeString(directory.resolve("enrollments"), "# enrolled users\nuser-1 0\n\nuser-2  3\n");
+
+        FileTotpEnrollments enrollments = new FileTotpEnrollments(file, 60_000);
+
+        assertEquals(2, enrollments.size());
+        assertEquals(0, enrollments.generation("user-1"));
+        assertEquals(3, enrollments.generation("user-2"));
+        assertEquals(TotpEnrollments.NOT_ENROLLED, enrollments.generation("user-3"));
+    }
+
+    @Test
+    void generation_AfterFileChanges_ShouldApplyRevocationsAndRotations() throws Exception {
+        Path file = Files.writeString(directory.resolve("enrollments"), "user-1 0\nuser-2 0\n");
+        FileTotpEnrollments enrollments = new FileTotpEnrollments(file, 0);
+
+        Files.writeString(file, "user-2 1\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1_000));
+
+        assertEquals(TotpEnrollments.NOT_ENROLLED, enrollments.generation("user-1"));
+        assertEquals(1, enrollments.generation("user-2"));
+    }
+
+    @Test
+    void generation_WhenReloadFails_ShouldKeepPreviousEnrollments() throws Exception {
+        Path file = Files.writeString(directory.resolve("enrollments"), "user-1 0\n");
+        FileTotpEnrollments enrollments = new FileTotpEnrollments(file, 0);
+
+        Files.writeString(file, "user-1 zero\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1_000));
+
+        assertEquals(0, enrollments.generation("user-1"));
+    }
+
+    @Test
+    void constructor_WithMalformedFile_ShouldFail() throws Exception {
+        Path file = Files.writeString(directory.resolve("enrollments"), "user-1\n");
+
+        assertThrows(IllegalArgumentException.class, () -> new FileTotpEnrollments(file, 0));
+    }
+}
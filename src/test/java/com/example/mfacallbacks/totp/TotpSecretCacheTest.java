@@ -0,0 +1,48 @@
+package com.example.mfacallbacks.totp;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TotpSecretCacheTest {
+
+    private static final SecretKeySpec SECRET = new SecretKeySpec(new byte[20], "HmacSHA1");
+
+    @Test
+    void put_WhenFull_ShouldEvictLeastRecentlyUsed() {
+        TotpSecretCache cache = new TotpSecretCache(2, 60);
+        cache.put("user-1", SECRET, 100);
+        cache.put("user-2", SECRET, 100);
+        assertNotNull(cache.get("user-1", 100));
+
+        cache.put("user-3", SECRET, 100);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("user-1", 100));
+        assertNull(cache.get("user-2", 100));
+        assertNotNull(cache.get("user-3", 100));
+    }
+
+    @Test
+    void get_AfterTtl_ShouldMissAndDropTheEntry() {
+        TotpSecretCache cache = new TotpSecretCache(10, 60);
+        cache.put("user-1", SECRET, 100);
+
+        assertNotNull(cache.get("user-1", 159));
+        assertNull(cache.get("user-1", 160));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void put_WithManySegments_ShouldStayWithinMaxEntries() {
+        TotpSecretCache cache = new TotpSecretCache(1024, 60);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put("user-" + i, SECRET, 100);
+        }
+
+        assertTrue(cache.size() <= 1024);
+        assertNotNull(cache.get("user-9999", 100));
+    }
+}
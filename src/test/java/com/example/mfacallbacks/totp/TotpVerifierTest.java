@@ -0,0 +1,74 @@
+package com.example.mfacallbacks.totp;
+
+import com.example.mfacallbacks.exception.CapacityExceededException;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TotpVerifierTest {
+
+    /** Shared secret of the RFC 6238 appendix B SHA-1 test vectors */
+    private static final SecretKeySpec RFC_KEY =
+            new SecretKeySpec("12345678901234567890".getBytes(StandardCharsets.US_ASCII), "HmacSHA1");
+
+    private final TotpVerifier verifier = new TotpVerifier("HmacSHA1", 8, 30, 1);
+
+    @Test
+    void hotp_ShouldMatchRfc6238TestVectors() {
+        assertEquals(94287082, verifier.hotp(RFC_KEY, 59 / 30));
+        assertEquals(7081804, verifier.hotp(RFC_KEY, 1111111109L / 30));
+        assertEquals(14050471, verifier.hotp(RFC_KEY, 1111111111L / 30));
+        assertEquals(89005924, verifier.hotp(RFC_KEY, 1234567890L / 30));
+        assertEquals(69279037, verifier.hotp(RFC_KEY, 2000000000L / 30));
+        assertEquals(65353130, verifier.hotp(RFC_KEY, 20000000000L / 30));
+    }
+
+    @Test
+    void verify_ShouldAcceptAdjacentStepsOnly() {
+        long now = 1234567890L;
+        int previous = verifier.hotp(RFC_KEY, now / 30 - 1);
+        int tooOld = verifier.hotp(RFC_KEY, now / 30 - 2);
+
+        assertEquals(now / 30 - 1, verifier.verify(RFC_KEY, previous, now, TotpVerifier.NO_MATCH));
+        assertEquals(TotpVerifier.NO_MATCH, verifier.verify(RFC_KEY, tooOld, now, TotpVerifier.NO_MATCH));
+    }
+
+    @Test
+    void verify_ShouldRejectStepsNotAfterLastUsed() {
+        long now = 1234567890L;
+        long step = now / 30;
+        int code = verifier.hotp(RFC_KEY, step);
+
+        assertEquals(TotpVerifier.NO_MATCH, verifier.verify(RFC_KEY, code, now, step));
+    }
+
+    @Test
+    void replayGuard_ShouldRecordEachStepOnce() {
+        TotpReplayGuard guard = new TotpReplayGuard(10);
+
+        assertTrue(guard.markUsed("user", 100, 99));
+        assertFalse(guard.markUsed("user", 100, 99));
+        assertFalse(guard.markUsed("user", 99, 99));
+        assertTrue(guard.markUsed("user", 101, 100));
+        assertEquals(101, guard.lastUsedStep("user"));
+    }
+
+    @Test
+    void replayGuard_WhenFull_ShouldRejectUntilOldStepsLeaveTheWindow() {
+        TotpReplayGuard guard = new TotpReplayGuard(2);
+        assertTrue(guard.markUsed("user-1", 100, 99));
+        assertTrue(guard.markUsed("user-2", 100, 99));
+
+        assertThrows(CapacityExceededException.class, () -> guard.markUsed("user-3", 100, 99));
+        // A known user may still move to a later step, and replays are still caught
+        assertTrue(guard.markUsed("user-1", 101, 100));
+        assertFalse(guard.markUsed("user-2", 100, 100));
+
+        assertTrue(guard.markUsed("user-3", 102, 102));
+        assertEquals(1, guard.size());
+        assertEquals(TotpVerifier.NO_MATCH, guard.lastUsedStep("user-1"));
+    }
+}